@@ -1,6 +1,10 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager;
 
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.api.ShortenLinkAPIHandler;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarkRecordStore;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.EnrichedPage;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.EnrichmentPipeline;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.GroupAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidCredentialsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchBookmarkException;
@@ -9,17 +13,32 @@ import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchUserException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.UserAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.UserNotLoggedInException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksCursor;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksFinder;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksMatches;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck.LinkChecker;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck.UrlHealthCache;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportFormat;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportPipeline;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.BookmarksGroupStorage;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.PersistenceScheduler;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.ResidentBookmarks;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.SnapshotFormat;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.UsersStorage;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged.PagedStore;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.user.User;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 //Here I use the Facade design pattern to separate storage from command handling
 
@@ -31,18 +50,69 @@ public class BookmarksManager implements BookmarksManagerAPI {
     private static final String INVALID_COMMAND_PARAMS = "Invalid command's " +
             "parameters- group name or bookmark!";
 
+    private static final String ADMINS_ENV_KEY = "BOOKMARKS_ADMINS"; //comma-separated usernames
+    private static final String IMPORTS_DIRECTORY_PROPERTY = "bookmarks.imports.dir";
+
     private static final String INEXISTENT_GROUP_BOOKMARK = "User does" +
             " not have such a group/bookmark!";
 
     private final Map<SocketChannel, User> loggedInUsers; //manages users' login sessions
     private final UsersStorage usersStorage;
     private final BookmarksFinder finder;
+    private final PersistenceScheduler scheduler; //writes the storages off the request path
+    private final ResidentBookmarks residentBookmarks; //which users' groups are in the heap
+    private final PagedStore pagedStore; //null when every user has files of their own
+    private BookmarkRecordStore recordStore; //null while the bookmarks are kept on the heap
+    private final UrlHealthCache urlHealth; //shared by all cleanups, so are the probes' per-host limits
+    private final Set<String> adminUsernames; //who may clean up the bookmarks of all users
+    private final ImportPipeline importPipeline; //shared by all imports, so are its per-host limits
+    private volatile Path importsDirectory; //the only one import --file reads from, absolute and normalized
+    private volatile EnrichmentPipeline enrichment; //null while add-to fetches the page before replying
 
 
     public BookmarksManager() {
-        this.loggedInUsers = new HashMap<>();
-        this.usersStorage = new UsersStorage(REGISTERED_USERS_FILE);
+        this(PersistenceScheduler.DEFAULT_MAX_LATENCY, ResidentBookmarks.DEFAULT_MAX_RESIDENT_BOOKMARKS,
+                SnapshotFormat.JSON);
+    }
+
+    //persistenceMaxLatency is how late a change may reach the disk; zero writes it right away
+    //maxResidentBookmarks is the budget above which idle users' bookmarks are unloaded
+    //snapshotFormat is the one groups files are written in (DEFLATE for compressed ones)
+    public BookmarksManager(Duration persistenceMaxLatency, long maxResidentBookmarks,
+                            SnapshotFormat snapshotFormat) {
+        this.loggedInUsers = new ConcurrentHashMap<>(); //accessed by the reactors and the workers
+        this.scheduler = new PersistenceScheduler(persistenceMaxLatency);
+        this.pagedStore = null;
+        this.usersStorage = new UsersStorage(REGISTERED_USERS_FILE, scheduler, snapshotFormat);
         this.finder = new BookmarksFinder();
+        this.residentBookmarks = new ResidentBookmarks(maxResidentBookmarks, finder::invalidateUserCache);
+        this.urlHealth = new UrlHealthCache(new LinkChecker());
+        this.importPipeline = new ImportPipeline();
+        this.adminUsernames = ConcurrentHashMap.newKeySet();
+        adminUsernames.addAll(adminsFromEnvironment());
+        this.importsDirectory = importsDirectoryFromProperties();
+    }
+
+    //all accounts and bookmarks are kept in the single page file pagedStoreFile,
+    //of which at most maxCachedPages pages are in the heap
+    public BookmarksManager(Duration persistenceMaxLatency, long maxResidentBookmarks,
+                            Path pagedStoreFile, int maxCachedPages) {
+        this.loggedInUsers = new ConcurrentHashMap<>();
+        this.scheduler = new PersistenceScheduler(persistenceMaxLatency);
+        try {
+            this.pagedStore = new PagedStore(pagedStoreFile, maxCachedPages);
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            throw new IllegalStateException("Could not open the page file " + pagedStoreFile, e);
+        }
+        this.usersStorage = new UsersStorage(pagedStore, scheduler);
+        this.finder = new BookmarksFinder();
+        this.residentBookmarks = new ResidentBookmarks(maxResidentBookmarks, finder::invalidateUserCache);
+        this.urlHealth = new UrlHealthCache(new LinkChecker());
+        this.importPipeline = new ImportPipeline();
+        this.adminUsernames = ConcurrentHashMap.newKeySet();
+        adminUsernames.addAll(adminsFromEnvironment());
+        this.importsDirectory = importsDirectoryFromProperties();
     }
 
     public BookmarksManager(Map<SocketChannel, User> loggedInUsers,
@@ -50,6 +120,32 @@ public class BookmarksManager implements BookmarksManagerAPI {
         this.loggedInUsers = loggedInUsers;
         this.usersStorage = usersStorage;
         this.finder = finder;
+        this.scheduler = null;
+        this.pagedStore = null;
+        this.residentBookmarks = new ResidentBookmarks(Long.MAX_VALUE, finder::invalidateUserCache);
+        this.urlHealth = new UrlHealthCache(new LinkChecker());
+        this.importPipeline = new ImportPipeline();
+        this.adminUsernames = ConcurrentHashMap.newKeySet();
+        this.importsDirectory = importsDirectoryFromProperties();
+    }
+
+    //the bookmarks loaded from now on are kept in the memory-mapped recordsFile
+    //instead of on the heap, so that millions of them do not burden the GC
+    public synchronized void useOffHeapBookmarks(Path recordsFile) throws IOException {
+        if (recordStore != null) {
+            throw new IllegalStateException("The bookmarks are already kept off the heap!");
+        }
+        recordStore = new BookmarkRecordStore(recordsFile);
+        usersStorage.setRecordStore(recordStore);
+    }
+
+    //add-to replies right after it stores a placeholder bookmark; the page is fetched
+    //by the pipeline, which replaces the placeholder with the enriched bookmark
+    public synchronized void useAsyncEnrichment(EnrichmentPipeline pipeline) {
+        if (enrichment != null) {
+            throw new IllegalStateException("The bookmarks are already enriched asynchronously!");
+        }
+        enrichment = pipeline;
     }
 
     //wrapper functions of the base ones- this is some kind of a declaration (interface)
@@ -106,6 +202,7 @@ public class BookmarksManager implements BookmarksManagerAPI {
                     " entered when logging!");
         }
          User loggedInUser = usersStorage.getUsers().get(username);
+         residentBookmarks.pin(username, loggedInUser.getStorage()); //the groups are loaded on first login
          loggedInUsers.put(clientChannel, loggedInUser);
          sendPushNotificationToUserStorage(username, "[success] User logged in: " + username);
          return String.format("User with name %s has successfully logged in.", username);
@@ -135,6 +232,9 @@ public class BookmarksManager implements BookmarksManagerAPI {
         } catch (GroupAlreadyExistsException e) {
             ExceptionsLogger.logClientException(e);
             return "Such a group already exists. Please, try with another name.";
+        } catch (IllegalArgumentException e) { //a name too long to be stored
+            ExceptionsLogger.logClientException(e);
+            return INVALID_COMMAND_PARAMS + "group name: " + groupName;
         }
     }
 
@@ -145,9 +245,12 @@ public class BookmarksManager implements BookmarksManagerAPI {
             return NOT_LOGGED_WARNING;
         }
         User loggedInUser = loggedInUsers.get(clientChannel);
+        EnrichmentPipeline pipeline = enrichment;
+        Bookmark bookmark;
         try {
-            loggedInUser.getStorage().addNewBookmarkToGroup(Bookmark.of(url, groupName,
-                    isShortened), groupName);
+            bookmark = pipeline != null ? Bookmark.placeholder(url, groupName) :
+                    Bookmark.of(url, groupName, isShortened);
+            loggedInUser.getStorage().addNewBookmarkToGroup(bookmark, groupName);
         } catch (NoSuchGroupException e) {
             ExceptionsLogger.logClientException(e);
             return INEXISTENT_GROUP_BOOKMARK;
@@ -159,20 +262,48 @@ public class BookmarksManager implements BookmarksManagerAPI {
             return INVALID_COMMAND_PARAMS;
         }
         usersStorage.updateUser(loggedInUser.getUsername(), loggedInUser);
-        invalidateFinder(loggedInUser.getUsername());
+        finder.addBookmark(loggedInUser.getUsername(), bookmark);
+        if (pipeline != null) {
+            pipeline.submit(url, page -> completeEnrichment(loggedInUser, bookmark, page, isShortened),
+                    e -> loggedInUser.getStorage().sendPushNotification("[error] Could not enrich bookmark "
+                            + url + " in group: " + groupName));
+        }
         return String.format("Successful add of bookmark %s " +
                 "to group %s of user %s", url, groupName,
                 loggedInUser.getUsername());
     }
 
+    //runs in the enrichment pipeline; a placeholder removed meanwhile stays removed
+    private void completeEnrichment(User user, Bookmark placeholder, EnrichedPage page, boolean isShortened) {
+        String url = placeholder.url();
+        if (isShortened) {
+            try {
+                url = ShortenLinkAPIHandler.shorten(url);
+            } catch (RuntimeException e) {
+                ExceptionsLogger.logClientException(e); //the original url is kept
+            }
+        }
+        Bookmark enriched = Bookmark.of(url, placeholder.groupName(), page);
+        BookmarksGroupStorage storage = user.getStorage();
+        if (!storage.replaceBookmark(placeholder.groupName(), placeholder, enriched)) {
+            return;
+        }
+        usersStorage.updateUser(user.getUsername(), user);
+        finder.removeBookmarks(user.getUsername(), List.of(placeholder));
+        finder.addBookmark(user.getUsername(), enriched);
+        storage.sendPushNotification("[success] Bookmark enriched: " + enriched.title() +
+                " in group: " + placeholder.groupName());
+    }
+
     @Override
     public String removeBookmarkFromGroup(SocketChannel clientChannel, String groupName, String bookmarkTitle) {
         if (!hasUserLoggedIn(clientChannel)) {
             return NOT_LOGGED_WARNING;
         }
         User loggedInUser = loggedInUsers.get(clientChannel);
+        Bookmark removed;
         try {
-            loggedInUser.getStorage().removeBookmarkFromGroup(bookmarkTitle, groupName);
+            removed = loggedInUser.getStorage().removeBookmarkFromGroup(bookmarkTitle, groupName);
         } catch (NoSuchGroupException | NoSuchBookmarkException e)  {
             ExceptionsLogger.logClientException(e);
             return INEXISTENT_GROUP_BOOKMARK;
@@ -181,7 +312,7 @@ public class BookmarksManager implements BookmarksManagerAPI {
             return INVALID_COMMAND_PARAMS;
         }
             usersStorage.updateUser(loggedInUser.getUsername(), loggedInUser);
-            invalidateFinder(loggedInUser.getUsername());
+            finder.removeBookmarks(loggedInUser.getUsername(), List.of(removed));
 
         return String.format("Successful remove of bookmark %s " +
                 "from group %s of user %s", bookmarkTitle, groupName,
@@ -194,13 +325,67 @@ public class BookmarksManager implements BookmarksManagerAPI {
             return NOT_LOGGED_WARNING;
         }
         User loggedInUser = loggedInUsers.get(clientChannel);
-        loggedInUser.getStorage().cleanUp();
-        invalidateFinder(loggedInUser.getUsername());
+        List<Bookmark> removed = loggedInUser.getStorage().cleanUp(urlHealth);
+        finder.removeBookmarks(loggedInUser.getUsername(), removed);
         return String.format("Successful removal of user's %s " +
                 "invalid bookmarks (if there were such)",
                 loggedInUser.getUsername());
     }
 
+    //every distinct link of all users is probed once (or not at all, if its health is
+    //known), and only then are the users' bookmarks cleaned one user at a time
+    @Override
+    public String cleanUpAll(SocketChannel clientChannel) {
+        if (!hasUserLoggedIn(clientChannel)) {
+            return NOT_LOGGED_WARNING;
+        }
+        if (!adminUsernames.contains(loggedInUsers.get(clientChannel).getUsername())) {
+            return "Only an administrator can clean up the bookmarks of all users!";
+        }
+        List<User> users;
+        synchronized (usersStorage) {
+            users = usersStorage.getUsers().values().stream().filter(user -> user.getStorage() != null).toList();
+        }
+        Set<String> urls = new HashSet<>();
+        for (User user : users) {
+            boolean wasLoaded = user.getStorage().isLoaded();
+            urls.addAll(user.getStorage().getUrls());
+            if (!wasLoaded) {
+                residentBookmarks.unloadIfNotTracked(user.getUsername(), user.getStorage());
+            }
+        }
+        urlHealth.check(urls);
+
+        int removedCount = 0;
+        for (User user : users) {
+            BookmarksGroupStorage storage = user.getStorage();
+            boolean wasLoaded = storage.isLoaded();
+            List<Bookmark> removed = storage.cleanUp(urlHealth);
+            finder.removeBookmarks(user.getUsername(), removed);
+            removedCount += removed.size();
+            if (!wasLoaded) {
+                try {
+                    storage.flush(); //the changes are written, so the groups can be unloaded
+                } catch (IOException e) {
+                    ExceptionsLogger.logClientException(e);
+                }
+                residentBookmarks.unloadIfNotTracked(user.getUsername(), storage);
+            }
+        }
+        return String.format("Successful removal of %d invalid bookmarks of %d users (%d distinct links checked)",
+                removedCount, users.size(), urls.size());
+    }
+
+    //import --file reads only the files under directory
+    public void setImportsDirectory(Path directory) {
+        importsDirectory = directory.toAbsolutePath().normalize();
+    }
+
+    //allows the user to run the commands for all users
+    public void grantAdmin(String username) {
+        adminUsernames.add(username);
+    }
+
     @Override
     public List<Bookmark> listAll(SocketChannel clientChannel) {
         if (!hasUserLoggedIn(clientChannel)) {
@@ -214,6 +399,19 @@ public class BookmarksManager implements BookmarksManagerAPI {
         return result;
     }
 
+    @Override
+    public List<Bookmark> listPage(SocketChannel clientChannel, BookmarksCursor after, int limit) {
+        if (!hasUserLoggedIn(clientChannel)) {
+            throw new UserNotLoggedInException("User with socket channel "
+                    + clientChannel.toString() + "has not logged in!");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive!");
+        }
+        return finder.searchBookmarksPage(loggedInUsers.get(clientChannel).getUsername(),
+                after, limit, usersStorage);
+    }
+
     @Override
     public List<Bookmark> listByGroup(SocketChannel clientChannel, String groupName) {
         if (!hasUserLoggedIn(clientChannel)) {
@@ -253,25 +451,117 @@ public class BookmarksManager implements BookmarksManagerAPI {
         return result;
     }
 
+    //for a streamed reply- the bookmarks are found part by part while they are sent
+    @Override
+    public BookmarksMatches streamByTags(SocketChannel clientChannel, Set<String> keywords) {
+        if (!hasUserLoggedIn(clientChannel)) {
+            throw new UserNotLoggedInException("User with socket channel "
+                    + clientChannel.toString() + "has not logged in!");
+        }
+        BookmarksMatches result = finder.streamBookmarksByTags(loggedInUsers.
+                get(clientChannel).getUsername(), keywords, usersStorage);
+        sendPushNotificationToUserStorage(loggedInUsers.get(clientChannel).getUsername(),
+                "[info] Searched bookmarks by tags for user: " + loggedInUsers.get(clientChannel).getUsername());
+        return result;
+    }
+
+    @Override
+    public BookmarksMatches streamByTitle(SocketChannel clientChannel, String title) {
+        if (!hasUserLoggedIn(clientChannel)) {
+            throw new UserNotLoggedInException("User with socket channel "
+                    + clientChannel.toString() + "has not logged in!");
+        }
+        BookmarksMatches result = finder.streamBookmarksByTitle(loggedInUsers.
+                get(clientChannel).getUsername(), title, usersStorage);
+        sendPushNotificationToUserStorage(loggedInUsers.get(clientChannel).getUsername(),
+                "[info] Searched bookmarks by title for user: " + loggedInUsers.get(clientChannel).getUsername());
+        return result;
+    }
+
+    @Override
+    public List<Bookmark> searchByQuery(SocketChannel clientChannel, String query, int limit) {
+        if (!hasUserLoggedIn(clientChannel)) {
+            throw new UserNotLoggedInException("User with socket channel "
+                    + clientChannel.toString() + "has not logged in!");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Results limit must be positive!");
+        }
+        return finder.searchBookmarksByQuery(loggedInUsers.get(clientChannel).getUsername(),
+                query, limit, usersStorage);
+    }
+
     @Override
     public List<Bookmark> importFromChrome(SocketChannel clientChannel) {
         if (!hasUserLoggedIn(clientChannel)) {
             throw new UserNotLoggedInException("User with socket channel "
                     + clientChannel.toString() + "has not logged in!");
         }
-       return loggedInUsers.get(clientChannel).
-               getStorage().importBookmarksFromChrome();
+       List<Bookmark> imported = loggedInUsers.get(clientChannel).
+               getStorage().importBookmarksFromChrome(importPipeline);
+       invalidateFinder(loggedInUsers.get(clientChannel).getUsername()); //whole groups were added
+       return imported;
+    }
+
+    @Override
+    public String importFromFile(SocketChannel clientChannel, Path file, ImportFormat format) {
+        if (!hasUserLoggedIn(clientChannel)) {
+            throw new UserNotLoggedInException("User with socket channel "
+                    + clientChannel.toString() + "has not logged in!");
+        }
+        Path resolved = resolveImportFile(file);
+        if (resolved == null) {
+            return "Bookmarks can only be imported from the files in the imports directory!";
+        }
+        if (!Files.isRegularFile(resolved)) {
+            return "There is no file " + file + " to import bookmarks from!";
+        }
+        User user = loggedInUsers.get(clientChannel);
+        int addedCount = user.getStorage().importBookmarksInBatches(format.open(resolved), importPipeline);
+        invalidateFinder(user.getUsername());
+        if (addedCount < 0) {
+            return "Could not read the " + format.getFormatName() + " bookmarks of " + file;
+        }
+        return addedCount == 0 ? "No bookmarks to be imported from " + file :
+                "Bookmarks imported from " + file + ": " + addedCount;
     }
 
+    //the snapshot is written before the groups become idle, so that they can be unloaded right away
     @Override
     public void disconnectUser(SocketChannel clientChannel) {
-        if (loggedInUsers.containsKey(clientChannel)) {
-            User disconnectedUser = loggedInUsers.get(clientChannel);
-            disconnectedUser.getStorage().updateGroupsFile();
+        User disconnectedUser = loggedInUsers.remove(clientChannel);
+        if (disconnectedUser != null) {
+            BookmarksGroupStorage storage = disconnectedUser.getStorage();
+            storage.requestSnapshot();
+            try {
+                storage.flush();
+            } catch (IOException e) {
+                ExceptionsLogger.logClientException(e); //the changes stay in memory until a flush succeeds
+            }
             sendPushNotificationToUserStorage(disconnectedUser.getUsername(), "[info] User disconnected: " + disconnectedUser.getUsername());
-            loggedInUsers.remove(clientChannel);
+            residentBookmarks.unpin(disconnectedUser.getUsername());
+        }
+    }
+
+    //drains the changes not yet written to the disk
+    @Override
+    public synchronized void shutdown() {
+        if (enrichment != null) {
+            enrichment.close(); //the enriched bookmarks are stored before the storages are drained
+        }
+        if (scheduler != null) {
+            scheduler.close(); //the stores' last changes are written to the page file before it is closed
+        }
+        try {
+            if (pagedStore != null) {
+                pagedStore.close();
+            }
+            if (recordStore != null) {
+                recordStore.close(); //the bookmarks themselves are in the storages' files
+            }
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
         }
-        usersStorage.saveUsers();
     }
 
     @Override
@@ -279,6 +569,43 @@ public class BookmarksManager implements BookmarksManagerAPI {
         return loggedInUsers;
     }
 
+    //file relative to the imports directory, null if it (or a link on the way) leads out of it
+    private Path resolveImportFile(Path file) {
+        Path directory = importsDirectory;
+        Path resolved = directory.resolve(file).normalize();
+        if (!resolved.startsWith(directory)) {
+            return null;
+        }
+        if (!Files.exists(resolved)) {
+            return resolved;
+        }
+        try {
+            return resolved.toRealPath().startsWith(directory.toRealPath()) ? resolved : null;
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            return null;
+        }
+    }
+
+    private static Path importsDirectoryFromProperties() {
+        return Path.of(System.getProperty(IMPORTS_DIRECTORY_PROPERTY, IMPORTS_DIRECTORY))
+                .toAbsolutePath().normalize();
+    }
+
+    private static Set<String> adminsFromEnvironment() {
+        String admins = System.getenv(ADMINS_ENV_KEY);
+        if (admins == null || admins.isBlank()) {
+            return Set.of();
+        }
+        Set<String> usernames = new HashSet<>();
+        for (String username : admins.split(",")) {
+            if (!username.isBlank()) {
+                usernames.add(username.strip());
+            }
+        }
+        return usernames;
+    }
+
     private boolean hasUserLoggedIn(SocketChannel clientChannel) {
         try {
             if (!loggedInUsers.containsKey(clientChannel)) {
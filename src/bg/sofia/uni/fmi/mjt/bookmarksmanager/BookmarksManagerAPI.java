@@ -1,10 +1,14 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksCursor;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksMatches;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportFormat;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.user.User;
 
 import java.io.File;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,17 +28,36 @@ public interface BookmarksManagerAPI {
             File.separator + "bookmarksmanager" + File.separator + "server"
             + File.separator + "storage" + File.separator + "users" + File.separator + "registeredUsers";
 
+    String PAGED_STORE_FILE = "src" + File.separator +
+            "bg" + File.separator + "sofia" + File.separator +
+            "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server"
+            + File.separator + "storage" + File.separator + "bookmarks.pages";
+
+    String IMPORTS_DIRECTORY = "src" + File.separator +
+            "bg" + File.separator + "sofia" + File.separator +
+            "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server"
+            + File.separator + "storage" + File.separator + "imports";
+
     String register(SocketChannel clientChannel, String username, String password);
     String login(SocketChannel clientChannel, String username, String password);
     String createNewBookmarksGroup(SocketChannel clientChannel, String groupName);
     String addNewBookmarkToGroup(SocketChannel clientChannel, String groupName, String url, boolean isShortened);
     String removeBookmarkFromGroup(SocketChannel clientChannel, String groupName, String bookmarkTitle);
     String cleanUp(SocketChannel clientChannel);
+    String cleanUpAll(SocketChannel clientChannel);
     List<Bookmark> importFromChrome(SocketChannel clientChannel);
+    String importFromFile(SocketChannel clientChannel, Path file, ImportFormat format);
     List<Bookmark> listAll(SocketChannel clientChannel);
+    List<Bookmark> listPage(SocketChannel clientChannel, BookmarksCursor after, int limit);
     List<Bookmark> listByGroup(SocketChannel clientChannel, String groupName);
     List<Bookmark> searchByTags(SocketChannel clientChannel, Set<String> keywords);
     List<Bookmark> searchByTitle(SocketChannel clientChannel, String title);
+    BookmarksMatches streamByTags(SocketChannel clientChannel, Set<String> keywords);
+    BookmarksMatches streamByTitle(SocketChannel clientChannel, String title);
+    List<Bookmark> searchByQuery(SocketChannel clientChannel, String query, int limit);
     void disconnectUser(SocketChannel clientChannel);
+    void shutdown();
     Map<SocketChannel, User> getLoggedInUsers();
 }
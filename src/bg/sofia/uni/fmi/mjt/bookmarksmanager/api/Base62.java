@@ -0,0 +1,54 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+//The codes of the short links: a non-negative number written with the 62 digits
+//and letters, the shortest text which is safe in any part of a url
+public class Base62 {
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int BASE = ALPHABET.length();
+    private static final int MAX_CODE_LENGTH = 11; //of Long.MAX_VALUE
+
+    public static String encode(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only non-negative numbers have codes!");
+        }
+        char[] code = new char[MAX_CODE_LENGTH];
+        int start = code.length;
+        do {
+            code[--start] = ALPHABET.charAt((int) (value % BASE));
+            value /= BASE;
+        } while (value > 0);
+        return new String(code, start, code.length - start);
+    }
+
+    public static long decode(String code) {
+        if (code == null || code.isEmpty() || code.length() > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Invalid code " + code);
+        }
+        long value = 0;
+        try {
+            for (int i = 0; i < code.length(); i++) {
+                int digit = digitOf(code.charAt(i));
+                if (digit < 0) {
+                    throw new IllegalArgumentException("Invalid code " + code);
+                }
+                value = Math.addExact(Math.multiplyExact(value, BASE), digit);
+            }
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Too long code " + code, e);
+        }
+        return value;
+    }
+
+    private static int digitOf(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 36;
+        }
+        return -1;
+    }
+}
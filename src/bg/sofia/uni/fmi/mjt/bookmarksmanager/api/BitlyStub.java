@@ -0,0 +1,102 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+//An in-process stand-in for the shorten endpoint of Bitly, so that the shortening
+//can be run and measured offline: it answers as Bitly does (the same link for the
+//same long url) after the given latency, and counts the requests it served.
+//Run it with 'java ...BitlyStub <port> <latency-millis>' and start the server with
+//-Dbitly.api.uri=http://localhost:<port>/v4/shorten to shorten through it.
+
+public class BitlyStub implements Closeable {
+    public static final String SHORTEN_PATH = "/v4/shorten";
+
+    private static final String SHORT_LINK_PREFIX = "https://bit.ly/";
+    private static final String ORIGINAL_BOOKMARK_KEY = "long_url";
+    private static final String SHORTENED_LINK_KEY = "link";
+    private static final int SUCCESS_CODE = 200;
+    private static final int BAD_REQUEST_CODE = 400;
+    private static final Gson GSON = new Gson();
+
+    private final HttpServer server;
+    private final Duration latency;
+    private final Map<String, String> shortLinks;
+    private final AtomicLong nextId;
+    private final AtomicLong requestsCount;
+
+    //port 0 for any free one
+    public BitlyStub(int port, Duration latency) throws IOException {
+        this.latency = latency;
+        this.shortLinks = new ConcurrentHashMap<>();
+        this.nextId = new AtomicLong();
+        this.requestsCount = new AtomicLong();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext(SHORTEN_PATH, this::shorten);
+        server.start();
+    }
+
+    public URI getUri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + SHORTEN_PATH);
+    }
+
+    public long getRequestsCount() {
+        return requestsCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void shorten(HttpExchange exchange) throws IOException {
+        requestsCount.incrementAndGet();
+        try (exchange) {
+            Thread.sleep(latency.toMillis());
+            Object longUrl;
+            try (Reader body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                Map<?, ?> request = GSON.fromJson(body, Map.class);
+                longUrl = request == null ? null : request.get(ORIGINAL_BOOKMARK_KEY);
+            } catch (JsonParseException e) {
+                longUrl = null;
+            }
+            if (!(longUrl instanceof String url)) {
+                exchange.sendResponseHeaders(BAD_REQUEST_CODE, -1);
+                return;
+            }
+            String shortLink = shortLinks.computeIfAbsent(url,
+                    ignored -> SHORT_LINK_PREFIX + Long.toString(nextId.incrementAndGet(), Character.MAX_RADIX));
+            byte[] reply = GSON.toJson(Map.of(SHORTENED_LINK_KEY, shortLink, ORIGINAL_BOOKMARK_KEY, url))
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(SUCCESS_CODE, reply.length);
+            exchange.getResponseBody().write(reply);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        Duration latency = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 0);
+        BitlyStub stub = new BitlyStub(port, latency);
+        System.out.println("Bitly stub listening on " + stub.getUri());
+    }
+}
@@ -0,0 +1,234 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+//Shortens links through the shortening service without asking it twice for the
+//same one: the short links are cached (and appended to cacheFile, so they survive
+//restarts) and the concurrent requests for a link not cached yet wait for a single
+//request to the service. At most requestsPerSecond requests are sent per second,
+//evenly spaced, so that a burst of --shorten never exceeds the service's limits;
+//a link whose turn would come later than maxWait is left as it is instead of queued.
+//The links which could not be shortened are not cached. Above maxEntries the least
+//recently used links are dropped and once cacheFile holds COMPACTION_FACTOR times
+//more lines than that it is rewritten with only the links kept.
+
+public class LinkShortener {
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    public static final int DEFAULT_REQUESTS_PER_SECOND = 10;
+
+    private static final String DEFAULT_CACHE_FILE = "src" + File.separator +
+            "bg" + File.separator + "sofia" + File.separator +
+            "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server"
+            + File.separator + "storage" + File.separator + "shortened-links.log";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int COMPACTION_FACTOR = 2;
+    private static final Gson GSON = new Gson();
+
+    private final Function<String, CompletableFuture<String>> service;
+    private final Path cacheFile; //null if the cache is not persisted
+    private final long sendIntervalNanos;
+    private final long maxWaitNanos;
+    private final int maxEntries;
+    private final Map<String, String> shortLinks; //least recently used first, guarded by this
+    private final Map<String, CompletableFuture<String>> inFlight;
+    private long nextSendNanos; //guarded by this
+    private int linesCount; //lines in cacheFile, guarded by this
+
+    private record Entry(String longUrl, String shortUrl) {
+    }
+
+    //service completes with the original url if it could not shorten it
+    public LinkShortener(Function<String, CompletableFuture<String>> service, Path cacheFile,
+                         int maxEntries, int requestsPerSecond) {
+        this(service, cacheFile, maxEntries, requestsPerSecond, ShortenLinkAPIHandler.REQUEST_TIMEOUT);
+    }
+
+    public LinkShortener(Function<String, CompletableFuture<String>> service, Path cacheFile,
+                         int maxEntries, int requestsPerSecond, Duration maxWait) {
+        if (maxEntries <= 0 || requestsPerSecond <= 0 || maxWait.isNegative()) {
+            throw new IllegalArgumentException("Cache size, requests rate and wait must be positive!");
+        }
+        this.service = service;
+        this.cacheFile = cacheFile;
+        this.sendIntervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxEntries = maxEntries;
+        this.shortLinks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.inFlight = new ConcurrentHashMap<>();
+        this.nextSendNanos = System.nanoTime();
+        if (cacheFile != null) {
+            load();
+        }
+    }
+
+    //the shortener of Bitly with the cache kept next to the other storage files
+    public static LinkShortener getDefault() {
+        return DefaultShortenerHolder.INSTANCE;
+    }
+
+    //the original url if it could not be shortened
+    public String shorten(String url) {
+        return shortenAsync(url).join();
+    }
+
+    //never completes exceptionally
+    public CompletableFuture<String> shortenAsync(String url) {
+        String cached = getCached(url);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<String> request = new CompletableFuture<>();
+        CompletableFuture<String> sent = inFlight.putIfAbsent(url, request);
+        if (sent != null) {
+            return sent;
+        }
+        cached = getCached(url); //the previous request may have completed meanwhile
+        if (cached != null) {
+            inFlight.remove(url, request);
+            request.complete(cached);
+            return request;
+        }
+        send(url).whenComplete((shortUrl, e) -> {
+            if (e != null) {
+                ExceptionsLogger.logClientException(e instanceof Exception exception ? exception :
+                        new CompletionException(e));
+                shortUrl = url;
+            } else if (shortUrl != null && !shortUrl.equals(url)) {
+                put(url, shortUrl); //before the request is done, so that no other one is sent
+            }
+            inFlight.remove(url, request);
+            request.complete(shortUrl == null ? url : shortUrl);
+        });
+        return request;
+    }
+
+    public synchronized int size() {
+        return shortLinks.size();
+    }
+
+    private synchronized String getCached(String url) {
+        return shortLinks.get(url);
+    }
+
+    //completes with the original url if its turn is too far away
+    private CompletableFuture<String> send(String url) {
+        long delayNanos = nextSendDelayNanos();
+        if (delayNanos < 0) {
+            return CompletableFuture.completedFuture(url);
+        }
+        try {
+            if (delayNanos == 0) {
+                return service.apply(url);
+            }
+            return CompletableFuture.runAsync(() -> { },
+                    CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS))
+                    .thenCompose(ignored -> service.apply(url));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    //how long the next request waits for its turn, -1 if longer than maxWait (no turn is taken then)
+    private synchronized long nextSendDelayNanos() {
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextSendNanos);
+        if (slot - now > maxWaitNanos) {
+            return -1;
+        }
+        nextSendNanos = slot + sendIntervalNanos;
+        return slot - now;
+    }
+
+    //a lost line only costs shortening the link again
+    private synchronized void put(String longUrl, String shortUrl) {
+        shortLinks.put(longUrl, shortUrl);
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            Files.writeString(cacheFile, GSON.toJson(new Entry(longUrl, shortUrl)) + System.lineSeparator(),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            return;
+        }
+        if (++linesCount > COMPACTION_FACTOR * maxEntries) {
+            compact();
+        }
+    }
+
+    //the file is rewritten with only the links kept once it holds more than those
+    private void load() {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                linesCount++;
+                try {
+                    Entry entry = GSON.fromJson(line, Entry.class);
+                    if (entry != null && entry.longUrl() != null && entry.shortUrl() != null) {
+                        shortLinks.put(entry.longUrl(), entry.shortUrl());
+                    }
+                } catch (JsonParseException e) { //a line cut by a crash
+                    ExceptionsLogger.logClientException(e);
+                }
+            }
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            return;
+        }
+        if (linesCount > shortLinks.size()) {
+            compact();
+        }
+    }
+
+    private synchronized void compact() {
+        Path temp = Path.of(cacheFile + TEMP_SUFFIX);
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> link : shortLinks.entrySet()) {
+                    writer.write(GSON.toJson(new Entry(link.getKey(), link.getValue())));
+                    writer.write(System.lineSeparator());
+                }
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            linesCount = shortLinks.size();
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+        }
+    }
+
+    private static final class DefaultShortenerHolder {
+        private static final LinkShortener INSTANCE = new LinkShortener(
+                ShortenLinkAPIHandler::getShortenedLinkAsync, Path.of(DEFAULT_CACHE_FILE),
+                DEFAULT_MAX_ENTRIES, DEFAULT_REQUESTS_PER_SECOND);
+    }
+}
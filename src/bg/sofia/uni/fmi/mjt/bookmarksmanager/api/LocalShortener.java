@@ -0,0 +1,119 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+
+//Mints short links itself instead of asking Bitly: a url is appended to the
+//ShortLinkTable and its id, in Base62, is the code of its link- no round trip at
+//all. The links are resolved by a redirect endpoint which answers GET <code> with
+//a permanent redirect to the url, on a virtual thread per request. The codes are
+//sequential, so the links can be enumerated; every shortening mints a new one.
+
+public final class LocalShortener implements Closeable {
+    public static final String PORT_PROPERTY = "shortener.local.port";
+    public static final String BASE_URI_PROPERTY = "shortener.local.base-uri"; //as the clients reach it
+    public static final String DEFAULT_TABLE_FILE = "src" + File.separator +
+            "bg" + File.separator + "sofia" + File.separator +
+            "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server"
+            + File.separator + "storage" + File.separator + "short-links.table";
+
+    private static final String DEFAULT_HOST = "localhost";
+    private static final String GET_METHOD = "GET";
+    private static final String HEAD_METHOD = "HEAD";
+    private static final String LOCATION_HEADER = "Location";
+    private static final int MOVED_PERMANENTLY_CODE = 301;
+    private static final int NOT_FOUND_CODE = 404;
+    private static final int METHOD_NOT_ALLOWED_CODE = 405;
+    private static final int NO_BODY = -1;
+
+    private final ShortLinkTable table;
+    private final HttpServer server;
+    private final String baseUri;
+
+    //bound to localhost only
+    public LocalShortener(ShortLinkTable table, int port, String baseUri) throws IOException {
+        this(table, DEFAULT_HOST, port, baseUri);
+    }
+
+    //port 0 for any free one; baseUri null for http://<host>:<port>/
+    public LocalShortener(ShortLinkTable table, String host, int port, String baseUri) throws IOException {
+        this.table = table;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        String uri = baseUri != null ? baseUri : "http://" + host + ":" + server.getAddress().getPort() + "/";
+        this.baseUri = uri.endsWith("/") ? uri : uri + "/";
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::redirect); //last, once every field is set
+        server.start();
+    }
+
+    //the shortener configured by PORT_PROPERTY and BASE_URI_PROPERTY, bound to the host
+    //of the server; null if the port is not set
+    public static LocalShortener fromProperties(String host) throws IOException {
+        Integer port = Integer.getInteger(PORT_PROPERTY);
+        if (port == null) {
+            return null;
+        }
+        return new LocalShortener(new ShortLinkTable(Path.of(DEFAULT_TABLE_FILE)), host, port,
+                System.getProperty(BASE_URI_PROPERTY));
+    }
+
+    public String shorten(String url) {
+        return baseUri + Base62.encode(table.append(url));
+    }
+
+    //null if there is no such link
+    public String resolve(String code) {
+        try {
+            return table.get(Base62.decode(code));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String getBaseUri() {
+        return baseUri;
+    }
+
+    //where the redirect endpoint listens
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        table.close();
+    }
+
+    private void redirect(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!GET_METHOD.equals(method) && !HEAD_METHOD.equals(method)) {
+                exchange.sendResponseHeaders(METHOD_NOT_ALLOWED_CODE, NO_BODY);
+                return;
+            }
+            String url = resolve(exchange.getRequestURI().getRawPath().substring(1));
+            if (url == null) {
+                exchange.sendResponseHeaders(NOT_FOUND_CODE, NO_BODY);
+                return;
+            }
+            try {
+                exchange.getResponseHeaders().set(LOCATION_HEADER, url);
+            } catch (IllegalArgumentException e) { //a url which can not be a header
+                ExceptionsLogger.logClientException(e);
+                exchange.sendResponseHeaders(NOT_FOUND_CODE, NO_BODY);
+                return;
+            }
+            exchange.sendResponseHeaders(MOVED_PERMANENTLY_CODE, NO_BODY);
+        }
+    }
+}
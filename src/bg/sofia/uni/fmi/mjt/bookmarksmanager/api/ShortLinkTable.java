@@ -0,0 +1,235 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//The urls of the local short links, by their ids, in a memory-mapped file mapped
+//segment by segment. A record is [length int][UTF-8 url] and the id of a url is
+//the number of its record, so the ids are a monotonic sequence kept by the table
+//itself. The file is only appended to and the appends are committed in groups:
+//append writes the url and waits until a commit forces it, its length and those
+//of the urls appended meanwhile to the disk- the urls first, then the lengths, so
+//two forces per group instead of per url. A zero length ends the table, so a
+//record cut by a crash (or a power loss) is not read back, while every id handed
+//out survives one. An id can be read once its length is written.
+//Records never span segments; SKIP_LENGTH marks the unused rest of a segment.
+//Only the offsets of the records are kept on the heap (8 bytes per url).
+
+public class ShortLinkTable implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final int SKIP_LENGTH = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Path path;
+    private final int segmentSize;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments;
+    private final Object commitLock; //held by the commit which is forcing, taken before this
+    private long[] offsets; //of the record of id i + 1
+    private int count; //of the records appended
+    private int committed; //of the records with their lengths written
+    private long end; //where the next record goes
+    private List<PendingLength> pending; //the lengths to be written by the next commit, in order
+
+    //id is 0 for a SKIP_LENGTH
+    private record PendingLength(long offset, int length, int id) {
+    }
+
+    //the part of a segment to be forced
+    private record Span(MappedByteBuffer segment, int position, int length) {
+    }
+
+    public ShortLinkTable(Path path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public ShortLinkTable(Path path, int segmentSize) throws IOException {
+        this.path = path;
+        this.segmentSize = segmentSize;
+        this.segments = new ArrayList<>();
+        this.commitLock = new Object();
+        this.pending = new ArrayList<>();
+        this.offsets = new long[INITIAL_CAPACITY];
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        readOffsets(channel.size());
+    }
+
+    //returns the id of the url once it is on the disk
+    public long append(String url) {
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("Url to be shortened must not be null or empty!");
+        }
+        byte[] record = url.getBytes(StandardCharsets.UTF_8);
+        int size = Integer.BYTES + record.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("A url of " + record.length +
+                    " bytes does not fit in a segment");
+        }
+        int id = write(record);
+        commit(id);
+        return id;
+    }
+
+    //null if there is no such id
+    public synchronized String get(long id) {
+        if (id < 1 || id > committed) {
+            return null;
+        }
+        long offset = offsets[(int) (id - 1)];
+        MappedByteBuffer segment = segmentOf(offset);
+        int position = positionOf(offset);
+        byte[] url = new byte[segment.getInt(position)];
+        segment.get(position + Integer.BYTES, url);
+        return new String(url, StandardCharsets.UTF_8);
+    }
+
+    public synchronized long size() {
+        return committed;
+    }
+
+    //every record is already forced by append; this forces whatever else is mapped
+    public synchronized void force() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (commitLock) {
+            synchronized (this) {
+                force();
+                segments.clear(); //the mappings go away with the buffers
+                channel.close();
+            }
+        }
+    }
+
+    //the url without its length, which is left to the next commit; returns its id
+    private synchronized int write(byte[] record) {
+        int size = Integer.BYTES + record.length;
+        int position = positionOf(end);
+        if (position + size > segmentSize) { //the rest of the segment is left unused
+            if (position + Integer.BYTES <= segmentSize) {
+                segmentOf(end); //mapped now, so that the commit finds it
+                pending.add(new PendingLength(end, SKIP_LENGTH, 0));
+            }
+            end += segmentSize - position;
+            position = 0;
+        }
+        segmentOf(end).put(position + Integer.BYTES, record);
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * count);
+        }
+        offsets[count++] = end;
+        pending.add(new PendingLength(end, record.length, count));
+        end += size;
+        return count;
+    }
+
+    //The appends waiting here meanwhile find their ids committed by this one, so the
+    //forces are shared by all of them. If a force fails the lengths are kept for the
+    //next commit to write.
+    private void commit(int id) {
+        synchronized (commitLock) {
+            List<PendingLength> batch;
+            List<Span> spans;
+            synchronized (this) {
+                if (committed >= id) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                spans = spansOf(batch);
+            }
+            try {
+                spans.forEach(span -> span.segment().force(span.position(), span.length()));
+                int lastId = committed;
+                synchronized (this) {
+                    for (PendingLength length : batch) {
+                        segmentOf(length.offset()).putInt(positionOf(length.offset()), length.length());
+                        lastId = Math.max(lastId, length.id());
+                    }
+                }
+                spans.forEach(span -> span.segment().force(span.position(), span.length()));
+                synchronized (this) {
+                    committed = lastId; //the records exist from now on
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    batch.addAll(pending);
+                    pending = batch;
+                }
+                throw e;
+            }
+        }
+    }
+
+    //from the first record of the batch to the end of its last one, segment by segment
+    private List<Span> spansOf(List<PendingLength> batch) {
+        List<Span> spans = new ArrayList<>();
+        if (batch.isEmpty()) {
+            return spans;
+        }
+        long from = batch.getFirst().offset();
+        PendingLength last = batch.getLast();
+        long to = last.offset() + Integer.BYTES + Math.max(last.length(), 0);
+        while (from < to) {
+            int position = positionOf(from);
+            int length = (int) Math.min(to - from, segmentSize - position);
+            spans.add(new Span(segmentOf(from), position, length));
+            from += length;
+        }
+        return spans;
+    }
+
+    private void readOffsets(long fileSize) {
+        while (end < fileSize) {
+            int position = positionOf(end);
+            if (position + Integer.BYTES > segmentSize) {
+                end += segmentSize - position;
+                continue;
+            }
+            int length = segmentOf(end).getInt(position);
+            if (length == SKIP_LENGTH) {
+                end += segmentSize - position;
+                continue;
+            }
+            if (length <= 0 || position + Integer.BYTES + length > segmentSize) {
+                return; //the end of the table, or a record cut by a crash
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            }
+            offsets[count++] = end;
+            committed = count;
+            end += Integer.BYTES + length;
+        }
+    }
+
+    private int positionOf(long offset) {
+        return (int) (offset % segmentSize);
+    }
+
+    private MappedByteBuffer segmentOf(long offset) {
+        int index = (int) (offset / segmentSize);
+        try {
+            while (segments.size() <= index) { //mapping past the end grows the file
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                        (long) segments.size() * segmentSize, segmentSize));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map the short links file " + path, e);
+        }
+        return segments.get(index);
+    }
+}
@@ -2,17 +2,30 @@ package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+//The links are shortened by Bitly (through the LinkShortener cache) unless a
+//LocalShortener is used instead. getShortenedLink* make a single round trip to
+//Bitly, or to API_URI_PROPERTY if it is set, e.g. to a BitlyStub. Without
+//BITLY_ENV_KEY they are sent unauthorized, so Bitly itself refuses them and the
+//original url is kept- only the stub shortens links then.
 
 public class ShortenLinkAPIHandler {
+    public static final String API_URI_PROPERTY = "bitly.api.uri";
+
     private static final String BITLY_API_KEY = System.getenv("BITLY_ENV_KEY");
-    private static final String API_REQUEST_URI = "https://api-ssl.bitly.com/v4/shorten";
+    private static final URI API_REQUEST_URI = URI.create(System.getProperty(API_URI_PROPERTY,
+            "https://api-ssl.bitly.com/v4/shorten"));
     private static final String AUTHORIZATION_HEADER_NAME = "Authorization";
     private static final String AUTHORIZATION_HEADER_VALUE = "Bearer ";
     private static final String CONTENT_TYPE_HEADER = "Content-Type";
@@ -21,45 +34,87 @@ public class ShortenLinkAPIHandler {
     private static final String BITLY_API_DOMAIN = "bit.ly";
     private static final String BITLY_API_DOMAIN_KEY= "domain";
     private static final String SHORTENED_LINK_KEY = "link";
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final Gson GSON = new Gson();
 
     private static final int SUCCESS_CODE = 200;
     private static HttpClient client = HttpClient.newHttpClient();
+    private static volatile LocalShortener localShortener; //null while Bitly shortens the links
 
     static {
         if (BITLY_API_KEY == null || BITLY_API_KEY.isBlank()) {
             ExceptionsLogger.logClientException(new
                     IllegalStateException("Missing BITLY_ENV_KEY" +
                     " environment variable!"));
-            throw new IllegalStateException("Can not use URL shortening " +
-                    "since API key for Bitly is missing!.");
         }
     }
 
+    //the links are minted by the given shortener from now on, or by Bitly again for null
+    public static void useLocalShortener(LocalShortener shortener) {
+        localShortener = shortener;
+    }
+
+    //the short link of the provider in use; the original url if it could not be shortened
+    public static String shorten(String originalUrl) {
+        LocalShortener local = localShortener;
+        return local != null ? local.shorten(originalUrl) : LinkShortener.getDefault().shorten(originalUrl);
+    }
+
+    //the original url if it could not be shortened
     public static String getShortenedLink(String originalUrl) {
-        Gson gson = new Gson();
-        String requestPayload = gson.toJson(Map.of(
+        try {
+            HttpResponse<String> response = client.send(newRequest(API_REQUEST_URI, originalUrl),
+                    HttpResponse.BodyHandlers.ofString());
+            return shortenedLinkOf(response, originalUrl);
+        } catch (IOException | InterruptedException e) {
+            ExceptionsLogger.logClientException(e);
+            return originalUrl;
+        }
+    }
+
+    public static CompletableFuture<String> getShortenedLinkAsync(String originalUrl) {
+        return getShortenedLinkAsync(client, API_REQUEST_URI, originalUrl);
+    }
+
+    //completes with the original url if it could not be shortened, never exceptionally
+    public static CompletableFuture<String> getShortenedLinkAsync(HttpClient httpClient, URI endpoint,
+                                                                  String originalUrl) {
+        return httpClient.sendAsync(newRequest(endpoint, originalUrl), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> shortenedLinkOf(response, originalUrl))
+                .exceptionally(e -> {
+                    ExceptionsLogger.logClientException(e instanceof Exception exception ? exception :
+                            new CompletionException(e));
+                    return originalUrl;
+                });
+    }
+
+    private static HttpRequest newRequest(URI endpoint, String originalUrl) {
+        String requestPayload = GSON.toJson(Map.of(
                 ORIGINAL_BOOKMARK_KEY, originalUrl,
                 BITLY_API_DOMAIN_KEY, BITLY_API_DOMAIN));
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(API_REQUEST_URI))
-                .header(AUTHORIZATION_HEADER_NAME, AUTHORIZATION_HEADER_VALUE + BITLY_API_KEY)
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(endpoint)
                 .header(CONTENT_TYPE_HEADER, CONTENT_FORMAT)
-                .POST(HttpRequest.BodyPublishers.ofString(requestPayload))
-                .build();
+                .timeout(REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(requestPayload));
+        if (BITLY_API_KEY != null && !BITLY_API_KEY.isBlank()) {
+            request.header(AUTHORIZATION_HEADER_NAME, AUTHORIZATION_HEADER_VALUE + BITLY_API_KEY);
+        }
+        return request.build();
+    }
 
+    private static String shortenedLinkOf(HttpResponse<String> response, String originalUrl) {
+        if (response.statusCode() != SUCCESS_CODE) {
+            ExceptionsLogger.logClientException(new RuntimeException("Could not send" +
+                    " a request to Bitly API. Status code: " + response.statusCode()));
+            return originalUrl;
+        }
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == SUCCESS_CODE) {
-                Map<?, ?> responseBody = gson.fromJson(response.body(), Map.class);
-                return (String) responseBody.get(SHORTENED_LINK_KEY);
-            } else {
-                ExceptionsLogger.logClientException(new RuntimeException("Could not send" +
-                        " a request to Bitly API. Status code: " + response.statusCode()));
-                return originalUrl;
-            }
-        } catch (IOException | InterruptedException e) {
+            Map<?, ?> responseBody = GSON.fromJson(response.body(), Map.class);
+            Object link = responseBody == null ? null : responseBody.get(SHORTENED_LINK_KEY);
+            return link instanceof String shortened ? shortened : originalUrl;
+        } catch (JsonParseException e) {
             ExceptionsLogger.logClientException(e);
             return originalUrl;
         }
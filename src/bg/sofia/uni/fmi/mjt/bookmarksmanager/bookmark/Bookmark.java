@@ -1,39 +1,100 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark;
 
-import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.api.ShortenLinkAPIHandler;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.EnrichedPage;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.PageEnricher;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
-import static bg.sofia.uni.fmi.mjt.bookmarksmanager.api.ShortenLinkAPIHandler.getShortenedLink;
+//termFrequencies holds how many times each keyword occurs in the page, for ranked
+//search; it is null for bookmarks whose keywords were not counted
 
-public record Bookmark (String title, String url,
-                       Set<String> keywords, String groupName) implements Serializable {
+public record Bookmark (String title, String url, Set<String> keywords, String groupName,
+                        Map<String, Integer> termFrequencies) implements Serializable {
+
+    public Bookmark(String title, String url, Set<String> keywords, String groupName) {
+        this(title, url, keywords, groupName, null);
+    }
 
     public static Bookmark of(String url, String groupName, boolean isShortened) {
-       if (url == null || url.isEmpty() || url.isBlank() ||
-               groupName == null || groupName.isEmpty() ||
-               groupName.isBlank()) {
-           throw new IllegalArgumentException("Bookmark and group's " +
-                   "name can NOT be null or empty!");
-       }
-       try {
-           if (isShortened) {
-               url = getShortenedLink(url);
-           }
-       } catch (IllegalStateException e) {
-           throw new RuntimeException("Could not shorten" +
-                   " link due to missing API key or a request perform error!");
+        return of(url, groupName, isShortened, PageEnricher.getDefault());
+    }
+
+    //the title and the keywords are taken from a single fetch of the page
+    public static Bookmark of(String url, String groupName, boolean isShortened, PageEnricher enricher) {
+       validate(url, groupName);
+       if (isShortened) {
+           url = ShortenLinkAPIHandler.shorten(url); //the original url if it could not be shortened
        }
-       HtmlTokenizer tokenizer = new HtmlTokenizer();
-       return new Bookmark(tokenizer.getTitle(url), url, tokenizer.getKeywords(url), groupName);
+       return of(url, groupName, enricher.enrich(url));
+    }
+
+    //the bookmark of an already enriched page (null if the page could not be fetched)
+    public static Bookmark of(String url, String groupName, EnrichedPage page) {
+        if (page == null) {
+            return new Bookmark(null, url, null, groupName, null);
+        }
+        return new Bookmark(page.title(), url, new HashSet<>(page.termFrequencies().keySet()),
+                groupName, page.termFrequencies());
+    }
+
+    //stands for the bookmark until its page is enriched; titled by the url, so
+    //that it can be found and removed meanwhile
+    public static Bookmark placeholder(String url, String groupName) {
+        validate(url, groupName);
+        return new Bookmark(url, url, null, groupName, null);
+    }
+
+    //writes the same text as toString() without building intermediate strings,
+    //so that large listings can be encoded straight into the reply buffers
+    public void appendTo(Appendable out) throws IOException {
+        out.append("Bookmark info: title: ").append(title).append(System.lineSeparator())
+                .append("url: ").append(url).append(System.lineSeparator())
+                .append("keywords: ");
+        appendKeywords(out);
+        out.append(System.lineSeparator())
+                .append("groupName: ").append(groupName).append(System.lineSeparator());
     }
 
     @Override
     public String toString() {
-        return "Bookmark info: title: " + title + System.lineSeparator() +
-                "url: " + url + System.lineSeparator() +
-                "keywords: " + keywords+ System.lineSeparator() +
-                "groupName: " + groupName + System.lineSeparator();
+        StringBuilder builder = new StringBuilder();
+        try {
+            appendTo(builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //StringBuilder never throws
+        }
+        return builder.toString();
+    }
+
+    private static void validate(String url, String groupName) {
+        if (url == null || url.isEmpty() || url.isBlank() ||
+                groupName == null || groupName.isEmpty() ||
+                groupName.isBlank()) {
+            throw new IllegalArgumentException("Bookmark and group's " +
+                    "name can NOT be null or empty!");
+        }
+    }
+
+    private void appendKeywords(Appendable out) throws IOException {
+        if (keywords == null) {
+            out.append("null");
+            return;
+        }
+        out.append('[');
+        Iterator<String> iterator = keywords.iterator();
+        while (iterator.hasNext()) {
+            out.append(iterator.next());
+            if (iterator.hasNext()) {
+                out.append(", ");
+            }
+        }
+        out.append(']');
     }
 }
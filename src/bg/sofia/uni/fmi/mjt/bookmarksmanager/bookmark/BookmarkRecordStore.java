@@ -0,0 +1,255 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+//Bookmark records kept off the heap, in a memory-mapped scratch file mapped
+//segment by segment. A record lies in a slot of [capacity int][length int] and then
+//the title, url, group name, keywords and term frequencies; a string is
+//[length int][UTF-8 bytes] and a collection [count int] and its items, both with
+//NULL_LENGTH for null. Slots never span segments and their sizes are multiples of
+//SLOT_ALIGNMENT. A released slot is reused by a later record which fits it (and is
+//less than twice smaller), so the file stays about as large as the most records
+//ever live at once. The file is recreated empty when the store is opened, since
+//the bookmarks themselves are persisted by their storages.
+
+public class BookmarkRecordStore implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int NULL_LENGTH = -1;
+    private static final int SLOT_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int SLOT_ALIGNMENT = 16;
+
+    private final Path path;
+    private final int segmentSize;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments;
+    private final NavigableMap<Integer, FreeSlots> freeSlots; //by their capacities
+    private long end; //where the next new slot goes
+    private long deadBytes; //of the free slots and the unused ends of the segments
+
+    public BookmarkRecordStore(Path path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public BookmarkRecordStore(Path path, int segmentSize) throws IOException {
+        this.path = path;
+        this.segmentSize = segmentSize;
+        this.segments = new ArrayList<>();
+        this.freeSlots = new TreeMap<>();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    //returns the offset of the record
+    public synchronized long append(Bookmark bookmark) {
+        byte[] record = encode(bookmark);
+        int size = SLOT_HEADER_SIZE + record.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("A bookmark record of " + size +
+                    " bytes does not fit in a segment");
+        }
+        long offset = takeFreeSlot(size);
+        if (offset < 0) {
+            offset = newSlot(Math.min(segmentSize, (size + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT));
+        }
+        int position = positionOf(offset);
+        segmentOf(offset).putInt(position + Integer.BYTES, record.length)
+                .put(position + SLOT_HEADER_SIZE, record);
+        return offset;
+    }
+
+    public synchronized Bookmark read(long offset) {
+        ByteBuffer record = recordAt(offset);
+        String title = readString(record);
+        String url = readString(record);
+        String groupName = readString(record);
+        Set<String> keywords = null;
+        int keywordsCount = record.getInt();
+        if (keywordsCount != NULL_LENGTH) {
+            keywords = new HashSet<>();
+            for (int i = 0; i < keywordsCount; i++) {
+                keywords.add(readString(record));
+            }
+        }
+        Map<String, Integer> termFrequencies = null;
+        int termsCount = record.getInt();
+        if (termsCount != NULL_LENGTH) {
+            termFrequencies = new HashMap<>();
+            for (int i = 0; i < termsCount; i++) {
+                termFrequencies.put(readString(record), record.getInt());
+            }
+        }
+        return new Bookmark(title, url, keywords, groupName, termFrequencies);
+    }
+
+    //decodes only the title, which is the first field
+    public synchronized String readTitle(long offset) {
+        return readString(recordAt(offset));
+    }
+
+    //frees the slot of the record for the next ones; the record must not be read any more
+    public synchronized void release(long offset) {
+        int capacity = segmentOf(offset).getInt(positionOf(offset));
+        freeSlots.computeIfAbsent(capacity, c -> new FreeSlots()).push(offset);
+        deadBytes += capacity;
+    }
+
+    public synchronized long getSize() {
+        return end;
+    }
+
+    public synchronized long getDeadBytes() {
+        return deadBytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segments.clear(); //the mappings go away with the buffers
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    private ByteBuffer recordAt(long offset) {
+        if (offset < 0 || offset >= end) {
+            throw new IllegalArgumentException("No bookmark record at " + offset);
+        }
+        ByteBuffer segment = segmentOf(offset);
+        int position = positionOf(offset);
+        return segment.slice(position + SLOT_HEADER_SIZE, segment.getInt(position + Integer.BYTES));
+    }
+
+    //-1 if no free slot fits the record
+    private long takeFreeSlot(int size) {
+        Map.Entry<Integer, FreeSlots> fitting = freeSlots.ceilingEntry(size);
+        if (fitting == null || fitting.getKey() >= 2 * size) {
+            return -1;
+        }
+        long offset = fitting.getValue().pop();
+        if (fitting.getValue().isEmpty()) {
+            freeSlots.remove(fitting.getKey());
+        }
+        deadBytes -= fitting.getKey();
+        return offset;
+    }
+
+    private long newSlot(int capacity) {
+        int position = positionOf(end);
+        if (position + capacity > segmentSize) { //the rest of the segment is left unused
+            deadBytes += segmentSize - position;
+            end += segmentSize - position;
+            position = 0;
+        }
+        segmentOf(end).putInt(position, capacity);
+        long offset = end;
+        end += capacity;
+        return offset;
+    }
+
+    private int positionOf(long offset) {
+        return (int) (offset % segmentSize);
+    }
+
+    private MappedByteBuffer segmentOf(long offset) {
+        int index = (int) (offset / segmentSize);
+        try {
+            while (segments.size() <= index) { //mapping past the end grows the file
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                        (long) segments.size() * segmentSize, segmentSize));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map the bookmark records file " + path, e);
+        }
+        return segments.get(index);
+    }
+
+    private static byte[] encode(Bookmark bookmark) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeString(out, bookmark.title());
+        writeString(out, bookmark.url());
+        writeString(out, bookmark.groupName());
+        if (bookmark.keywords() == null) {
+            writeInt(out, NULL_LENGTH);
+        } else {
+            writeInt(out, bookmark.keywords().size());
+            for (String keyword : bookmark.keywords()) {
+                writeString(out, keyword);
+            }
+        }
+        if (bookmark.termFrequencies() == null) {
+            writeInt(out, NULL_LENGTH);
+        } else {
+            writeInt(out, bookmark.termFrequencies().size());
+            for (Map.Entry<String, Integer> term : bookmark.termFrequencies().entrySet()) {
+                writeString(out, term.getKey());
+                writeInt(out, term.getValue());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeInt(out, NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class FreeSlots {
+        private long[] offsets = new long[4];
+        private int count;
+
+        void push(long offset) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            }
+            offsets[count++] = offset;
+        }
+
+        long pop() {
+            return offsets[--count];
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark;
 
+import java.io.Serial;
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -9,6 +11,8 @@ import java.util.Set;
 
 
 public class BookmarksGroup implements Serializable {
+    @Serial
+    private static final long serialVersionUID = -3292600822021388074L; //of the users files before the accounts table
 
     private final String groupName;
     private final Map<String, Bookmark> bookmarks;
@@ -60,11 +64,34 @@ public class BookmarksGroup implements Serializable {
         }
         return bookmarks.containsKey(bookmarkTitle);
     }
+    public Bookmark getBookmark(String bookmarkTitle) {
+        return bookmarks.get(bookmarkTitle);
+    }
+
+    public int getBookmarksCount() {
+        return bookmarks.size();
+    }
+
+    //frees the records of off-heap bookmarks once the group is dropped
+    public void releaseRecords() {
+        if (bookmarks instanceof OffHeapBookmarks offHeapBookmarks) {
+            offHeapBookmarks.clear();
+        }
+    }
+
+    //with bookmarks of its own on the heap
+    public BookmarksGroup copy() {
+        return new BookmarksGroup(groupName, new HashMap<>(bookmarks));
+    }
+
     public String getGroupName() {
         return groupName;
     }
 
     public List<Bookmark> getBookmarks() {
+        if (bookmarks instanceof OffHeapBookmarks offHeapBookmarks) {
+            return offHeapBookmarks.views(); //decoded one by one as they are read
+        }
         return bookmarks.values().stream().toList();
     }
 }
@@ -0,0 +1,237 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+//A title -> bookmark map whose bookmarks are records in a BookmarkRecordStore.
+//The heap holds only an open-addressing table of two parallel arrays- the titles'
+//hashes and the records' offsets- and a Bookmark is decoded from its record each
+//time it is read, so only the bookmarks that are actually rendered get materialized.
+//The key of a bookmark must be its title. Not thread-safe- the owner synchronizes.
+
+public final class OffHeapBookmarks extends AbstractMap<String, Bookmark> {
+    private static final long EMPTY = -1;
+    private static final long REMOVED = -2;
+    private static final int INITIAL_CAPACITY = 16; //a power of two
+
+    private final BookmarkRecordStore store;
+    private int[] hashes;
+    private long[] offsets;
+    private int size;
+    private int usedSlots; //the removed ones included, as they lengthen the probes too
+
+    public OffHeapBookmarks(BookmarkRecordStore store) {
+        this.store = store;
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.offsets = new long[INITIAL_CAPACITY];
+        Arrays.fill(offsets, EMPTY);
+    }
+
+    public OffHeapBookmarks(BookmarkRecordStore store, Collection<Bookmark> bookmarks) {
+        this(store);
+        for (Bookmark bookmark : bookmarks) {
+            put(bookmark.title(), bookmark);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public Bookmark get(Object key) {
+        int slot = find(key);
+        return slot < 0 ? null : store.read(offsets[slot]);
+    }
+
+    //returns the replaced bookmark
+    @Override
+    public Bookmark put(String title, Bookmark bookmark) {
+        Objects.requireNonNull(bookmark);
+        if (!Objects.equals(title, bookmark.title())) {
+            throw new IllegalArgumentException("Off-heap bookmarks are keyed by their titles");
+        }
+        int slot = find(title);
+        long offset = store.append(bookmark);
+        if (slot >= 0) {
+            Bookmark replaced = store.read(offsets[slot]);
+            store.release(offsets[slot]);
+            offsets[slot] = offset;
+            return replaced;
+        }
+        if ((usedSlots + 1) * 4L > offsets.length * 3L) {
+            rehash();
+        }
+        int hash = hash(title);
+        slot = hash & (offsets.length - 1);
+        while (offsets[slot] >= 0) {
+            slot = (slot + 1) & (offsets.length - 1);
+        }
+        if (offsets[slot] == EMPTY) {
+            usedSlots++;
+        }
+        hashes[slot] = hash;
+        offsets[slot] = offset;
+        size++;
+        return null;
+    }
+
+    @Override
+    public Bookmark remove(Object key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        Bookmark removed = store.read(offsets[slot]);
+        removeSlot(slot);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] >= 0) {
+                store.release(offsets[slot]);
+            }
+        }
+        Arrays.fill(offsets, EMPTY);
+        size = 0;
+        usedSlots = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Bookmark>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Bookmark>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    //the current bookmarks, each decoded when it is got from the list
+    public List<Bookmark> views() {
+        long[] live = new long[size];
+        int count = 0;
+        for (long offset : offsets) {
+            if (offset >= 0) {
+                live[count++] = offset;
+            }
+        }
+        return new AbstractList<>() {
+            @Override
+            public Bookmark get(int index) {
+                return store.read(live[index]);
+            }
+
+            @Override
+            public int size() {
+                return live.length;
+            }
+        };
+    }
+
+    private int find(Object key) {
+        if (key != null && !(key instanceof String)) {
+            return -1;
+        }
+        int hash = hash(key);
+        int slot = hash & (offsets.length - 1);
+        while (offsets[slot] != EMPTY) {
+            if (offsets[slot] >= 0 && hashes[slot] == hash && Objects.equals(key, store.readTitle(offsets[slot]))) {
+                return slot;
+            }
+            slot = (slot + 1) & (offsets.length - 1);
+        }
+        return -1;
+    }
+
+    private void removeSlot(int slot) {
+        store.release(offsets[slot]);
+        offsets[slot] = REMOVED;
+        size--;
+    }
+
+    //grows the table if it is mostly live, else only drops the removed slots
+    private void rehash() {
+        int capacity = (size + 1) * 2L > offsets.length ? offsets.length * 2 : offsets.length;
+        int[] oldHashes = hashes;
+        long[] oldOffsets = offsets;
+        hashes = new int[capacity];
+        offsets = new long[capacity];
+        Arrays.fill(offsets, EMPTY);
+        for (int old = 0; old < oldOffsets.length; old++) {
+            if (oldOffsets[old] >= 0) {
+                int slot = oldHashes[old] & (capacity - 1);
+                while (offsets[slot] != EMPTY) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                hashes[slot] = oldHashes[old];
+                offsets[slot] = oldOffsets[old];
+            }
+        }
+        usedSlots = size;
+    }
+
+    private static int hash(Object key) {
+        int hash = Objects.hashCode(key);
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Bookmark>> {
+        private int next = advance(0);
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < offsets.length;
+        }
+
+        @Override
+        public Entry<String, Bookmark> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            Bookmark bookmark = store.read(offsets[last]);
+            return new SimpleImmutableEntry<>(bookmark.title(), bookmark);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeSlot(last);
+            last = -1;
+        }
+
+        private int advance(int slot) {
+            while (slot < offsets.length && offsets[slot] < 0) {
+                slot++;
+            }
+            return slot;
+        }
+    }
+}
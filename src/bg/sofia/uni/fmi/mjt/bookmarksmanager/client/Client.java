@@ -1,13 +1,21 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.client;
 
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.Command;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.CommandCreator;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.CommandTemplate;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.Frames;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
 //Credits to: java-course/11-network-ii/snippets/echoclientserver/src/bg/sofia/uni/fmi/mjt/echo/nio
 //EchoClientNio.java
@@ -16,11 +24,15 @@ public class Client {
 
     private static final int SERVER_PORT = 7777;
     private static final String SERVER_HOST = "localhost";
-    private static final int BUFFER_SIZE = 4096;
-
-    private static final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private static final String PIPELINE_FLAG = "--pipeline";
+    private static final String STREAM_FLAG = "--stream";
+    private static final Set<String> STREAMED_COMMANDS = Set.of("list", "search"); //the only ones the server streams
 
     public static void main(String[] args) {
+        if (args.length > 0 && PIPELINE_FLAG.equals(args[0])) {
+            runPipelined();
+            return;
+        }
 
         boolean quitCommunication = false;
         try (SocketChannel socketChannel = SocketChannel.open();
@@ -39,22 +51,52 @@ public class Client {
         }
     }
 
+    //Sends every line of the standard input without waiting for the replies;
+    //they are read by a separate thread and printed in the order of the commands.
+    private static void runPipelined() {
+        List<String> commands = new BufferedReader(new InputStreamReader(System.in,
+                StandardCharsets.UTF_8)).lines().map(String::strip).filter(line ->
+                !line.isEmpty() && !CommandTemplate.HELP.getCommandValue().equals(line)).toList();
+
+        try (SocketChannel socketChannel = SocketChannel.open()) {
+            socketChannel.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
+            Thread replyReader = Thread.ofPlatform().start(() -> printReplies(socketChannel, commands));
+            for (String command : commands) {
+                Frames.writeFrame(socketChannel, command);
+            }
+            replyReader.join();
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            System.out.println("A problem occurred while connecting to " +
+                    "the server. Please, try again later.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ExceptionsLogger.logClientException(e);
+        }
+    }
+
+    private static void printReplies(SocketChannel socketChannel, List<String> commands) {
+        try {
+            for (String command : commands) {
+                System.out.println("<" + command + "> -> <" + readReply(socketChannel, command) + ">");
+            }
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            System.out.println("Server closed the connection.");
+        }
+    }
+
     private static boolean sendClientInputToServer(Scanner scanner, SocketChannel socketChannel)
             throws IOException {
         System.out.print("Enter message: ");
         String message = scanner.nextLine();
-        //System.err.println(message);
-        //System.err.println(CommandTemplate.HELP);
         if (CommandTemplate.HELP.getCommandValue().equals(message.trim())) {
             displayPossibleCommands();
             return false;
         }
         System.out.println("Sending message <" + message + "> to the server...");
-        buffer.clear(); // switch to writing mode
-        buffer.put(message.getBytes()); // buffer fill
-        buffer.flip(); // switch to reading mode
-        socketChannel.write(buffer); // buffer drain
-        getServerMessage(socketChannel);
+        Frames.writeFrame(socketChannel, message);
+        getServerMessage(socketChannel, message);
         if (CommandTemplate.DISCONNECT.getCommandValue().equals(message)) {
             System.out.println("Quiting communication with server.");
             socketChannel.close();
@@ -63,20 +105,35 @@ public class Client {
         return false;
     }
 
-    private static void getServerMessage(SocketChannel socketChannel) throws IOException {
-
-        buffer.clear(); // switch to writing mode
-        int readBytes = socketChannel.read(buffer); // buffer fill
-        if (readBytes < 0) {
+    private static void getServerMessage(SocketChannel socketChannel, String message) throws IOException {
+        try {
+            String reply = readReply(socketChannel, message);
+            System.out.println("The server replied <" + reply + ">");
+        } catch (EOFException e) {
             System.out.println("Server closed the connection.");
             socketChannel.close();
         }
-        buffer.flip(); // switch to reading mode
-        byte[] byteArray = new byte[buffer.remaining()];
+    }
+
+    //a streamed reply comes in several frames, the last of which is empty
+    private static String readReply(SocketChannel socketChannel, String message) throws IOException {
+        String reply = Frames.readFrame(socketChannel);
+        if (!isStreamed(message)) {
+            return reply;
+        }
+        StringBuilder streamed = new StringBuilder(reply);
+        for (String part = Frames.readFrame(socketChannel); !part.isEmpty(); part = Frames.readFrame(socketChannel)) {
+            streamed.append(part);
+        }
+        return streamed.toString();
+    }
 
-        buffer.get(byteArray);
-        String reply = new String(byteArray, "UTF-8"); // buffer drain
-        System.out.println("The server replied <" + reply + ">");
+    //parsed as the server parses it, so that both agree on which replies are streamed
+    private static boolean isStreamed(String message) {
+        Command command = CommandCreator.newCommand(message);
+        String[] args = command.arguments();
+        return STREAMED_COMMANDS.contains(command.command()) &&
+                args.length > 0 && STREAM_FLAG.equals(args[args.length - 1]);
     }
 
     private static void displayPossibleCommands() {
@@ -95,7 +152,16 @@ public class Client {
         System.out.println("9. To search for bookmarks via title, please, enter 'search --title <title>'.");
         System.out.println("10. For all invalid bookmarks' removal, please, enter 'cleanup'.");
         System.out.println("11. To import all of your Google Chrome bookmarks, please, enter 'import-from-chrome'.");
+        System.out.println("12. To find the bookmarks most relevant to some text, please, enter" +
+                " 'search --query <text>'.");
+        System.out.println("13. To list your bookmarks page by page, please, enter 'list --limit <N> {--after <cursor>}'" +
+                " and continue with the command suggested at the end of each page.");
+        System.out.println("14. To import the bookmarks of a file exported by a browser, please, enter" +
+                " 'import --file <path> --format netscape|chrome-json' (the path is in the server's imports directory).");
+        System.out.println("Add '--stream' at the end of a list or search command to receive a long result in parts.");
 
         System.out.println("To disconnect from the app, please enter 'disconnect'.");
+        System.out.println("To send a whole batch of commands at once, start the client with '--pipeline'" +
+                " and pass the commands (one per line) on its standard input.");
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.command;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyBuffer;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyContinuation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+//Writes partSize bookmarks per part, taking them from the iterator only as the
+//part is written; the part after the last bookmark is empty and marks the end
+//of the streamed reply.
+
+class BookmarksReplyStream implements ReplyContinuation {
+    private final Iterator<Bookmark> bookmarks;
+    private final int partSize;
+
+    BookmarksReplyStream(Iterator<Bookmark> bookmarks, int partSize) {
+        this.bookmarks = bookmarks;
+        this.partSize = partSize;
+    }
+
+    @Override
+    public boolean writeNext(ReplyBuffer out) {
+        if (!bookmarks.hasNext()) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < partSize && bookmarks.hasNext(); i++) {
+                bookmarks.next().appendTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write streamed reply", e);
+        }
+        return true;
+    }
+}
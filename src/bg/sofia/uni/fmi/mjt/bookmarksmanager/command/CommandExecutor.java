@@ -7,8 +7,16 @@ import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidCredentialsExcept
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchUserException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.UserNotLoggedInException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksCursor;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksMatches;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportFormat;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyBuffer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.channels.SocketChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -24,6 +32,14 @@ public class CommandExecutor {
             "have logged in before using the app's commands!";
     private static final String INVALID_CREDENTIALS = "Invalid user's credentials (username or password)!";
     private static final String SHORTEN_FLAG = "--shorten";
+    private static final String STREAM_FLAG = "--stream";
+    private static final String LIMIT_FLAG = "--limit";
+    private static final String AFTER_FLAG = "--after";
+    private static final String ALL_FLAG = "--all";
+    private static final String FILE_FLAG = "--file";
+    private static final String FORMAT_FLAG = "--format";
+    private static final int STREAM_PART_SIZE = 256;
+    private static final int QUERY_RESULTS_LIMIT = 20;
     private static final int GENERAL_ARGS_COUNT = 2;
 
     private static final String REGISTER_CMD = "register";
@@ -35,8 +51,14 @@ public class CommandExecutor {
     private static final String SEARCH_CMD = "search";
     private static final String CLEAN_UP_CMD = "cleanup";
     private static final String IMPORT_CMD = "import-from-chrome";
+    private static final String IMPORT_FILE_CMD = "import";
     private static final String DISCONNECT_CMD = "disconnect";
 
+    //commands that fetch remote pages or touch the disk and should be kept off the event loop;
+    //login reads the user's groups, register creates the user's files
+    private static final Set<String> BLOCKING_COMMANDS = Set.of(REGISTER_CMD, LOGIN_CMD, ADD_CMD,
+            CLEAN_UP_CMD, IMPORT_CMD, IMPORT_FILE_CMD, DISCONNECT_CMD);
+
     private final BookmarksManager manager;
 
     public CommandExecutor() {
@@ -47,6 +69,20 @@ public class CommandExecutor {
         this.manager = manager;
     }
 
+    //called once the server stops accepting commands
+    public void shutdown() {
+        manager.shutdown();
+    }
+
+    //for a client whose connection was closed, whether it sent disconnect or not
+    public void disconnect(SocketChannel clientChannel) {
+        manager.disconnectUser(clientChannel);
+    }
+
+    public static boolean isBlockingCommand(Command cmd) {
+        return cmd != null && BLOCKING_COMMANDS.contains(cmd.command());
+    }
+
     public String execute(Command cmd, SocketChannel clientChannel) {
 
             return switch (cmd.command()) {
@@ -55,16 +91,33 @@ public class CommandExecutor {
             case NEW_GROUP_CMD -> newGroup(clientChannel, cmd.arguments());
             case ADD_CMD -> addBookmark(clientChannel, cmd.arguments());
             case REMOVE_CMD -> removeBookmark(clientChannel, cmd.arguments());
-            case LIST_CMD -> list(clientChannel, cmd.arguments());
-            case SEARCH_CMD -> search(clientChannel, cmd.arguments());
+            case LIST_CMD -> list(clientChannel, withoutStreamFlag(cmd.arguments()));
+            case SEARCH_CMD -> search(clientChannel, withoutStreamFlag(cmd.arguments()));
             case CLEAN_UP_CMD -> cleanup(clientChannel, cmd.arguments());
             case IMPORT_CMD -> importFromChrome(clientChannel, cmd.arguments());
+            case IMPORT_FILE_CMD -> importFromFile(clientChannel, cmd.arguments());
             case DISCONNECT_CMD -> disconnectClient(clientChannel);
 
             default -> UNKNOWN_COMMAND_MESSAGE;
         };
     }
 
+    //Same as execute, but list and search replies are encoded bookmark by bookmark
+    //straight into the reply buffer instead of being built as one big String first.
+    //With a trailing --stream flag they are sent in parts instead of as one reply.
+    public void execute(Command cmd, SocketChannel clientChannel, ReplyBuffer reply) {
+        if ((LIST_CMD.equals(cmd.command()) || SEARCH_CMD.equals(cmd.command())) &&
+                isStreamed(cmd.arguments())) {
+            stream(clientChannel, cmd, reply);
+            return;
+        }
+        switch (cmd.command()) {
+            case LIST_CMD -> appendReply(reply, out -> list(clientChannel, cmd.arguments(), out));
+            case SEARCH_CMD -> appendReply(reply, out -> search(clientChannel, cmd.arguments(), out));
+            default -> reply.append(execute(cmd, clientChannel));
+        }
+    }
+
     private String registerUser(SocketChannel clientChannel, String[] args) {
         if (args.length != GENERAL_ARGS_COUNT) {
             return  String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
@@ -121,51 +174,152 @@ public class CommandExecutor {
     }
 
     private String list(SocketChannel clientChannel, String[] args) {
+        StringBuilder reply = new StringBuilder();
+        appendReply(reply, out -> list(clientChannel, args, out));
+        return reply.toString();
+    }
+
+    private void list(SocketChannel clientChannel, String[] args, Appendable out) throws IOException {
         try {
-            if (args.length == 0) {
-                List<Bookmark> bookmarks = manager.listAll(clientChannel);
-                return "List of all bookmarks:" + bookmarks.stream().
-                        map(Record::toString).toList();
+            if (args.length >= GENERAL_ARGS_COUNT && LIMIT_FLAG.equals(args[0])) {
+                listPage(clientChannel, args, out);
+                return;
             }
-            if (args.length == GENERAL_ARGS_COUNT && "--group-name".equals(args[0])) {
-                List<Bookmark> bookmarks = manager.listByGroup(clientChannel, args[1]);
-
-                return String.format("Bookmarks of group %s", args[1]) +
-                        bookmarks.stream().
-                                map(Record::toString).toList();
+            List<Bookmark> bookmarks = findBookmarks(clientChannel, LIST_CMD, args);
+            if (bookmarks != null) {
+                out.append(args.length == 0 ? "List of all bookmarks:" : "Bookmarks of group " + args[1]);
+                appendBookmarks(out, bookmarks);
+                return;
             }
         } catch (UserNotLoggedInException e) {
             ExceptionsLogger.logClientException(e);
-            return NOT_LOGGED_WARNING;
+            out.append(NOT_LOGGED_WARNING);
+            return;
         }
-        return String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
+        out.append(String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
                 CommandTemplate.LIST.getCommandValue() + " or " +
                         CommandTemplate.LIST_GROUP.getCommandValue(),
-                LIST_CMD + Arrays.toString(args));
+                LIST_CMD + Arrays.toString(args)));
     }
 
-    private String search(SocketChannel clientChannel, String[] args) {
+    private void listPage(SocketChannel clientChannel, String[] args, Appendable out) throws IOException {
+        int limit;
+        BookmarksCursor after = null;
         try {
-            if (args.length >= GENERAL_ARGS_COUNT && "--tags".equals(args[0])) {
-                Set<String> keywords = Arrays.stream(args).skip(1).collect(Collectors.toSet());
-                return manager.searchByTags(clientChannel, keywords).
-                        stream().map(Bookmark::toString).toList().toString();
+            limit = Integer.parseInt(args[1]);
+            if (limit <= 0 || (args.length != GENERAL_ARGS_COUNT &&
+                    (args.length != 2 * GENERAL_ARGS_COUNT || !AFTER_FLAG.equals(args[2])))) {
+                throw new IllegalArgumentException("Invalid page arguments " + Arrays.toString(args));
             }
-            if (args.length == GENERAL_ARGS_COUNT && "--title".equals(args[0])) {
-                return manager.searchByTitle(clientChannel, args[1]).
-                        stream().map(Bookmark::toString).toList().toString();
+            if (args.length == 2 * GENERAL_ARGS_COUNT) {
+                after = BookmarksCursor.decode(args[3]);
+            }
+        } catch (IllegalArgumentException e) { //NumberFormatException included
+            ExceptionsLogger.logClientException(e);
+            out.append(String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
+                    CommandTemplate.LIST_PAGE.getCommandValue(), LIST_CMD + Arrays.toString(args)));
+            return;
+        }
+
+        List<Bookmark> page = manager.listPage(clientChannel, after, limit);
+        appendBookmarks(out.append("Page of bookmarks:"), page);
+        if (page.size() == limit) {
+            out.append(System.lineSeparator()).append("Next page: list ").append(LIMIT_FLAG).append(' ')
+                    .append(args[1]).append(' ').append(AFTER_FLAG).append(' ')
+                    .append(BookmarksCursor.of(page.getLast()).encode());
+        }
+    }
+
+    private String search(SocketChannel clientChannel, String[] args) {
+        StringBuilder reply = new StringBuilder();
+        appendReply(reply, out -> search(clientChannel, args, out));
+        return reply.toString();
+    }
+
+    private void search(SocketChannel clientChannel, String[] args, Appendable out) throws IOException {
+        try {
+            List<Bookmark> bookmarks = findBookmarks(clientChannel, SEARCH_CMD, args);
+            if (bookmarks != null) {
+                appendBookmarks(out, bookmarks);
+                return;
             }
         }  catch (UserNotLoggedInException e) {
             ExceptionsLogger.logClientException(e);
-            return NOT_LOGGED_WARNING;
+            out.append(NOT_LOGGED_WARNING);
+            return;
         }
-        return String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
+        out.append(String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
                 CommandTemplate.SEARCH_TAGS.getCommandValue() + "or" +
                         CommandTemplate.SEARCH_TITLE.getCommandValue(),
-                SEARCH_CMD + Arrays.toString(args)) ;
+                SEARCH_CMD + Arrays.toString(args)));
+    }
+
+    //Sends a header now and the bookmarks in parts of STREAM_PART_SIZE, each one
+    //found and encoded only after the previous part has been written to the client.
+    //Every streamed reply, even an error, ends with an empty part.
+    private void stream(SocketChannel clientChannel, Command cmd, ReplyBuffer reply) {
+        String[] args = Arrays.copyOf(cmd.arguments(), cmd.arguments().length - 1);
+        BookmarksMatches bookmarks = BookmarksMatches.of(List.of());
+        try {
+            BookmarksMatches matches = findMatches(clientChannel, cmd.command(), args);
+            if (matches == null) {
+                reply.append(execute(new Command(cmd.command(), args), clientChannel));
+            } else {
+                bookmarks = matches;
+                reply.append(String.format("Streaming %d bookmarks:", bookmarks.count()));
+            }
+        } catch (UserNotLoggedInException e) {
+            ExceptionsLogger.logClientException(e);
+            reply.append(NOT_LOGGED_WARNING);
+        }
+        reply.continueWith(new BookmarksReplyStream(bookmarks.iterator(), STREAM_PART_SIZE));
+    }
+
+    //as findBookmarks, but the searches by tags and title are walked while they are
+    //sent instead of being collected first; the lists are snapshots of the finder
+    private BookmarksMatches findMatches(SocketChannel clientChannel, String command, String[] args) {
+        if (SEARCH_CMD.equals(command)) {
+            if (args.length >= GENERAL_ARGS_COUNT && "--tags".equals(args[0])) {
+                Set<String> keywords = Arrays.stream(args).skip(1).collect(Collectors.toSet());
+                return manager.streamByTags(clientChannel, keywords);
+            }
+            if (args.length == GENERAL_ARGS_COUNT && "--title".equals(args[0])) {
+                return manager.streamByTitle(clientChannel, args[1]);
+            }
+        }
+        List<Bookmark> bookmarks = findBookmarks(clientChannel, command, args);
+        return bookmarks == null ? null : BookmarksMatches.of(bookmarks);
+    }
+
+    //the bookmarks a list/search command asks for, or null when its arguments are invalid
+    private List<Bookmark> findBookmarks(SocketChannel clientChannel, String command, String[] args) {
+        if (LIST_CMD.equals(command)) {
+            if (args.length == 0) {
+                return manager.listAll(clientChannel);
+            }
+            if (args.length == GENERAL_ARGS_COUNT && "--group-name".equals(args[0])) {
+                return manager.listByGroup(clientChannel, args[1]);
+            }
+            return null;
+        }
+        if (args.length >= GENERAL_ARGS_COUNT && "--tags".equals(args[0])) {
+            Set<String> keywords = Arrays.stream(args).skip(1).collect(Collectors.toSet());
+            return manager.searchByTags(clientChannel, keywords);
+        }
+        if (args.length == GENERAL_ARGS_COUNT && "--title".equals(args[0])) {
+            return manager.searchByTitle(clientChannel, args[1]);
+        }
+        if (args.length >= GENERAL_ARGS_COUNT && "--query".equals(args[0])) {
+            String query = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+            return manager.searchByQuery(clientChannel, query, QUERY_RESULTS_LIMIT);
+        }
+        return null;
     }
 
     private String cleanup(SocketChannel clientChannel, String[] args) {
+        if (args.length == 1 && ALL_FLAG.equals(args[0])) {
+            return manager.cleanUpAll(clientChannel);
+        }
         if (args.length != 0) {
             return String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
                     CommandTemplate.CLEAN_UP.getCommandValue(), CLEAN_UP_CMD +
@@ -189,6 +343,24 @@ public class CommandExecutor {
                 stream().map(Bookmark::toString).toList();
     }
 
+    //the path may have spaces, so it is all between --file and the trailing --format <format>
+    private String importFromFile(SocketChannel clientChannel, String[] args) {
+        ImportFormat format = args.length > 2 * GENERAL_ARGS_COUNT - 1 && FILE_FLAG.equals(args[0]) &&
+                FORMAT_FLAG.equals(args[args.length - 2]) ? ImportFormat.of(args[args.length - 1]) : null;
+        if (format == null) {
+            return String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
+                    CommandTemplate.IMPORT_FILE.getCommandValue(),
+                    IMPORT_FILE_CMD + Arrays.toString(args));
+        }
+        String file = String.join(" ", Arrays.copyOfRange(args, 1, args.length - 2));
+        try {
+            return manager.importFromFile(clientChannel, Path.of(file), format);
+        } catch (InvalidPathException e) {
+            ExceptionsLogger.logClientException(e);
+            return "Invalid path " + file;
+        }
+    }
+
     private String disconnectClient(SocketChannel clientChannel) {
         if (clientChannel == null) {
             return "No such a connection to the server!";
@@ -196,4 +368,38 @@ public class CommandExecutor {
         manager.disconnectUser(clientChannel);
         return "Client has been successfully disconnected from server.";
     }
-}
\ No newline at end of file
+
+    private static boolean isStreamed(String[] args) {
+        return args.length > 0 && STREAM_FLAG.equals(args[args.length - 1]);
+    }
+
+    //a String reply can not be streamed, so the whole result is returned at once
+    private static String[] withoutStreamFlag(String[] args) {
+        return isStreamed(args) ? Arrays.copyOf(args, args.length - 1) : args;
+    }
+
+    //the same text as List.toString() of the bookmarks, written without the intermediate strings
+    private static void appendBookmarks(Appendable out, List<Bookmark> bookmarks) throws IOException {
+        out.append('[');
+        for (int i = 0; i < bookmarks.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            bookmarks.get(i).appendTo(out);
+        }
+        out.append(']');
+    }
+
+    private static void appendReply(Appendable out, ReplyWriter writer) {
+        try {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write reply", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReplyWriter {
+        void write(Appendable out) throws IOException;
+    }
+}
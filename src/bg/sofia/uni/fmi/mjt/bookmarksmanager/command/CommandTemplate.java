@@ -8,10 +8,15 @@ public enum CommandTemplate {
         REMOVE("remove-from <group-name> <bookmark>"),
         LIST("list"),
         LIST_GROUP("list --group-name <group-name>"),
+        LIST_PAGE("list --limit <N> {--after <cursor>}"),
         SEARCH_TAGS("search --tags <tag>..."),
         SEARCH_TITLE("search --title <title>"),
+        SEARCH_QUERY("search --query <text>"),
+        STREAM("<list or search command> --stream"),
         CLEAN_UP("cleanup"),
+        CLEAN_UP_ALL("cleanup --all"),
         IMPORT("import-from-chrome"),
+        IMPORT_FILE("import --file <path> --format netscape|chrome-json"),
         DISCONNECT("disconnect"),
         HELP("?");
 
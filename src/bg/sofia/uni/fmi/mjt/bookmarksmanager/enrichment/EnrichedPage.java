@@ -0,0 +1,9 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment;
+
+import java.util.Map;
+
+//What a bookmark takes from its page: the title and the most frequent words
+//with their counts (see HtmlTokenizer.countTerms)
+
+public record EnrichedPage(String title, Map<String, Integer> termFrequencies) {
+}
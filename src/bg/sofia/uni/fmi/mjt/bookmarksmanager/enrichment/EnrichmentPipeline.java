@@ -0,0 +1,146 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//Enriches pages off the request path: every submitted URL is fetched, parsed and
+//tokenized on a virtual thread of its own and the page is handed to the task's
+//callback, which persists it. At most maxConcurrentFetches pages are fetched at a
+//time. Failures that may pass (I/O errors, timeouts, 408, 429 and 5xx replies) are
+//retried up to maxAttempts times, after delays that double from initialBackoff
+//(with jitter, so that the retries of a burst do not hit a site together).
+//The pipeline is bounded: while maxPending tasks wait, submit() enriches the page
+//in the caller's thread instead, which slows down only the one who adds too much.
+
+public class EnrichmentPipeline implements Closeable {
+    public static final int DEFAULT_MAX_PENDING = 10_000;
+    public static final int DEFAULT_MAX_CONCURRENT_FETCHES = 32;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(500);
+
+    private static final int REQUEST_TIMEOUT = 408;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int FIRST_SERVER_ERROR = 500;
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    private final PageEnricher enricher;
+    private final ExecutorService workers;
+    private final Semaphore pendingTasks;
+    private final Semaphore fetches;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+
+    public EnrichmentPipeline() {
+        this(PageEnricher.getDefault(), DEFAULT_MAX_PENDING, DEFAULT_MAX_CONCURRENT_FETCHES,
+                DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF);
+    }
+
+    public EnrichmentPipeline(PageEnricher enricher, int maxPending, int maxConcurrentFetches,
+                              int maxAttempts, Duration initialBackoff) {
+        if (maxPending <= 0 || maxConcurrentFetches <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("Pending tasks, concurrent fetches " +
+                    "and attempts limits must be positive!");
+        }
+        this.enricher = enricher;
+        this.workers = Executors.newVirtualThreadPerTaskExecutor();
+        this.pendingTasks = new Semaphore(maxPending);
+        this.fetches = new Semaphore(maxConcurrentFetches);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+    }
+
+    //onEnriched gets the page, or onFailed the last error once the attempts are over;
+    //returns false if the page was enriched in the caller's thread
+    public boolean submit(String url, Consumer<EnrichedPage> onEnriched, Consumer<Exception> onFailed) {
+        if (!pendingTasks.tryAcquire()) {
+            enrich(url, onEnriched, onFailed);
+            return false;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    enrich(url, onEnriched, onFailed);
+                } finally {
+                    pendingTasks.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) { //closed
+            pendingTasks.release();
+            enrich(url, onEnriched, onFailed);
+            return false;
+        }
+    }
+
+    //waits for the pending tasks, so that their results are persisted before the storages are closed
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enrich(String url, Consumer<EnrichedPage> onEnriched, Consumer<Exception> onFailed) {
+        EnrichedPage page;
+        try {
+            page = fetchWithRetries(url);
+        } catch (IOException | RuntimeException e) {
+            ExceptionsLogger.logClientException(e);
+            onFailed.accept(e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onFailed.accept(e);
+            return;
+        }
+        onEnriched.accept(page);
+    }
+
+    private EnrichedPage fetchWithRetries(String url) throws IOException, InterruptedException {
+        long backoffMillis = initialBackoff.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            fetches.acquire();
+            try {
+                return enricher.fetch(url);
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+            } finally {
+                fetches.release();
+            }
+            Thread.sleep(backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+            backoffMillis *= 2;
+        }
+    }
+
+    private static boolean isTransient(IOException e) {
+        if (e instanceof MalformedURLException || e instanceof UnsupportedMimeTypeException) {
+            return false; //the same the next time
+        }
+        if (!(e instanceof HttpStatusException statusException)) {
+            return true;
+        }
+        int status = statusException.getStatusCode();
+        return status == REQUEST_TIMEOUT || status == TOO_MANY_REQUESTS || status >= FIRST_SERVER_ERROR;
+    }
+}
@@ -0,0 +1,153 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//Fetches a page once and takes both its title and its keywords from the one parsed
+//Document. The results are kept in a bounded LRU cache keyed by the normalized URL,
+//together with the page's ETag and Last-Modified validators: for freshFor a cached
+//page is used as it is, and after that it is revalidated with a conditional
+//request- a 304 Not Modified keeps the cached result without downloading or
+//parsing the page again. So a URL added by many users, or many times, is
+//enriched once.
+
+public class PageEnricher {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final Duration DEFAULT_FRESH_FOR = Duration.ofMinutes(10);
+
+    private static final int FIRST_SUCCESS_STATUS = 200;
+    private static final int FIRST_REDIRECT_STATUS = 300;
+    private static final int NOT_MODIFIED = 304;
+    private static final int HTTP_DEFAULT_PORT = 80;
+    private static final int HTTPS_DEFAULT_PORT = 443;
+
+    private final HtmlTokenizer tokenizer;
+    private final Duration freshFor;
+    private final Clock clock;
+    private final Map<String, CachedPage> cache; //least recently used first
+
+    private record CachedPage(EnrichedPage page, String etag, String lastModified, Instant fetchedAt) {
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    public PageEnricher() {
+        this(HtmlTokenizer.getDefault(), DEFAULT_MAX_ENTRIES, DEFAULT_FRESH_FOR, Clock.systemUTC());
+    }
+
+    public PageEnricher(HtmlTokenizer tokenizer, int maxEntries, Duration freshFor, Clock clock) {
+        this.tokenizer = tokenizer;
+        this.freshFor = freshFor;
+        this.clock = clock;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    //the enricher shared by the whole server
+    public static PageEnricher getDefault() {
+        return DefaultEnricherHolder.INSTANCE;
+    }
+
+    //null if the page could not be fetched
+    public EnrichedPage enrich(String url) {
+        try {
+            return fetch(url);
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            return null;
+        }
+    }
+
+    //the cached page, or the page fetched (or revalidated) now;
+    //the page is fetched without holding the cache
+    public EnrichedPage fetch(String url) throws IOException {
+        String key = normalize(url);
+        CachedPage cached;
+        synchronized (this) {
+            cached = cache.get(key);
+        }
+        Instant now = clock.instant();
+        if (cached != null && now.isBefore(cached.fetchedAt().plus(freshFor))) {
+            return cached.page();
+        }
+        CachedPage fetched = download(url, cached, now);
+        synchronized (this) {
+            cache.put(key, fetched);
+        }
+        return fetched.page();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    //the same page for differently written URLs: lowercase scheme and host,
+    //no default port, no fragment and "/" for an empty path
+    public static String normalize(String url) {
+        try {
+            URI uri = new URI(url.strip());
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url.strip();
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if ((port == HTTP_DEFAULT_PORT && scheme.equals("http")) ||
+                    (port == HTTPS_DEFAULT_PORT && scheme.equals("https"))) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            return scheme + "://" + (uri.getRawUserInfo() == null ? "" : uri.getRawUserInfo() + "@") +
+                    uri.getHost().toLowerCase(Locale.ROOT) + (port == -1 ? "" : ":" + port) + path +
+                    (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        } catch (URISyntaxException e) {
+            return url.strip();
+        }
+    }
+
+    private CachedPage download(String url, CachedPage cached, Instant now) throws IOException {
+        Connection connection = Jsoup.connect(url).ignoreHttpErrors(true);
+        boolean isConditional = cached != null && cached.hasValidators();
+        if (isConditional && cached.etag() != null) {
+            connection.header("If-None-Match", cached.etag());
+        }
+        if (isConditional && cached.lastModified() != null) {
+            connection.header("If-Modified-Since", cached.lastModified());
+        }
+        Connection.Response response = connection.execute();
+        if (isConditional && response.statusCode() == NOT_MODIFIED) {
+            return new CachedPage(cached.page(), cached.etag(), cached.lastModified(), now);
+        }
+        if (response.statusCode() < FIRST_SUCCESS_STATUS || response.statusCode() >= FIRST_REDIRECT_STATUS) {
+            throw new HttpStatusException("HTTP error fetching URL", response.statusCode(), url);
+        }
+        Document document = response.parse();
+        Map<String, Integer> termFrequencies = tokenizer.getTermFrequencies(document);
+        EnrichedPage page = new EnrichedPage(tokenizer.getTitle(document),
+                Collections.unmodifiableMap(termFrequencies)); //shared by the bookmarks of all users
+        return new CachedPage(page, response.header("ETag"), response.header("Last-Modified"), now);
+    }
+
+    private static final class DefaultEnricherHolder {
+        private static final PageEnricher INSTANCE = new PageEnricher();
+    }
+}
@@ -0,0 +1,7 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions;
+
+public class InvalidFrameException extends RuntimeException {
+    public InvalidFrameException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,57 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.finder;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+
+//Position in a user's bookmarks ordered by group name and then by title.
+//It is sent to the client as an opaque token without spaces, so that it can be
+//passed back as a single command argument (list --limit N --after <cursor>).
+
+public record BookmarksCursor(String groupName, String title) {
+    public static final Comparator<Bookmark> BOOKMARKS_ORDER = Comparator
+            .comparing(Bookmark::groupName, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Bookmark::title, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static final char SEPARATOR = '\n';
+    private static final String NULL_MARKER = "\u0000";
+
+    public static BookmarksCursor of(Bookmark bookmark) {
+        return new BookmarksCursor(bookmark.groupName(), bookmark.title());
+    }
+
+    public static BookmarksCursor decode(String token) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        }
+        int separatorIndex = decoded.indexOf(SEPARATOR);
+        if (separatorIndex < 0) {
+            throw new IllegalArgumentException("Invalid cursor " + token);
+        }
+        return new BookmarksCursor(fromPart(decoded.substring(0, separatorIndex)),
+                fromPart(decoded.substring(separatorIndex + 1)));
+    }
+
+    public String encode() {
+        String raw = toPart(groupName) + SEPARATOR + toPart(title);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //a bookmark with the cursor's key, used for binary search in the ordered bookmarks
+    Bookmark toProbe() {
+        return new Bookmark(title, null, null, groupName);
+    }
+
+    private static String toPart(String value) {
+        return value == null ? NULL_MARKER : value;
+    }
+
+    private static String fromPart(String part) {
+        return NULL_MARKER.equals(part) ? null : part;
+    }
+}
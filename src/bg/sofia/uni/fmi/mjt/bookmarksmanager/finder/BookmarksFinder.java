@@ -1,6 +1,8 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.finder;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.UsersStorage;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -9,10 +11,11 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class BookmarksFinder implements BookmarksFinderAPI {
 
+   //the bookmarks of each user: a UserBookmarks once the user is loaded, until then the provided list
    private final Map<String, List<Bookmark>> cachedBookmarks;
 
     public BookmarksFinder() {
-        this.cachedBookmarks = new ConcurrentHashMap<>();
+        this(new ConcurrentHashMap<>());
     }
 
     public BookmarksFinder(Map<String, List<Bookmark>> cachedBookmarks) {
@@ -21,29 +24,76 @@ public class BookmarksFinder implements BookmarksFinderAPI {
 
     @Override
     public List<Bookmark> searchBookmarksByUser(String username, UsersStorage storage) {
-        if (!cachedBookmarks.containsKey(username)) {
-            List<Bookmark> updatedResult = updateUserBookmarksCache(username, storage);
-            cachedBookmarks.put(username, updatedResult);
-        }
-        return cachedBookmarks.get(username);
+        return getUserBookmarks(username, storage).getOrdered();
     }
 
     @Override
     public List<Bookmark> searchBookmarksByGroup(String groupName, String username, UsersStorage storage) {
-        return searchBookmarksByUser(username, storage).stream().
-                filter(bookmark->bookmark.groupName().equals(groupName)).toList();
+        return getUserBookmarks(username, storage).getGroup(groupName);
     }
 
     @Override
     public List<Bookmark> searchBookmarksByTags(String username, Set<String> keywords, UsersStorage storage) {
-        return searchBookmarksByUser(username, storage).stream().
-                filter(bookmark->bookmark.keywords().containsAll(keywords)).toList();
+        return getUserBookmarks(username, storage).getKeywordIndex().search(keywords);
     }
 
     @Override
     public List<Bookmark> searchBookmarksByTitle(String username, String title, UsersStorage storage) {
-        return searchBookmarksByUser(username, storage).stream().
-                filter(bookmark->bookmark.title().toLowerCase().contains(title.toLowerCase())).toList();
+        return getUserBookmarks(username, storage).getTitleIndex().search(title);
+    }
+
+    //the same bookmarks as searchBookmarksByTags, found while they are iterated
+    @Override
+    public BookmarksMatches streamBookmarksByTags(String username, Set<String> keywords, UsersStorage storage) {
+        return getUserBookmarks(username, storage).matchTags(keywords);
+    }
+
+    //the same bookmarks as searchBookmarksByTitle, found while they are iterated
+    @Override
+    public BookmarksMatches streamBookmarksByTitle(String username, String title, UsersStorage storage) {
+        return getUserBookmarks(username, storage).matchTitle(title);
+    }
+
+    //the bookmarks ranked by BM25 relevance of their title and page keywords to the query
+    @Override
+    public List<Bookmark> searchBookmarksByQuery(String username, String query, int limit, UsersStorage storage) {
+        return getUserBookmarks(username, storage).getRankedIndex().search(query, limit);
+    }
+
+    //the bookmarks following the cursor (or the first ones when it is null), at most limit of them;
+    //the result is a view over the cached list, so no bookmarks are copied
+    @Override
+    public List<Bookmark> searchBookmarksPage(String username, BookmarksCursor after,
+                                              int limit, UsersStorage storage) {
+        List<Bookmark> bookmarks = searchBookmarksByUser(username, storage);
+        int from = 0;
+        if (after != null) {
+            int index = Collections.binarySearch(bookmarks, after.toProbe(), BookmarksCursor.BOOKMARKS_ORDER);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        return bookmarks.subList(from, Math.min(bookmarks.size(), from + limit));
+    }
+
+    //keeps the user's cached bookmarks up to date after a bookmark was added to his storage;
+    //users who are not loaded yet will read it from the storage when they are
+    public void addBookmark(String username, Bookmark bookmark) {
+        cachedBookmarks.computeIfPresent(username, (user, bookmarks) -> {
+            if (bookmarks instanceof UserBookmarks userBookmarks) {
+                userBookmarks.addBookmark(bookmark);
+                return userBookmarks;
+            }
+            return null; //a provided list would be out of date
+        });
+    }
+
+    public void removeBookmarks(String username, Collection<Bookmark> bookmarks) {
+        cachedBookmarks.computeIfPresent(username, (user, cached) -> {
+            if (cached instanceof UserBookmarks userBookmarks) {
+                userBookmarks.removeBookmarks(bookmarks);
+                return userBookmarks;
+            }
+            return null;
+        });
     }
 
     public void invalidateUserCache(String username) {
@@ -54,7 +104,17 @@ public class BookmarksFinder implements BookmarksFinderAPI {
         return cachedBookmarks;
     }
 
-    private List<Bookmark> updateUserBookmarksCache(String username, UsersStorage storage) {
+    //loads the user from the cached bookmarks (if they were provided) or from the storage
+    private UserBookmarks getUserBookmarks(String username, UsersStorage storage) {
+        if (cachedBookmarks.get(username) instanceof UserBookmarks userBookmarks) {
+            return userBookmarks;
+        }
+        return (UserBookmarks) cachedBookmarks.compute(username, (user, cached) ->
+                cached instanceof UserBookmarks ? cached
+                        : new UserBookmarks(cached != null ? cached : loadBookmarks(user, storage)));
+    }
+
+    private List<Bookmark> loadBookmarks(String username, UsersStorage storage) {
         return storage.getUsers().get(username).getStorage().getGroups().values().stream()
                 .flatMap(group -> group.getBookmarks().stream()).toList();
     }
@@ -20,4 +20,8 @@ public interface BookmarksFinderAPI {
     List<Bookmark> searchBookmarksByGroup(String groupName, String username, UsersStorage storage);
     List<Bookmark> searchBookmarksByTags(String username, Set<String> keywords, UsersStorage storage);
     List<Bookmark> searchBookmarksByTitle(String username, String title, UsersStorage storage);
+    List<Bookmark> searchBookmarksByQuery(String username, String query, int limit, UsersStorage storage);
+    BookmarksMatches streamBookmarksByTags(String username, Set<String> keywords, UsersStorage storage);
+    BookmarksMatches streamBookmarksByTitle(String username, String title, UsersStorage storage);
+    List<Bookmark> searchBookmarksPage(String username, BookmarksCursor after, int limit, UsersStorage storage);
 }
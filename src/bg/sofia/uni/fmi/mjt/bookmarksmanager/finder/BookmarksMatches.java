@@ -0,0 +1,63 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.finder;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+//The bookmarks matching a search, found one by one while they are iterated: a
+//walk over a snapshot of the user's ordered bookmarks, so they come in the order
+//of BookmarksCursor.BOOKMARKS_ORDER and no list of the results is ever built.
+//The count is taken from the indexes together with the snapshot.
+
+public class BookmarksMatches implements Iterable<Bookmark> {
+    private final List<Bookmark> ordered;
+    private final Predicate<Bookmark> filter;
+    private final int count;
+
+    BookmarksMatches(List<Bookmark> ordered, Predicate<Bookmark> filter, int count) {
+        this.ordered = ordered;
+        this.filter = filter;
+        this.count = count;
+    }
+
+    //all of the bookmarks, e.g. a snapshot of a group or the results of a ranked search
+    public static BookmarksMatches of(List<Bookmark> bookmarks) {
+        return new BookmarksMatches(bookmarks, bookmark -> true, bookmarks.size());
+    }
+
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public Iterator<Bookmark> iterator() {
+        return new Iterator<>() {
+            private int nextIndex = advance(0);
+
+            @Override
+            public boolean hasNext() {
+                return nextIndex < ordered.size();
+            }
+
+            @Override
+            public Bookmark next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Bookmark bookmark = ordered.get(nextIndex);
+                nextIndex = advance(nextIndex + 1);
+                return bookmark;
+            }
+
+            private int advance(int index) {
+                while (index < ordered.size() && !filter.test(ordered.get(index))) {
+                    index++;
+                }
+                return index;
+            }
+        };
+    }
+}
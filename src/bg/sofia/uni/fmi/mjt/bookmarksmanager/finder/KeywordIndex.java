@@ -0,0 +1,131 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.finder;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+//Inverted index of one user's bookmarks: normalized (lowercase, stemmed) keyword
+//-> the bookmarks having it. A tags query intersects the posting lists of its
+//tags starting from the smallest one, so it only touches bookmarks which have
+//the rarest tag instead of every bookmark of the user.
+
+class KeywordIndex {
+    private final Map<String, Set<IndexedBookmark>> postings;
+    private final Map<BookmarksCursor, IndexedBookmark> indexed; //a group holds one bookmark per title
+
+    KeywordIndex(Collection<Bookmark> bookmarks) {
+        this.postings = new HashMap<>();
+        this.indexed = new HashMap<>();
+        bookmarks.forEach(this::add);
+    }
+
+    synchronized void add(Bookmark bookmark) {
+        IndexedBookmark entry = new IndexedBookmark(bookmark, normalizedKeywords(bookmark));
+        IndexedBookmark replaced = indexed.put(BookmarksCursor.of(bookmark), entry);
+        if (replaced != null) {
+            unindex(replaced);
+        }
+        for (String keyword : entry.keywords) {
+            postings.computeIfAbsent(keyword, k -> new HashSet<>()).add(entry);
+        }
+    }
+
+    synchronized void remove(Bookmark bookmark) {
+        BookmarksCursor key = BookmarksCursor.of(bookmark);
+        IndexedBookmark entry = indexed.get(key);
+        if (entry != null && entry.bookmark.equals(bookmark)) {
+            indexed.remove(key);
+            unindex(entry);
+        }
+    }
+
+    //the bookmarks having all the keywords, in the order of BookmarksCursor.BOOKMARKS_ORDER
+    synchronized List<Bookmark> search(Set<String> keywords) {
+        return matching(keywords).map(entry -> entry.bookmark)
+                .sorted(BookmarksCursor.BOOKMARKS_ORDER).toList();
+    }
+
+    //how many bookmarks search would return, without collecting them
+    synchronized int count(Set<String> keywords) {
+        return (int) matching(keywords).count();
+    }
+
+    //tests a single bookmark the way search does, e.g. while walking the ordered bookmarks
+    Predicate<Bookmark> matcher(Set<String> keywords) {
+        Set<String> normalized = new HashSet<>();
+        for (String keyword : keywords) {
+            normalized.add(HtmlTokenizer.normalize(keyword)); //null never matches, as in search
+        }
+        return bookmark -> keywordsOf(bookmark).containsAll(normalized);
+    }
+
+    //taken from the smallest posting list
+    private Stream<IndexedBookmark> matching(Set<String> keywords) {
+        List<Set<IndexedBookmark>> lists = new ArrayList<>(keywords.size());
+        for (String keyword : keywords) {
+            Set<IndexedBookmark> postingList = postings.get(HtmlTokenizer.normalize(keyword));
+            if (postingList == null) {
+                return Stream.empty();
+            }
+            lists.add(postingList);
+        }
+        if (lists.isEmpty()) {
+            return indexed.values().stream();
+        }
+
+        lists.sort(Comparator.comparingInt(Set::size));
+        List<Set<IndexedBookmark>> others = lists.subList(1, lists.size());
+        return lists.getFirst().stream()
+                .filter(entry -> others.stream().allMatch(list -> list.contains(entry)));
+    }
+
+    private synchronized Set<String> keywordsOf(Bookmark bookmark) {
+        IndexedBookmark entry = indexed.get(BookmarksCursor.of(bookmark));
+        return entry != null && entry.bookmark == bookmark ? entry.keywords : normalizedKeywords(bookmark);
+    }
+
+    private void unindex(IndexedBookmark entry) {
+        for (String keyword : entry.keywords) {
+            Set<IndexedBookmark> postingList = postings.get(keyword);
+            if (postingList != null && postingList.remove(entry) && postingList.isEmpty()) {
+                postings.remove(keyword);
+            }
+        }
+    }
+
+    private static Set<String> normalizedKeywords(Bookmark bookmark) {
+        if (bookmark.keywords() == null) {
+            return Set.of();
+        }
+        Set<String> normalized = new HashSet<>();
+        for (String keyword : bookmark.keywords()) {
+            String word = HtmlTokenizer.normalize(keyword);
+            if (word != null) {
+                normalized.add(word);
+            }
+        }
+        return normalized;
+    }
+
+    //compared by identity, so that posting lists do not hash whole bookmarks- their
+    //keywords and term frequencies included- on every add, remove and lookup
+    private static final class IndexedBookmark {
+        private final Bookmark bookmark;
+        private final Set<String> keywords; //normalized
+
+        private IndexedBookmark(Bookmark bookmark, Set<String> keywords) {
+            this.bookmark = bookmark;
+            this.keywords = keywords;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.finder;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+//BM25 index over the title and the page keywords of one user's bookmarks.
+//Every bookmark gets a small int id; a term's postings are two parallel int
+//arrays of ids and term frequencies. A query only visits the postings of its
+//own terms and keeps the best k bookmarks in a heap of size k.
+
+class RankedIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final String WORDS_SEPARATOR = "[^\\p{L}\\p{N}]+";
+
+    private final Map<String, Postings> postings;
+    private final Map<BookmarksCursor, Integer> ids; //a group holds one bookmark per title
+    private final List<Bookmark> documents; //by id, null for free ids
+    private final List<Map<String, Integer>> documentsTerms;
+    private final Deque<Integer> freeIds;
+    private int[] lengths;
+    private long totalLength;
+
+    RankedIndex(Collection<Bookmark> bookmarks) {
+        this.postings = new HashMap<>();
+        this.ids = new HashMap<>();
+        this.documents = new ArrayList<>();
+        this.documentsTerms = new ArrayList<>();
+        this.freeIds = new ArrayDeque<>();
+        this.lengths = new int[Math.max(1, bookmarks.size())];
+        bookmarks.forEach(this::add);
+    }
+
+    synchronized void add(Bookmark bookmark) {
+        Integer replaced = ids.get(BookmarksCursor.of(bookmark));
+        if (replaced != null) {
+            unindex(replaced);
+        }
+        int id = freeIds.isEmpty() ? documents.size() : freeIds.pop();
+        Map<String, Integer> terms = termsOf(bookmark);
+        if (id == documents.size()) {
+            documents.add(bookmark);
+            documentsTerms.add(terms);
+        } else {
+            documents.set(id, bookmark);
+            documentsTerms.set(id, terms);
+        }
+        if (id == lengths.length) {
+            lengths = Arrays.copyOf(lengths, 2 * lengths.length);
+        }
+        ids.put(BookmarksCursor.of(bookmark), id);
+
+        int length = 0;
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            postings.computeIfAbsent(term.getKey(), t -> new Postings()).add(id, term.getValue());
+            length += term.getValue();
+        }
+        lengths[id] = length;
+        totalLength += length;
+    }
+
+    synchronized void remove(Bookmark bookmark) {
+        Integer id = ids.get(BookmarksCursor.of(bookmark));
+        if (id != null && documents.get(id).equals(bookmark)) {
+            unindex(id);
+        }
+    }
+
+    //at most limit bookmarks matching any of the words of the text, the most relevant first
+    synchronized List<Bookmark> search(String text, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(words(text));
+        int documentsCount = ids.size();
+        if (queryTerms.isEmpty() || documentsCount == 0) {
+            return List.of();
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / documentsCount);
+
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : queryTerms) {
+            Postings termPostings = postings.get(term);
+            if (termPostings == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (documentsCount - termPostings.size + 0.5) / (termPostings.size + 0.5));
+            for (int i = 0; i < termPostings.size; i++) {
+                int id = termPostings.ids[i];
+                int frequency = termPostings.frequencies[i];
+                double norm = K1 * (1 - B + B * lengths[id] / averageLength);
+                scores.merge(id, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+            }
+        }
+
+        Comparator<Map.Entry<Integer, Double>> byRelevance = Map.Entry.<Integer, Double>comparingByValue()
+                .thenComparing(entry -> documents.get(entry.getKey()), BookmarksCursor.BOOKMARKS_ORDER.reversed());
+        PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(limit + 1, byRelevance);
+        for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+            best.add(score);
+            if (best.size() > limit) {
+                best.poll(); //the least relevant so far
+            }
+        }
+        List<Bookmark> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(documents.get(best.poll().getKey()));
+        }
+        return result.reversed();
+    }
+
+    private void unindex(int id) {
+        for (String term : documentsTerms.get(id).keySet()) {
+            Postings termPostings = postings.get(term);
+            if (termPostings != null && termPostings.remove(id) && termPostings.size == 0) {
+                postings.remove(term);
+            }
+        }
+        ids.remove(BookmarksCursor.of(documents.get(id)));
+        totalLength -= lengths[id];
+        lengths[id] = 0;
+        documents.set(id, null);
+        documentsTerms.set(id, null);
+        freeIds.push(id);
+    }
+
+    //the title's words and the page keywords with their frequencies in the page
+    //(or once each, when they were not counted)
+    private static Map<String, Integer> termsOf(Bookmark bookmark) {
+        Map<String, Integer> terms = new HashMap<>();
+        if (bookmark.title() != null) {
+            words(bookmark.title()).forEach(word -> terms.merge(word, 1, Integer::sum));
+        }
+        if (bookmark.termFrequencies() != null) {
+            bookmark.termFrequencies().forEach((keyword, frequency) -> {
+                String term = HtmlTokenizer.normalize(keyword);
+                if (term != null && frequency != null && frequency > 0) {
+                    terms.merge(term, frequency, Integer::sum);
+                }
+            });
+        } else if (bookmark.keywords() != null) {
+            bookmark.keywords().stream().map(HtmlTokenizer::normalize)
+                    .filter(term -> term != null).forEach(term -> terms.merge(term, 1, Integer::sum));
+        }
+        return terms;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.split(WORDS_SEPARATOR)) {
+            String term = HtmlTokenizer.normalize(word);
+            if (term != null && !term.isEmpty()) {
+                words.add(term);
+            }
+        }
+        return words;
+    }
+
+    //growable parallel arrays of bookmark ids and term frequencies
+    private static final class Postings {
+        private int[] ids = new int[2];
+        private int[] frequencies = new int[2];
+        private int size;
+
+        private void add(int id, int frequency) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * size);
+                frequencies = Arrays.copyOf(frequencies, 2 * size);
+            }
+            ids[size] = id;
+            frequencies[size++] = frequency;
+        }
+
+        private boolean remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    size--;
+                    ids[i] = ids[size];
+                    frequencies[i] = frequencies[size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.finder;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+//Trigram index over the lowercase titles of one user's bookmarks. Every title is
+//lowercased once, when it is indexed. A query of at least three characters only
+//checks the titles having all of its trigrams; shorter queries fall back to
+//checking every (already lowercased) title.
+
+class TitleIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Set<IndexedTitle>> postings;
+    private final Map<BookmarksCursor, IndexedTitle> indexed; //a group holds one bookmark per title
+
+    TitleIndex(Collection<Bookmark> bookmarks) {
+        this.postings = new HashMap<>();
+        this.indexed = new HashMap<>();
+        bookmarks.forEach(this::add);
+    }
+
+    synchronized void add(Bookmark bookmark) {
+        if (bookmark.title() == null) {
+            return; //the page could not be fetched- nothing to search in
+        }
+        IndexedTitle title = new IndexedTitle(bookmark, bookmark.title().toLowerCase());
+        IndexedTitle replaced = indexed.put(BookmarksCursor.of(bookmark), title);
+        if (replaced != null) {
+            unindex(replaced);
+        }
+        for (String gram : grams(title.normalized)) {
+            postings.computeIfAbsent(gram, g -> new HashSet<>()).add(title);
+        }
+    }
+
+    synchronized void remove(Bookmark bookmark) {
+        if (bookmark.title() == null) {
+            return;
+        }
+        BookmarksCursor key = BookmarksCursor.of(bookmark);
+        IndexedTitle title = indexed.get(key);
+        if (title != null && title.bookmark.equals(bookmark)) {
+            indexed.remove(key);
+            unindex(title);
+        }
+    }
+
+    //the bookmarks whose titles contain the text ignoring case, in the order of BookmarksCursor.BOOKMARKS_ORDER
+    synchronized List<Bookmark> search(String text) {
+        String query = text.toLowerCase();
+        Collection<IndexedTitle> candidates = query.length() < GRAM_LENGTH ? indexed.values() : candidates(query);
+        return candidates.stream()
+                .filter(title -> title.normalized.contains(query))
+                .map(title -> title.bookmark)
+                .sorted(BookmarksCursor.BOOKMARKS_ORDER).toList();
+    }
+
+    //how many bookmarks search would return, without collecting them
+    synchronized int count(String text) {
+        String query = text.toLowerCase();
+        Collection<IndexedTitle> candidates = query.length() < GRAM_LENGTH ? indexed.values() : candidates(query);
+        return (int) candidates.stream().filter(title -> title.normalized.contains(query)).count();
+    }
+
+    //tests a single bookmark the way search does, e.g. while walking the ordered bookmarks
+    Predicate<Bookmark> matcher(String text) {
+        String query = text.toLowerCase();
+        return bookmark -> {
+            String title = normalizedTitle(bookmark);
+            return title != null && title.contains(query);
+        };
+    }
+
+    private synchronized String normalizedTitle(Bookmark bookmark) {
+        if (bookmark.title() == null) {
+            return null;
+        }
+        IndexedTitle title = indexed.get(BookmarksCursor.of(bookmark));
+        return title != null && title.bookmark == bookmark ? title.normalized : bookmark.title().toLowerCase();
+    }
+
+    //the titles having all trigrams of the query, taken from its rarest trigram
+    private Collection<IndexedTitle> candidates(String query) {
+        List<Set<IndexedTitle>> lists = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Set<IndexedTitle> postingList = postings.get(gram);
+            if (postingList == null) {
+                return List.of();
+            }
+            lists.add(postingList);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        List<Set<IndexedTitle>> others = lists.subList(1, lists.size());
+        return lists.getFirst().stream()
+                .filter(title -> others.stream().allMatch(list -> list.contains(title)))
+                .toList();
+    }
+
+    private void unindex(IndexedTitle title) {
+        for (String gram : grams(title.normalized)) {
+            Set<IndexedTitle> postingList = postings.get(gram);
+            if (postingList != null && postingList.remove(title) && postingList.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    //compared by identity, so that posting lists do not hash whole bookmarks
+    private static final class IndexedTitle {
+        private final Bookmark bookmark;
+        private final String normalized;
+
+        private IndexedTitle(Bookmark bookmark, String normalized) {
+            this.bookmark = bookmark;
+            this.normalized = normalized;
+        }
+    }
+}
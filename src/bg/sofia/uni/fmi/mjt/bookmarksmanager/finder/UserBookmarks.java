@@ -0,0 +1,241 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.finder;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+//All the bookmarks of one user, kept up to date bookmark by bookmark: the whole
+//list ordered by BookmarksCursor.BOOKMARKS_ORDER, the same per group and the
+//search indexes, each built on its first use. The lists are copied on write, but
+//only once per batch of changes (see SortedBookmarks), so readers get immutable
+//snapshots without locking and an import does not copy them per bookmark.
+//As a List it reads the latest snapshot.
+
+class UserBookmarks extends AbstractList<Bookmark> implements RandomAccess {
+    private final SortedBookmarks ordered;
+    private final Map<String, SortedBookmarks> byGroup;
+    private KeywordIndex keywordIndex;
+    private TitleIndex titleIndex;
+    private RankedIndex rankedIndex;
+
+    UserBookmarks(Collection<Bookmark> bookmarks) {
+        Bookmark[] sorted = bookmarks.toArray(new Bookmark[0]);
+        Arrays.sort(sorted, BookmarksCursor.BOOKMARKS_ORDER);
+        this.ordered = new SortedBookmarks(sorted);
+        this.byGroup = new HashMap<>();
+        int groupStart = 0;
+        for (int i = 1; i <= sorted.length; i++) {
+            if (i == sorted.length || !sameGroup(sorted[i], sorted[groupStart])) {
+                byGroup.put(sorted[groupStart].groupName(),
+                        new SortedBookmarks(Arrays.copyOfRange(sorted, groupStart, i)));
+                groupStart = i;
+            }
+        }
+    }
+
+    synchronized List<Bookmark> getOrdered() {
+        return ordered.snapshot();
+    }
+
+    @Override
+    public Bookmark get(int index) {
+        return getOrdered().get(index);
+    }
+
+    @Override
+    public int size() {
+        return getOrdered().size();
+    }
+
+    @Override
+    public Iterator<Bookmark> iterator() {
+        return getOrdered().iterator();
+    }
+
+    synchronized List<Bookmark> getGroup(String groupName) {
+        SortedBookmarks group = byGroup.get(groupName);
+        return group == null ? List.of() : group.snapshot();
+    }
+
+    //a bookmark with the same group and title replaces the old one
+    synchronized void addBookmark(Bookmark bookmark) {
+        ordered.add(bookmark);
+        byGroup.computeIfAbsent(bookmark.groupName(), group -> new SortedBookmarks(new Bookmark[0]))
+                .add(bookmark);
+        if (keywordIndex != null) {
+            keywordIndex.add(bookmark);
+        }
+        if (titleIndex != null) {
+            titleIndex.add(bookmark);
+        }
+        if (rankedIndex != null) {
+            rankedIndex.add(bookmark);
+        }
+    }
+
+    synchronized void removeBookmarks(Collection<Bookmark> bookmarks) {
+        List<Bookmark> removed = ordered.removeAll(bookmarks);
+        Map<String, List<Bookmark>> removedByGroup = new HashMap<>();
+        for (Bookmark bookmark : removed) {
+            removedByGroup.computeIfAbsent(bookmark.groupName(), group -> new ArrayList<>()).add(bookmark);
+        }
+        removedByGroup.forEach((groupName, groupBookmarks) -> {
+            SortedBookmarks group = byGroup.get(groupName);
+            group.removeAll(groupBookmarks);
+            if (group.isEmpty()) {
+                byGroup.remove(groupName);
+            }
+        });
+        for (Bookmark bookmark : removed) {
+            if (keywordIndex != null) {
+                keywordIndex.remove(bookmark);
+            }
+            if (titleIndex != null) {
+                titleIndex.remove(bookmark);
+            }
+            if (rankedIndex != null) {
+                rankedIndex.remove(bookmark);
+            }
+        }
+    }
+
+    //the count and the snapshot are taken together, so that they agree
+    synchronized BookmarksMatches matchTags(Set<String> keywords) {
+        return new BookmarksMatches(ordered.snapshot(), getKeywordIndex().matcher(keywords),
+                getKeywordIndex().count(keywords));
+    }
+
+    synchronized BookmarksMatches matchTitle(String title) {
+        return new BookmarksMatches(ordered.snapshot(), getTitleIndex().matcher(title),
+                getTitleIndex().count(title));
+    }
+
+    synchronized KeywordIndex getKeywordIndex() {
+        if (keywordIndex == null) {
+            keywordIndex = new KeywordIndex(ordered.snapshot());
+        }
+        return keywordIndex;
+    }
+
+    synchronized TitleIndex getTitleIndex() {
+        if (titleIndex == null) {
+            titleIndex = new TitleIndex(ordered.snapshot());
+        }
+        return titleIndex;
+    }
+
+    synchronized RankedIndex getRankedIndex() {
+        if (rankedIndex == null) {
+            rankedIndex = new RankedIndex(ordered.snapshot());
+        }
+        return rankedIndex;
+    }
+
+    private static boolean sameGroup(Bookmark first, Bookmark second) {
+        return first.groupName() == null ? second.groupName() == null
+                : first.groupName().equals(second.groupName());
+    }
+
+    //Bookmarks in BookmarksCursor.BOOKMARKS_ORDER. The added ones wait in a growable
+    //buffer and are merged with the rest in one pass when the list is next read, so
+    //a batch of adds copies the array once. A merged array is never changed, so it
+    //is handed out as the snapshot; removing builds a new one. Guarded by the owner.
+    private static final class SortedBookmarks {
+        private Bookmark[] sorted;
+        private List<Bookmark> snapshot;
+        private final List<Bookmark> added = new ArrayList<>();
+
+        private SortedBookmarks(Bookmark[] sorted) {
+            publish(sorted);
+        }
+
+        private void add(Bookmark bookmark) {
+            added.add(bookmark);
+        }
+
+        private boolean isEmpty() {
+            return sorted.length == 0 && added.isEmpty();
+        }
+
+        private List<Bookmark> snapshot() {
+            merge();
+            return snapshot;
+        }
+
+        //the ones which were there
+        private List<Bookmark> removeAll(Collection<Bookmark> bookmarks) {
+            merge();
+            BitSet removedIndexes = new BitSet(sorted.length);
+            List<Bookmark> removed = new ArrayList<>();
+            for (Bookmark bookmark : bookmarks) {
+                int index = Arrays.binarySearch(sorted, bookmark, BookmarksCursor.BOOKMARKS_ORDER);
+                if (index >= 0 && !removedIndexes.get(index) && sorted[index].equals(bookmark)) {
+                    removedIndexes.set(index);
+                    removed.add(sorted[index]);
+                }
+            }
+            if (removed.isEmpty()) {
+                return removed;
+            }
+            Bookmark[] remaining = new Bookmark[sorted.length - removed.size()];
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (!removedIndexes.get(i)) {
+                    remaining[count++] = sorted[i];
+                }
+            }
+            publish(remaining);
+            return removed;
+        }
+
+        //an added bookmark replaces the one with the same group and title, the latest one wins
+        private void merge() {
+            if (added.isEmpty()) {
+                return;
+            }
+            Bookmark[] batch = added.toArray(new Bookmark[0]);
+            added.clear();
+            Arrays.sort(batch, BookmarksCursor.BOOKMARKS_ORDER); //stable, so the latest stays last
+            Bookmark[] result = new Bookmark[sorted.length + batch.length];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < sorted.length || j < batch.length) {
+                if (j + 1 < batch.length && BookmarksCursor.BOOKMARKS_ORDER.compare(batch[j], batch[j + 1]) == 0) {
+                    j++;
+                } else if (j == batch.length) {
+                    result[count++] = sorted[i++];
+                } else if (i == sorted.length) {
+                    result[count++] = batch[j++];
+                } else {
+                    int comparison = BookmarksCursor.BOOKMARKS_ORDER.compare(sorted[i], batch[j]);
+                    if (comparison < 0) {
+                        result[count++] = sorted[i++];
+                    } else {
+                        if (comparison == 0) {
+                            i++;
+                        }
+                        result[count++] = batch[j++];
+                    }
+                }
+            }
+            publish(count == result.length ? result : Arrays.copyOf(result, count));
+        }
+
+        private void publish(Bookmark[] bookmarks) {
+            sorted = bookmarks;
+            snapshot = Collections.unmodifiableList(Arrays.asList(bookmarks));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+//Checks whether links still work, many of them at a time: every URL is probed on
+//a virtual thread of its own, with at most maxConcurrency probes in flight overall
+//and at most maxPerHost to any single host, so that a big cleanup neither waits
+//for one timeout after another nor floods a site with requests.
+//A probe is a HEAD request, followed by a GET of the first byte only if the HEAD
+//is refused, as many servers do not implement HEAD properly. Redirects are
+//followed here rather than by the client, so that every hop is probed the same
+//way and a redirect to a missing page counts as dead.
+
+public class LinkChecker implements LinkProber {
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    public static final int DEFAULT_MAX_PER_HOST = 4;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int FIRST_REDIRECT_STATUS = 300;
+    private static final int NOT_MODIFIED = 304;
+    private static final int FIRST_ERROR_STATUS = 400;
+    private static final int RANGE_NOT_SATISFIABLE = 416; //the ranged GET of an empty page
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int FIRST_SERVER_ERROR_STATUS = 500;
+
+    private final HttpClient client;
+    private final Semaphore permits;
+    private final int maxPerHost;
+    private final Duration timeout;
+    private final Map<String, Semaphore> hostPermits;
+
+    public LinkChecker() {
+        this(DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_PER_HOST, DEFAULT_TIMEOUT);
+    }
+
+    public LinkChecker(int maxConcurrency, int maxPerHost, Duration timeout) {
+        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build(), //redirects are not followed
+                maxConcurrency, maxPerHost, timeout);
+    }
+
+    public LinkChecker(HttpClient client, int maxConcurrency, int maxPerHost, Duration timeout) {
+        if (maxConcurrency <= 0 || maxPerHost <= 0) {
+            throw new IllegalArgumentException("At least one probe at a time must be allowed!");
+        }
+        this.client = client;
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxPerHost = maxPerHost;
+        this.timeout = timeout;
+        this.hostPermits = new ConcurrentHashMap<>();
+    }
+
+    //returns when all of the URLs are probed
+    @Override
+    public Map<String, LinkStatus> check(Collection<String> urls) {
+        Set<String> distinct = new HashSet<>(urls);
+        distinct.remove(null);
+        Map<String, LinkStatus> statuses = new ConcurrentHashMap<>();
+        try (ExecutorService probes = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String url : distinct) {
+                probes.submit(() -> statuses.put(url, check(url)));
+            }
+        }
+        return statuses;
+    }
+
+    public LinkStatus check(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url.trim());
+        } catch (IllegalArgumentException e) {
+            ExceptionsLogger.logClientException(e);
+            return LinkStatus.DEAD;
+        }
+        if (uri.getHost() == null) {
+            return LinkStatus.DEAD;
+        }
+        Semaphore host = hostPermits.computeIfAbsent(uri.getHost().toLowerCase(Locale.ROOT),
+                name -> new Semaphore(maxPerHost));
+        try {
+            host.acquire(); //before a global permit, so that a busy host does not hold those
+            try {
+                permits.acquire();
+                try {
+                    return probe(uri);
+                } finally {
+                    permits.release();
+                }
+            } finally {
+                host.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ExceptionsLogger.logClientException(e);
+            return LinkStatus.UNREACHABLE;
+        }
+    }
+
+    private LinkStatus probe(URI uri) throws InterruptedException {
+        URI current = uri;
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            Reply reply;
+            try {
+                reply = head(current);
+                if (reply.status() >= FIRST_ERROR_STATUS) {
+                    reply = rangedGet(current);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                ExceptionsLogger.logClientException(e);
+                return LinkStatus.UNREACHABLE;
+            }
+            if (!reply.isRedirect()) {
+                return classify(reply.status());
+            }
+            try {
+                current = current.resolve(reply.location());
+            } catch (IllegalArgumentException e) {
+                ExceptionsLogger.logClientException(e);
+                return LinkStatus.DEAD;
+            }
+        }
+        return LinkStatus.DEAD; //a redirect loop
+    }
+
+    private Reply head(URI uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(timeout)
+                .build();
+        return Reply.of(client.send(request, HttpResponse.BodyHandlers.discarding()));
+    }
+
+    //the body is not read- closing it drops the rest of a page sent whole despite the range
+    private Reply rangedGet(URI uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .GET()
+                .header("Range", "bytes=0-0")
+                .timeout(timeout)
+                .build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.body() != null) {
+            response.body().close();
+        }
+        return Reply.of(response);
+    }
+
+    private static LinkStatus classify(int status) {
+        if (status < FIRST_ERROR_STATUS || status == RANGE_NOT_SATISFIABLE) {
+            return LinkStatus.ALIVE;
+        }
+        if (status == TOO_MANY_REQUESTS || status >= FIRST_SERVER_ERROR_STATUS) {
+            return LinkStatus.UNREACHABLE;
+        }
+        return LinkStatus.DEAD;
+    }
+
+    private record Reply(int status, String location) {
+        static Reply of(HttpResponse<?> response) {
+            int status = response.statusCode();
+            boolean isRedirect = status >= FIRST_REDIRECT_STATUS && status < FIRST_ERROR_STATUS &&
+                    status != NOT_MODIFIED;
+            return new Reply(status, isRedirect ? response.headers().firstValue("Location").orElse(null) : null);
+        }
+
+        boolean isRedirect() {
+            return location != null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck;
+
+import java.util.Collection;
+import java.util.Map;
+
+//Tells the status of links- by probing them (LinkChecker) or from what is
+//known about them already (UrlHealthCache)
+
+@FunctionalInterface
+public interface LinkProber {
+    //the status of every distinct URL
+    Map<String, LinkStatus> check(Collection<String> urls);
+}
@@ -0,0 +1,10 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck;
+
+//What a probe of a link found out. UNREACHABLE covers the failures that may be
+//temporary- timeouts, refused connections, server errors and rate limiting.
+
+public enum LinkStatus {
+    ALIVE,
+    DEAD,
+    UNREACHABLE
+}
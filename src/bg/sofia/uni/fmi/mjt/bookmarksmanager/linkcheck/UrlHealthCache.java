@@ -0,0 +1,98 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+//Server-wide record of the links' health, so that a link bookmarked by many users
+//is probed once per TTL instead of once per user's cleanup. An alive link is
+//trusted for healthyTtl and a broken one for brokenTtl; the links that are unknown
+//or known for too long are probed together by the prober. Every entry keeps the
+//last status, when it was probed and how many probes in a row found it broken.
+//Above maxEntries the least recently used entries are dropped.
+
+public class UrlHealthCache implements LinkProber {
+    public static final Duration DEFAULT_HEALTHY_TTL = Duration.ofHours(24);
+    public static final Duration DEFAULT_BROKEN_TTL = Duration.ofHours(1);
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    public record Health(LinkStatus status, Instant checkedAt, int failuresCount) {
+    }
+
+    private final LinkProber prober;
+    private final Duration healthyTtl;
+    private final Duration brokenTtl;
+    private final Clock clock;
+    private final Map<String, Health> entries; //least recently used first
+
+    public UrlHealthCache(LinkProber prober) {
+        this(prober, DEFAULT_HEALTHY_TTL, DEFAULT_BROKEN_TTL, DEFAULT_MAX_ENTRIES, Clock.systemUTC());
+    }
+
+    public UrlHealthCache(LinkProber prober, Duration healthyTtl, Duration brokenTtl,
+                          int maxEntries, Clock clock) {
+        this.prober = prober;
+        this.healthyTtl = healthyTtl;
+        this.brokenTtl = brokenTtl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Health> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    //the probes are made without holding the cache
+    @Override
+    public Map<String, LinkStatus> check(Collection<String> urls) {
+        Map<String, LinkStatus> statuses = new HashMap<>();
+        Set<String> stale = new HashSet<>();
+        Instant now = clock.instant();
+        synchronized (this) {
+            for (String url : urls) {
+                Health health = url == null ? null : entries.get(url);
+                if (health != null && isFresh(health, now)) {
+                    statuses.put(url, health.status());
+                } else if (url != null) {
+                    stale.add(url);
+                }
+            }
+        }
+        if (stale.isEmpty()) {
+            return statuses;
+        }
+        Map<String, LinkStatus> probed = prober.check(stale);
+        Instant checkedAt = clock.instant();
+        synchronized (this) {
+            for (Map.Entry<String, LinkStatus> result : probed.entrySet()) {
+                Health previous = entries.get(result.getKey());
+                int failuresCount = result.getValue() == LinkStatus.ALIVE ? 0 :
+                        (previous == null ? 0 : previous.failuresCount()) + 1;
+                entries.put(result.getKey(), new Health(result.getValue(), checkedAt, failuresCount));
+            }
+        }
+        statuses.putAll(probed);
+        return statuses;
+    }
+
+    //null if the link was not probed yet
+    public synchronized Health getHealth(String url) {
+        return entries.get(url);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean isFresh(Health health, Instant now) {
+        Duration ttl = health.status() == LinkStatus.ALIVE ? healthyTtl : brokenTtl;
+        return now.isBefore(health.checkedAt().plus(ttl));
+    }
+}
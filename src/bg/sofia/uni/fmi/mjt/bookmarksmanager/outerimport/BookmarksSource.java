@@ -0,0 +1,24 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import java.io.IOException;
+
+//Where imported bookmarks are read from. A source reads its bookmarks as a
+//stream and hands each group and each bookmark to the visitor as soon as it
+//is read, so that no source is ever held in memory as a whole.
+
+@FunctionalInterface
+public interface BookmarksSource {
+    void read(Visitor visitor) throws IOException;
+
+    //a group is visited before its bookmarks
+    interface Visitor {
+        void group(String groupName);
+
+        void bookmark(String groupName, String title, String url);
+
+        //nodeId identifies the bookmark in its source from one reading to the next
+        default void bookmark(String groupName, String title, String url, String nodeId) {
+            bookmark(groupName, title, url);
+        }
+    }
+}
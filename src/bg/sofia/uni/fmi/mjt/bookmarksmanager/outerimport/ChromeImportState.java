@@ -0,0 +1,103 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+//What was imported from Chrome the last time: the checksum of the Bookmarks file
+//and its bookmark nodes by their ids, saved as JSON next to the user's bookmarks.
+//A re-import compares the file's nodes with these, so that only the delta- the
+//nodes added, changed (renamed, moved to another group or pointed to another url)
+//and removed since- is enriched and applied to the groups.
+
+public class ChromeImportState {
+    private static final Gson GSON = new Gson();
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final String checksum;
+    private final Map<String, Node> nodes; //by their ids in the file
+
+    public record Node(String groupName, String title, String url) {
+    }
+
+    //a changed node is both removed (as it was) and added (as it is now)
+    public record Delta(Set<String> groupNames, List<Node> added, List<Node> removed) {
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    public ChromeImportState(String checksum, Map<String, Node> nodes) {
+        this.checksum = checksum;
+        this.nodes = nodes;
+    }
+
+    //the state saved by the last import; an empty one if there was none
+    public static ChromeImportState load(Path path) {
+        if (!Files.exists(path)) {
+            return new ChromeImportState(null, Map.of());
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            ChromeImportState state = GSON.fromJson(reader, ChromeImportState.class);
+            if (state != null && state.nodes != null) {
+                return state;
+            }
+        } catch (IOException | JsonParseException e) { //a damaged state only costs a full import
+            ExceptionsLogger.logClientException(e);
+        }
+        return new ChromeImportState(null, Map.of());
+    }
+
+    //replaces the saved state atomically (temp file + rename)
+    public void save(Path path) throws IOException {
+        Path temp = Path.of(path + TEMP_SUFFIX);
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            GSON.toJson(this, writer);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public boolean hasChecksum(String fileChecksum) {
+        return fileChecksum != null && fileChecksum.equals(checksum);
+    }
+
+    //what the current state adds to and removes from this one
+    public Delta deltaTo(ChromeImportState current, Collection<String> currentGroupNames) {
+        List<Node> added = new ArrayList<>();
+        List<Node> removed = new ArrayList<>();
+        for (Map.Entry<String, Node> node : current.nodes.entrySet()) {
+            Node previous = nodes.get(node.getKey());
+            if (!Objects.equals(previous, node.getValue())) {
+                added.add(node.getValue());
+                if (previous != null) {
+                    removed.add(previous);
+                }
+            }
+        }
+        for (Map.Entry<String, Node> node : nodes.entrySet()) {
+            if (!current.nodes.containsKey(node.getKey())) {
+                removed.add(node.getValue());
+            }
+        }
+        return new Delta(new LinkedHashSet<>(currentGroupNames), added, removed);
+    }
+}
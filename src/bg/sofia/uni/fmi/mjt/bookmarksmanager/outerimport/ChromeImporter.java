@@ -3,17 +3,21 @@ package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
-import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.Map;
 
+//Reads the Bookmarks file of Chrome: every entry of its "roots" is a group, and
+//the bookmarks of a root's folders (at any depth) are bookmarks of its group.
+//The file is walked with a streaming JsonReader, so even a profile of thousands
+//of bookmarks is never held in memory as a tree. The pages of the bookmarks are
+//not fetched here- see ImportPipeline.
+
 public class ChromeImporter {
 
     private static final String WINDOWS_BOOKMARKS_PATH =  "\\AppData\\" +
@@ -25,76 +29,167 @@ public class ChromeImporter {
 
     private static final String ROOT_GROUP_FIELD = "roots";
     private static final String URL_CHROME_FIELD = "url";
-    private static final String FOLDER_CHROME_FIELD = "folder";
     private static final String BOOKMARK_NAME_CHROME_FIELD = "name";
     private static final String BOOKMARK_TYPE_CHROME_FIELD = "type";
     private static final String BOOKMARKS_LIST_FIELD = "children";
+    private static final String CHECKSUM_FIELD = "checksum";
+    private static final String GUID_FIELD = "guid";
+    private static final String ID_FIELD = "id";
 
-    private static final Gson gson = new Gson();
-    private static final HtmlTokenizer tokenizer = new HtmlTokenizer();
-
+    //the groups of the Chrome profile with their bookmarks, without keywords;
+    //null if there is no profile to import
     public static Map<String, BookmarksGroup> importChromeGroups() {
+        BookmarksSource source = chromeBookmarks();
+        if (source == null) {
+            return null;
+        }
         Map<String, BookmarksGroup> chromeGroups = new HashMap<>();
         try {
-            String chromeFile = findChromeBookmarksPath();
-            if (chromeFile == null) {
-                System.err.println("ChromeFile is null");
-                return null;
-            }
-            FileReader reader = new FileReader(chromeFile);
-            JsonObject root = gson.fromJson(reader, JsonObject.class);
-            JsonObject roots = root.getAsJsonObject(ROOT_GROUP_FIELD);
-            for (Map.Entry<String, JsonElement> entry : roots.entrySet()) {
-                String groupName = entry.getKey();
-                BookmarksGroup currentGroup = new BookmarksGroup(groupName,
-                        new HashMap<>());
-                JsonObject groupNode = entry.getValue().getAsJsonObject();
-                JsonArray children = groupNode.getAsJsonArray(BOOKMARKS_LIST_FIELD);
-                System.err.println("groupNode:  " + groupNode);
-                System.err.println("children:  " + children);
-
-                if (children != null) {
-                    extractBookmarks(children, currentGroup);
-                    chromeGroups.putIfAbsent(groupName, currentGroup);
+            source.read(new BookmarksSource.Visitor() {
+                @Override
+                public void group(String groupName) {
+                    chromeGroups.putIfAbsent(groupName, new BookmarksGroup(groupName, new HashMap<>()));
                 }
-            }
+
+                @Override
+                public void bookmark(String groupName, String title, String url) {
+                    chromeGroups.get(groupName).addNewBookmark(new Bookmark(title, url, null, groupName));
+                }
+            });
         } catch (IOException e) {
             ExceptionsLogger.logClientException(e);
-            System.err.println("Exc when chromeFile opening:  " + e.getMessage());
             return null;
         }
         return chromeGroups;
     }
 
-    private static void extractBookmarks(JsonArray children, BookmarksGroup chromeGroup) {
-        for (JsonElement element : children) {
-            JsonObject bookmarkNode = element.getAsJsonObject();
-            String type = bookmarkNode.get(BOOKMARK_TYPE_CHROME_FIELD).getAsString();
-
-            if (URL_CHROME_FIELD.equals(type)) {
-                String title = bookmarkNode.get(BOOKMARK_NAME_CHROME_FIELD).getAsString();
-                String url = bookmarkNode.get(URL_CHROME_FIELD).getAsString();
-                chromeGroup.addNewBookmark(new Bookmark(title, url, tokenizer.getKeywords(url),
-                        chromeGroup.getGroupName()));
-
-                System.err.println("Title: " + title);
-                System.err.println("Url: " + url);
-            } else if (FOLDER_CHROME_FIELD.equals(type)) {
-                JsonArray subChildren = bookmarkNode.getAsJsonArray(BOOKMARKS_LIST_FIELD);
-                System.err.println("Subchildren: " + subChildren);
-                if (subChildren != null) {
-                    extractBookmarks(subChildren, chromeGroup);
+    //the Bookmarks file of the Chrome profile, or null on an unsupported OS
+    public static BookmarksSource chromeBookmarks() {
+        String chromeFile = findChromeBookmarksFile();
+        return chromeFile == null ? null : chromeBookmarks(chromeFile);
+    }
+
+    //a Bookmarks file of Chrome (or of any browser which keeps its format) anywhere
+    public static BookmarksSource chromeBookmarks(String chromeFile) {
+        return visitor -> {
+            try (Reader reader = new FileReader(chromeFile)) {
+                read(reader, visitor);
+            }
+        };
+    }
+
+    //the checksum Chrome keeps of the file's bookmarks, null if there is none;
+    //Chrome writes it first, so the rest of the file is not even read then
+    public static String readChecksum(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                if (CHECKSUM_FIELD.equals(json.nextName())) {
+                    return nextString(json);
+                }
+                json.skipValue();
+            }
+            return null;
+        } catch (IllegalStateException e) {
+            throw new IOException("Not a Chrome bookmarks file", e);
+        }
+    }
+
+    //a root without a list of children is not a group
+    public static void read(Reader reader, BookmarksSource.Visitor visitor) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                if (ROOT_GROUP_FIELD.equals(json.nextName()) && json.peek() == JsonToken.BEGIN_OBJECT) {
+                    readRoots(json, visitor);
+                } else {
+                    json.skipValue();
                 }
             }
+            json.endObject();
+        } catch (IllegalStateException e) { //a value of an unexpected type
+            throw new IOException("Not a Chrome bookmarks file", e);
         }
     }
 
-    private static String findChromeBookmarksPath() {
+    private static void readRoots(JsonReader json, BookmarksSource.Visitor visitor) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String groupName = json.nextName();
+            if (json.peek() == JsonToken.BEGIN_OBJECT) {
+                readNode(json, groupName, true, visitor);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    //the fields of a node come in any order (Chrome writes a folder's children
+    //before its type), so a bookmark is visited once its whole node is read
+    private static void readNode(JsonReader json, String groupName, boolean isRoot,
+                                 BookmarksSource.Visitor visitor) throws IOException {
+        String type = null;
+        String name = null;
+        String url = null;
+        String guid = null;
+        String id = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case BOOKMARK_TYPE_CHROME_FIELD -> type = nextString(json);
+                case BOOKMARK_NAME_CHROME_FIELD -> name = nextString(json);
+                case URL_CHROME_FIELD -> url = nextString(json);
+                case GUID_FIELD -> guid = nextString(json);
+                case ID_FIELD -> id = nextString(json);
+                case BOOKMARKS_LIST_FIELD -> readChildren(json, groupName, isRoot, visitor);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        if (URL_CHROME_FIELD.equals(type) && url != null) {
+            //the guid survives syncing between devices, the id only identifies the node in its profile
+            String nodeId = guid != null ? guid : id != null ? id : groupName + " " + url;
+            visitor.bookmark(groupName, name == null ? url : name, url, nodeId);
+        }
+    }
+
+    private static void readChildren(JsonReader json, String groupName, boolean isRoot,
+                                     BookmarksSource.Visitor visitor) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_ARRAY) {
+            json.skipValue();
+            return;
+        }
+        if (isRoot) {
+            visitor.group(groupName);
+        }
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.BEGIN_OBJECT) {
+                readNode(json, groupName, false, visitor);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endArray();
+    }
+
+    private static String nextString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    //null on an unsupported OS
+    public static String findChromeBookmarksFile() {
         String osName = System.getProperty("os.name").toLowerCase();
         String userHome = System.getProperty("user.home");
 
         if (osName.contains("windows")) {
-            System.err.println("Os is Windows.");
             return userHome + WINDOWS_BOOKMARKS_PATH;
         } else if (osName.contains("linux") || osName.contains("unix")) {  // Linux
             return userHome + LINUX_BOOKMARKS_PATH;
@@ -107,4 +202,3 @@ public class ChromeImporter {
     }
 
 }
-
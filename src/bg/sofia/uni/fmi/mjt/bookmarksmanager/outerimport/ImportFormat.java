@@ -0,0 +1,36 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import java.nio.file.Path;
+
+//The formats of the bookmarks files which can be imported
+public enum ImportFormat {
+    NETSCAPE("netscape"),
+    CHROME_JSON("chrome-json");
+
+    private final String formatName;
+
+    ImportFormat(String formatName) {
+        this.formatName = formatName;
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    //null if there is no such format
+    public static ImportFormat of(String formatName) {
+        for (ImportFormat format : values()) {
+            if (format.formatName.equalsIgnoreCase(formatName)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    public BookmarksSource open(Path file) {
+        return switch (this) {
+            case NETSCAPE -> NetscapeImporter.netscapeBookmarks(file);
+            case CHROME_JSON -> ChromeImporter.chromeBookmarks(file.toString());
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.EnrichedPage;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.PageEnricher;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+//Imports bookmarks in three stages, so that a profile of thousands of them neither
+//waits for one page after another nor blocks anyone meanwhile: the source is read
+//as a stream, every bookmark read is enriched (its keywords taken from its page) on
+//a virtual thread of its own, and the enriched bookmarks are collected into their
+//groups, for the caller to store as one batch (or as one batch per so many of them). At most maxConcurrency pages are
+//fetched at a time and at most maxPerHost from any single host; at most maxPending
+//bookmarks wait for enrichment- the reading of the source waits for them.
+
+public class ImportPipeline {
+    public static final int DEFAULT_MAX_CONCURRENCY = 32;
+    public static final int DEFAULT_MAX_PER_HOST = 4;
+    public static final int DEFAULT_MAX_PENDING = 256;
+    public static final int PROGRESS_STEP = 100; //enriched bookmarks between progress updates
+
+    private final PageEnricher enricher;
+    private final Semaphore permits;
+    private final int maxPerHost;
+    private final int maxPending;
+    private final Map<String, Semaphore> hostPermits;
+
+    @FunctionalInterface
+    public interface Progress {
+        void update(int enrichedCount, int foundCount);
+    }
+
+    public ImportPipeline() {
+        this(PageEnricher.getDefault(), DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_PER_HOST, DEFAULT_MAX_PENDING);
+    }
+
+    public ImportPipeline(PageEnricher enricher, int maxConcurrency, int maxPerHost, int maxPending) {
+        if (maxConcurrency <= 0 || maxPerHost <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("At least one bookmark at a time must be enriched!");
+        }
+        this.enricher = enricher;
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxPerHost = maxPerHost;
+        this.maxPending = maxPending;
+        this.hostPermits = new ConcurrentHashMap<>();
+    }
+
+    //the groups of the source with their enriched bookmarks, in the order the groups
+    //were read; returns when all of them are enriched, and the progress is updated
+    //every PROGRESS_STEP bookmarks and once more at the end
+    public Map<String, BookmarksGroup> run(BookmarksSource source, Progress progress) throws IOException {
+        Map<String, BookmarksGroup> groups = new LinkedHashMap<>();
+        run(source, Integer.MAX_VALUE, groups::putAll, progress); //a single batch
+        return groups;
+    }
+
+    //Same as run, but the enriched bookmarks are handed to onBatch, grouped, every
+    //batchSize of them (and the rest at the end) instead of being collected, so that
+    //at most batchSize + maxPending bookmarks are held at a time whatever the size of
+    //the source. The batches are handed one at a time; a group may be in several of
+    //them. Returns the number of bookmarks read.
+    public int run(BookmarksSource source, int batchSize, Consumer<Map<String, BookmarksGroup>> onBatch,
+                   Progress progress) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batches must have at least one bookmark!");
+        }
+        Batches batches = new Batches(batchSize, onBatch);
+        Semaphore pending = new Semaphore(maxPending);
+        AtomicInteger foundCount = new AtomicInteger();
+        AtomicInteger enrichedCount = new AtomicInteger();
+        try (ExecutorService tasks = Executors.newVirtualThreadPerTaskExecutor()) {
+            source.read(new BookmarksSource.Visitor() {
+                @Override
+                public void group(String groupName) {
+                    batches.addGroup(groupName);
+                }
+
+                @Override
+                public void bookmark(String groupName, String title, String url) {
+                    pending.acquireUninterruptibly();
+                    foundCount.incrementAndGet();
+                    tasks.execute(() -> {
+                        try {
+                            batches.add(enrich(groupName, title, url));
+                            int enriched = enrichedCount.incrementAndGet();
+                            if (enriched % PROGRESS_STEP == 0) {
+                                progress.update(enriched, foundCount.get());
+                            }
+                        } finally {
+                            pending.release();
+                        }
+                    });
+                }
+            });
+        } finally { //waits for the enrichment of all bookmarks read, even if the reading failed
+            batches.handOver();
+        }
+        progress.update(enrichedCount.get(), foundCount.get());
+        return foundCount.get();
+    }
+
+    //a bookmark whose page could not be fetched is imported without keywords
+    private Bookmark enrich(String groupName, String title, String url) {
+        Semaphore host = hostPermits.computeIfAbsent(hostOf(url), name -> new Semaphore(maxPerHost));
+        EnrichedPage page = null;
+        host.acquireUninterruptibly(); //before a global permit, so that a busy host does not hold those
+        try {
+            permits.acquireUninterruptibly();
+            try {
+                page = enricher.enrich(url);
+            } finally {
+                permits.release();
+            }
+        } catch (RuntimeException e) { //a malformed url or a page without text
+            ExceptionsLogger.logClientException(e);
+        } finally {
+            host.release();
+        }
+        Map<String, Integer> termFrequencies = page == null ? null : page.termFrequencies();
+        return new Bookmark(title, url, termFrequencies == null ? null : new HashSet<>(termFrequencies.keySet()),
+                groupName, termFrequencies);
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url.strip()).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    //the enriched bookmarks not yet handed over, by their groups
+    private static final class Batches {
+        private final int batchSize;
+        private final Consumer<Map<String, BookmarksGroup>> onBatch;
+        private Map<String, BookmarksGroup> groups = new LinkedHashMap<>();
+        private int count;
+
+        private Batches(int batchSize, Consumer<Map<String, BookmarksGroup>> onBatch) {
+            this.batchSize = batchSize;
+            this.onBatch = onBatch;
+        }
+
+        private synchronized void addGroup(String groupName) {
+            groups.putIfAbsent(groupName, new BookmarksGroup(groupName, new HashMap<>()));
+        }
+
+        //the enrichment of the others waits while a full batch is handed over
+        private synchronized void add(Bookmark bookmark) {
+            groups.computeIfAbsent(bookmark.groupName(), name -> new BookmarksGroup(name, new HashMap<>()))
+                    .addNewBookmark(bookmark);
+            if (++count >= batchSize) {
+                handOver();
+            }
+        }
+
+        private synchronized void handOver() {
+            if (groups.isEmpty()) {
+                return;
+            }
+            Map<String, BookmarksGroup> batch = groups;
+            groups = new LinkedHashMap<>();
+            count = 0;
+            onBatch.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+//Reads a bookmarks file in the Netscape format- the HTML which every browser
+//exports and imports:
+//    <DL><p>
+//        <DT><H3>Folder</H3>
+//        <DL><p>
+//            <DT><A HREF="https://...">Title</A>
+//        </DL><p>
+//    </DL><p>
+//Every top-level folder is a group and the bookmarks of its folders (at any depth)
+//are bookmarks of its group, as with the roots of Chrome; the bookmarks outside any
+//folder are of DEFAULT_GROUP_NAME. The file is scanned tag by tag, so only the
+//current tag and text are ever held in memory, and never a document tree.
+
+public class NetscapeImporter {
+    public static final String DEFAULT_GROUP_NAME = "imported";
+
+    //longer ones are cut, so that a damaged file can not fill the memory
+    private static final int MAX_TEXT_LENGTH = 4096;
+    private static final int MAX_TAG_LENGTH = 65_536; //an ICON attribute may hold a whole image
+
+    private static final String FOLDER_TAG = "H3";
+    private static final String LINK_TAG = "A";
+    private static final String LIST_TAG = "DL";
+    private static final String URL_ATTRIBUTE = "HREF";
+    private static final String COMMENT_START = "!--";
+    private static final String COMMENT_END = "--";
+
+    public static BookmarksSource netscapeBookmarks(Path file) {
+        return visitor -> {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                read(reader, visitor);
+            }
+        };
+    }
+
+    public static void read(Reader reader, BookmarksSource.Visitor visitor) throws IOException {
+        new Scanner(new BufferedReader(reader), visitor).scan();
+    }
+
+    private static final class Scanner {
+        private final Reader reader;
+        private final BookmarksSource.Visitor visitor;
+        private final List<String> lists = new ArrayList<>(); //the folder of every open list, "" for none
+        private final StringBuilder text = new StringBuilder();
+        private boolean isInFolderName;
+        private boolean isInLink;
+        private String folderName; //of the folder whose list is yet to be opened
+        private String url;
+        private boolean isDefaultGroupVisited;
+
+        private Scanner(Reader reader, BookmarksSource.Visitor visitor) {
+            this.reader = reader;
+            this.visitor = visitor;
+        }
+
+        private void scan() throws IOException {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == '<') {
+                    onTag(readTag());
+                } else if ((isInFolderName || isInLink) && text.length() < MAX_TEXT_LENGTH) {
+                    text.append((char) c);
+                }
+            }
+        }
+
+        //the content between '<' and '>'; a '>' in a quoted attribute value or in a comment does not end it
+        private String readTag() throws IOException {
+            StringBuilder tag = new StringBuilder();
+            char quote = 0;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (quote != 0) {
+                    quote = c == quote ? 0 : quote;
+                } else if (c == '"' || c == '\'') {
+                    quote = isComment(tag) ? 0 : (char) c;
+                } else if (c == '>' && (!isComment(tag) || endsComment(tag))) {
+                    break;
+                }
+                if (tag.length() < MAX_TAG_LENGTH) {
+                    tag.append((char) c);
+                }
+            }
+            return tag.toString();
+        }
+
+        private void onTag(String tag) {
+            boolean isClosing = tag.startsWith("/");
+            String name = tagName(isClosing ? tag.substring(1) : tag);
+            switch (name) {
+                case FOLDER_TAG -> {
+                    if (isClosing) {
+                        folderName = Parser.unescapeEntities(text.toString(), false).strip().replaceAll("\\s+", "-");
+                    }
+                    startText(!isClosing, false);
+                }
+                case LINK_TAG -> {
+                    if (!isClosing) {
+                        url = attribute(tag, URL_ATTRIBUTE);
+                    } else if (isInLink && url != null && !url.isBlank()) {
+                        String title = Parser.unescapeEntities(text.toString(), false).strip();
+                        String groupName = groupName();
+                        visitor.bookmark(groupName, title.isEmpty() ? url : title, url);
+                    }
+                    startText(false, !isClosing);
+                }
+                case LIST_TAG -> {
+                    if (isClosing) {
+                        if (!lists.isEmpty()) {
+                            lists.removeLast();
+                        }
+                        return;
+                    }
+                    lists.add(folderName == null ? "" : folderName);
+                    folderName = null;
+                    if (lists.size() == 2 && !lists.get(1).isEmpty()) { //a top-level folder
+                        visitor.group(lists.get(1));
+                    }
+                }
+                default -> { }
+            }
+        }
+
+        private void startText(boolean isFolderName, boolean isLink) {
+            isInFolderName = isFolderName;
+            isInLink = isLink;
+            text.setLength(0);
+        }
+
+        //the top-level folder of the current list
+        private String groupName() {
+            if (lists.size() >= 2 && !lists.get(1).isEmpty()) {
+                return lists.get(1);
+            }
+            if (!isDefaultGroupVisited) {
+                isDefaultGroupVisited = true;
+                visitor.group(DEFAULT_GROUP_NAME);
+            }
+            return DEFAULT_GROUP_NAME;
+        }
+
+        private static boolean isComment(StringBuilder tag) {
+            return tag.length() >= COMMENT_START.length() && tag.indexOf(COMMENT_START) == 0;
+        }
+
+        private static boolean endsComment(StringBuilder tag) {
+            return tag.length() >= COMMENT_START.length() + COMMENT_END.length() &&
+                    tag.lastIndexOf(COMMENT_END) == tag.length() - COMMENT_END.length();
+        }
+
+        private static String tagName(String tag) {
+            int end = 0;
+            while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '/') {
+                end++;
+            }
+            return tag.substring(0, end).toUpperCase(Locale.ROOT);
+        }
+
+        //the value of the tag's attribute (the names are case-insensitive), null if there is none
+        private static String attribute(String tag, String attributeName) {
+            int i = tagName(tag).length();
+            while (i < tag.length()) {
+                while (i < tag.length() && (Character.isWhitespace(tag.charAt(i)) || tag.charAt(i) == '/')) {
+                    i++;
+                }
+                int nameStart = i;
+                while (i < tag.length() && tag.charAt(i) != '=' && !Character.isWhitespace(tag.charAt(i))) {
+                    i++;
+                }
+                String name = tag.substring(nameStart, i);
+                while (i < tag.length() && Character.isWhitespace(tag.charAt(i))) {
+                    i++;
+                }
+                if (i >= tag.length() || tag.charAt(i) != '=') {
+                    continue; //an attribute without a value
+                }
+                i++;
+                while (i < tag.length() && Character.isWhitespace(tag.charAt(i))) {
+                    i++;
+                }
+                int valueStart;
+                int valueEnd;
+                if (i < tag.length() && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+                    valueStart = i + 1;
+                    valueEnd = tag.indexOf(tag.charAt(i), valueStart);
+                    valueEnd = valueEnd < 0 ? tag.length() : valueEnd;
+                    i = Math.min(valueEnd + 1, tag.length());
+                } else {
+                    valueStart = i;
+                    while (i < tag.length() && !Character.isWhitespace(tag.charAt(i))) {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+                if (name.equalsIgnoreCase(attributeName)) {
+                    return Parser.unescapeEntities(tag.substring(valueStart, valueEnd), true);
+                }
+            }
+            return null;
+        }
+    }
+}
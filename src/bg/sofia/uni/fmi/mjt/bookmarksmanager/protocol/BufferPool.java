@@ -0,0 +1,49 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//A slab of direct memory cut into fixed-size chunks which the server hands out
+//for encoding replies. Chunks are returned once written or when their connection
+//closes. When the slab is exhausted, short-lived heap chunks are used instead.
+
+public class BufferPool {
+    private final int chunkSize;
+    private final ByteBuffer slab;
+    private final Queue<ByteBuffer> freeChunks;
+
+    public BufferPool(int chunkSize, int chunksCount) {
+        if (chunkSize <= 0 || chunksCount <= 0) {
+            throw new IllegalArgumentException("Chunk size and chunks count must be positive!");
+        }
+        this.chunkSize = chunkSize;
+        this.slab = ByteBuffer.allocateDirect(chunkSize * chunksCount);
+        this.freeChunks = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < chunksCount; i++) {
+            freeChunks.add(slab.slice(i * chunkSize, chunkSize));
+        }
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer chunk = freeChunks.poll();
+        if (chunk == null) {
+            return ByteBuffer.allocate(chunkSize);
+        }
+        return chunk.clear();
+    }
+
+    public void release(ByteBuffer chunk) {
+        if (chunk != null && chunk.isDirect() && chunk.capacity() == chunkSize) {
+            freeChunks.add(chunk);
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getFreeChunksCount() {
+        return freeChunks.size();
+    }
+}
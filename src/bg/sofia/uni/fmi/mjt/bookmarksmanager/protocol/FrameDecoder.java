@@ -0,0 +1,61 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidFrameException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Accumulates the bytes of one connection across reads and cuts them into frames,
+//so that partial reads and several coalesced requests are both handled.
+
+public class FrameDecoder {
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final int maxFrameSize;
+    private ByteBuffer accumulated;
+
+    public FrameDecoder() {
+        this(Frames.MAX_REQUEST_SIZE);
+    }
+
+    public FrameDecoder(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+        this.accumulated = ByteBuffer.allocate(INITIAL_CAPACITY);
+    }
+
+    public List<String> decode(ByteBuffer input) {
+        append(input);
+        accumulated.flip();
+
+        List<String> frames = new ArrayList<>();
+        while (accumulated.remaining() >= Frames.HEADER_SIZE) {
+            int length = accumulated.getInt(accumulated.position());
+            if (length < 0 || length > maxFrameSize) {
+                throw new InvalidFrameException(String.format("Frame length %d " +
+                        "is out of range [0, %d]", length, maxFrameSize));
+            }
+            if (accumulated.remaining() < Frames.HEADER_SIZE + length) {
+                break;
+            }
+            accumulated.position(accumulated.position() + Frames.HEADER_SIZE);
+            ByteBuffer payload = accumulated.slice(accumulated.position(), length);
+            frames.add(StandardCharsets.UTF_8.decode(payload).toString());
+            accumulated.position(accumulated.position() + length);
+        }
+        accumulated.compact();
+        return frames;
+    }
+
+    private void append(ByteBuffer input) {
+        if (accumulated.remaining() < input.remaining()) {
+            int required = accumulated.position() + input.remaining();
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(required, accumulated.capacity() * 2));
+            accumulated.flip();
+            bigger.put(accumulated);
+            accumulated = bigger;
+        }
+        accumulated.put(input);
+    }
+}
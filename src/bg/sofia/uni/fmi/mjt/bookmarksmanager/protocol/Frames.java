@@ -0,0 +1,51 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidFrameException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+//A frame is a 4-byte big-endian length followed by that many bytes of UTF-8 text.
+//The blocking helpers below are meant for the client side of the connection.
+
+public class Frames {
+    public static final int HEADER_SIZE = Integer.BYTES;
+    public static final int MAX_REQUEST_SIZE = 64 * 1024;
+
+    public static ByteBuffer encode(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(payload.length).put(payload);
+        return frame.flip();
+    }
+
+    public static void writeFrame(WritableByteChannel channel, String message) throws IOException {
+        ByteBuffer frame = encode(message);
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    public static String readFrame(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, ByteBuffer.allocate(HEADER_SIZE));
+        int length = header.getInt();
+        if (length < 0) {
+            throw new InvalidFrameException("Negative frame length: " + length);
+        }
+        ByteBuffer payload = readFully(channel, ByteBuffer.allocate(length));
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,6 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+public enum ProtocolMode {
+    RAW,    //legacy: whatever a single read returns is one command, replies are not delimited
+    FRAMED  //every request and reply is prefixed with its length, so commands can be pipelined
+}
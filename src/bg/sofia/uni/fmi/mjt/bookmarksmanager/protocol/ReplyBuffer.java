@@ -0,0 +1,93 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Encodes a reply as UTF-8 directly into pooled chunks, without building
+//the whole reply as a String or a byte[] first. In framed mode the first
+//four bytes are reserved for the length, which is filled in by finish().
+
+public class ReplyBuffer implements Appendable {
+    private final BufferPool pool;
+    private final boolean isFramed;
+    private final CharsetEncoder encoder;
+    private final List<ByteBuffer> chunks;
+    private ByteBuffer current;
+    private int payloadSize;
+    private ReplyContinuation continuation;
+
+    public ReplyBuffer(BufferPool pool, boolean isFramed) {
+        this.pool = pool;
+        this.isFramed = isFramed;
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.chunks = new ArrayList<>();
+        this.current = nextChunk();
+        if (isFramed) {
+            current.position(Frames.HEADER_SIZE);
+        }
+    }
+
+    @Override
+    public ReplyBuffer append(CharSequence text) {
+        CharBuffer chars = CharBuffer.wrap(text == null ? "null" : text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, current, true);
+            if (!result.isOverflow()) {
+                break;
+            }
+            payloadSize += current.position();
+            current = nextChunk();
+        }
+        encoder.reset();
+        return this;
+    }
+
+    @Override
+    public ReplyBuffer append(CharSequence text, int start, int end) {
+        return append(text == null ? "null" : text.subSequence(start, end));
+    }
+
+    @Override
+    public ReplyBuffer append(char c) {
+        return append(String.valueOf(c));
+    }
+
+    //the reply does not end with this buffer- the continuation produces the rest of it
+    public void continueWith(ReplyContinuation continuation) {
+        this.continuation = continuation;
+    }
+
+    public ReplyContinuation getContinuation() {
+        return continuation;
+    }
+
+    //flips the chunks for writing; the buffer must not be appended to afterwards
+    public List<ByteBuffer> finish() {
+        payloadSize += current.position();
+        if (isFramed) {
+            chunks.getFirst().putInt(0, payloadSize - Frames.HEADER_SIZE);
+        }
+        for (ByteBuffer chunk : chunks) {
+            chunk.flip();
+        }
+        return chunks;
+    }
+
+    public void release() {
+        for (ByteBuffer chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+    }
+
+    private ByteBuffer nextChunk() {
+        ByteBuffer chunk = pool.acquire();
+        chunks.add(chunk);
+        return chunk;
+    }
+}
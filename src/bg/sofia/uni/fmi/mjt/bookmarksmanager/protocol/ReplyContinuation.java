@@ -0,0 +1,12 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+//The rest of a streamed reply. It is asked for the next part only after the
+//previous one has been written to the socket, so at most one part is in memory.
+//In framed mode each part is a separate frame and an empty frame ends the reply.
+
+@FunctionalInterface
+public interface ReplyContinuation {
+
+    //writes the next part of the reply into out; returns false once the reply is complete
+    boolean writeNext(ReplyBuffer out);
+}
@@ -0,0 +1,125 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.BufferPool;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ProtocolMode;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyBuffer;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyContinuation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+//Per-connection state attached to the channel's selection key.
+//It is only touched by the reactor thread that owns the channel.
+
+class ClientSession {
+    //stop reading from a client that pipelines faster than it consumes its replies
+    private static final int MAX_PENDING_COMMANDS = 128;
+    private static final int MAX_PENDING_REPLY_BYTES = 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final ProtocolMode protocolMode;
+    private final BufferPool bufferPool;
+    private final FrameDecoder decoder;
+    private final Queue<String> pendingCommands;
+    private final Queue<ByteBuffer> pendingReplies;
+    private long pendingReplyBytes;
+    private ReplyContinuation streamedReply;
+    private boolean isCommandInProgress;
+
+    ClientSession(SocketChannel channel, ProtocolMode protocolMode, BufferPool bufferPool) {
+        this.channel = channel;
+        this.protocolMode = protocolMode;
+        this.bufferPool = bufferPool;
+        this.decoder = protocolMode == ProtocolMode.FRAMED ? new FrameDecoder() : null;
+        this.pendingCommands = new ArrayDeque<>();
+        this.pendingReplies = new ArrayDeque<>();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void consumeInput(ByteBuffer input) {
+        if (protocolMode == ProtocolMode.FRAMED) {
+            pendingCommands.addAll(decoder.decode(input));
+        } else {
+            pendingCommands.add(StandardCharsets.UTF_8.decode(input).toString());
+        }
+    }
+
+    String nextCommand() {
+        return pendingCommands.poll();
+    }
+
+    //the next command may be executed only when the previous reply is complete
+    boolean canExecuteNextCommand() {
+        return !isCommandInProgress && streamedReply == null && !pendingCommands.isEmpty();
+    }
+
+    boolean canAcceptInput() {
+        return pendingCommands.size() < MAX_PENDING_COMMANDS &&
+                pendingReplyBytes < MAX_PENDING_REPLY_BYTES;
+    }
+
+    ReplyBuffer newReply() {
+        return new ReplyBuffer(bufferPool, protocolMode == ProtocolMode.FRAMED);
+    }
+
+    void enqueueReply(String reply) {
+        enqueueReply(newReply().append(reply));
+    }
+
+    void enqueueReply(ReplyBuffer reply) {
+        for (ByteBuffer chunk : reply.finish()) {
+            pendingReplyBytes += chunk.remaining();
+            pendingReplies.add(chunk);
+        }
+        streamedReply = reply.getContinuation();
+    }
+
+    //writes as much as the socket accepts, asking a streamed reply for its next
+    //part whenever the previous one is fully written; returns true when nothing is left
+    boolean writePendingReplies() throws IOException {
+        while (true) {
+            while (!pendingReplies.isEmpty()) {
+                ByteBuffer chunk = pendingReplies.peek();
+                pendingReplyBytes -= channel.write(chunk);
+                if (chunk.hasRemaining()) {
+                    return false;
+                }
+                bufferPool.release(pendingReplies.poll());
+            }
+            if (streamedReply == null) {
+                return true;
+            }
+            ReplyContinuation continuation = streamedReply;
+            ReplyBuffer nextPart = newReply();
+            boolean hasMoreParts = continuation.writeNext(nextPart);
+            enqueueReply(nextPart);
+            streamedReply = hasMoreParts ? continuation : null;
+        }
+    }
+
+    //gives the chunks of the unsent replies back to the pool
+    void close() {
+        streamedReply = null;
+        ByteBuffer chunk;
+        while ((chunk = pendingReplies.poll()) != null) {
+            bufferPool.release(chunk);
+        }
+        pendingReplyBytes = 0;
+    }
+
+    boolean isCommandInProgress() {
+        return isCommandInProgress;
+    }
+
+    void setCommandInProgress(boolean isCommandInProgress) {
+        this.isCommandInProgress = isCommandInProgress;
+    }
+}
@@ -0,0 +1,256 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.Command;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.CommandCreator;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidFrameException;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.BufferPool;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ProtocolMode;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+//One event loop (selector thread) serving a subset of the server's clients.
+//Fast commands are executed inline; blocking ones are handed to the workers
+//and their replies are posted back to this reactor, which writes them with OP_WRITE.
+//Replies of a connection are always written in the order its commands were received.
+
+class Reactor implements Runnable {
+    private static final int BUFFER_SIZE = 4096;
+    private static final String SERVER_ERROR_MESSAGE = "An unexpected server " +
+            "error occurred. Please, try again later.";
+
+    private final CommandExecutor executor;
+    private final ProtocolMode protocolMode;
+    private final BufferPool bufferPool;
+    private final ExecutorService workers;
+    private final Semaphore blockingCommandsLimit;
+    private final Selector selector;
+    private final ByteBuffer buffer;
+    private final Queue<SocketChannel> pendingChannels;
+    private final Queue<Runnable> pendingTasks;
+    private volatile boolean isWorking;
+
+    Reactor(CommandExecutor executor, ProtocolMode protocolMode, BufferPool bufferPool,
+            ExecutorService workers, Semaphore blockingCommandsLimit) {
+        this.executor = executor;
+        this.protocolMode = protocolMode;
+        this.bufferPool = bufferPool;
+        this.workers = workers;
+        this.blockingCommandsLimit = blockingCommandsLimit;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.pendingTasks = new ConcurrentLinkedQueue<>();
+        this.isWorking = true;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open reactor's selector", e);
+        }
+    }
+
+    //may be called from any thread
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    void stop() {
+        isWorking = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try (selector) {
+            while (isWorking) {
+                selector.select();
+                registerPendingChannels();
+                runPendingTasks();
+
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    handleKey(key);
+                }
+            }
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                readCommands(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                processCommands(key);
+            }
+        } catch (IOException | CancelledKeyException | InvalidFrameException e) {
+            ExceptionsLogger.logClientException(e);
+            closeChannel(key);
+        }
+    }
+
+    private void readCommands(SelectionKey key) throws IOException {
+        ClientSession session = (ClientSession) key.attachment();
+
+        buffer.clear();
+        int r = session.getChannel().read(buffer);
+        if (r < 0) {
+            System.out.println("Client has closed the connection");
+            closeChannel(key);
+            return;
+        }
+        buffer.flip();
+        session.consumeInput(buffer);
+        processCommands(key);
+    }
+
+    //executes the queued commands of the client in order; a blocking command or
+    //a streamed reply suspends the processing until the reply is complete
+    private void processCommands(SelectionKey key) throws IOException {
+        ClientSession session = (ClientSession) key.attachment();
+        do {
+            while (session.canExecuteNextCommand()) {
+                Command command = CommandCreator.newCommand(session.nextCommand());
+                if (CommandExecutor.isBlockingCommand(command)) {
+                    submitToWorkers(key, command);
+                } else {
+                    ReplyBuffer reply = session.newReply();
+                    executeCommand(command, session.getChannel(), reply);
+                    session.enqueueReply(reply);
+                }
+            }
+            writeReplies(key); //may complete a streamed reply and unblock the next command
+        } while (key.isValid() && session.canExecuteNextCommand());
+    }
+
+    private void submitToWorkers(SelectionKey key, Command command) {
+        ClientSession session = (ClientSession) key.attachment();
+        session.setCommandInProgress(true);
+
+        try {
+            workers.execute(() -> {
+                ReplyBuffer reply = session.newReply();
+                executeBlocking(command, session.getChannel(), reply);
+                pendingTasks.add(() -> completeBlockingCommand(key, reply));
+                selector.wakeup();
+            });
+        } catch (RejectedExecutionException e) {
+            ExceptionsLogger.logClientException(e);
+            session.setCommandInProgress(false);
+            session.enqueueReply(SERVER_ERROR_MESSAGE);
+        }
+    }
+
+    private void executeBlocking(Command command, SocketChannel channel, ReplyBuffer reply) {
+        try {
+            blockingCommandsLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ExceptionsLogger.logClientException(e);
+            reply.append(SERVER_ERROR_MESSAGE);
+            return;
+        }
+        try {
+            executeCommand(command, channel, reply);
+        } finally {
+            blockingCommandsLimit.release();
+        }
+    }
+
+    private void executeCommand(Command command, SocketChannel channel, ReplyBuffer reply) {
+        try {
+            executor.execute(command, channel, reply);
+        } catch (RuntimeException e) {
+            ExceptionsLogger.logClientException(e);
+            reply.append(SERVER_ERROR_MESSAGE);
+        }
+    }
+
+    private void completeBlockingCommand(SelectionKey key, ReplyBuffer reply) {
+        if (!key.isValid()) {
+            reply.release();
+            disconnect((SocketChannel) key.channel()); //e.g. a login which completed after the client left
+            return;
+        }
+        ClientSession session = (ClientSession) key.attachment();
+        session.setCommandInProgress(false);
+        session.enqueueReply(reply);
+        try {
+            processCommands(key);
+        } catch (IOException | CancelledKeyException e) {
+            ExceptionsLogger.logClientException(e);
+            closeChannel(key);
+        }
+    }
+
+    private void writeReplies(SelectionKey key) throws IOException {
+        ClientSession session = (ClientSession) key.attachment();
+        int interestOps = 0;
+        if (!session.writePendingReplies()) {
+            interestOps |= SelectionKey.OP_WRITE;
+        }
+        if (session.canAcceptInput()) {
+            interestOps |= SelectionKey.OP_READ;
+        }
+        key.interestOps(interestOps);
+    }
+
+    private void registerPendingChannels() throws IOException {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            channel.register(selector, SelectionKey.OP_READ, new ClientSession(channel, protocolMode, bufferPool));
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    //the client may have left without disconnect- its user is disconnected anyway
+    private void closeChannel(SelectionKey key) {
+        ((ClientSession) key.attachment()).close();
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+        }
+        disconnect((SocketChannel) key.channel());
+    }
+
+    //on the workers, since the user's groups may be written meanwhile
+    private void disconnect(SocketChannel channel) {
+        try {
+            workers.execute(() -> {
+                try {
+                    executor.disconnect(channel);
+                } catch (RuntimeException e) {
+                    ExceptionsLogger.logClientException(e);
+                }
+            });
+        } catch (RejectedExecutionException e) { //the server is stopping and drains the storages itself
+            ExceptionsLogger.logClientException(e);
+        }
+    }
+}
@@ -1,212 +1,183 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.server;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.BookmarksManager;
-import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.CommandCreator;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.BookmarksManagerAPI;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.api.LocalShortener;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.api.ShortenLinkAPIHandler;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.BufferPool;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ProtocolMode;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.PersistenceScheduler;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.ResidentBookmarks;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged.PagedStore;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
-/*public class Server {
+//The server accepts connections on its own thread and hands every accepted
+//channel to one of several reactors (round-robin). Each reactor owns a selector
+//and serves its channels; slow commands are executed by a pool of worker
+//(virtual) threads so that they do not stall the other clients of the reactor.
+//Replies are encoded into chunks of one direct buffer pool shared by all reactors.
+
+public class Server {
     public static final int SERVER_PORT = 7777;
-    private static final int BUFFER_SIZE = 2048;
-    private static final String HOST = "localhost";
-    private static final String DISCONNECT_CASE = "disconnect";
-
-    private  BookmarksManager manager;
-    private  CommandExecutor commandExecutor;
-    private  int port;
-    private  boolean isServerWorking;
-
-    private  ByteBuffer buffer;
-    private  Selector selector;
-
-    public Server() {
-        this.port = SERVER_PORT;
-        this.manager = new BookmarksManager();
-        this.commandExecutor = new CommandExecutor(manager);
+    private static final String SERVER_HOST = "localhost";
+    private static final String PAGED_STORE_PROPERTY = "storage.paged";
+    private static final int DEFAULT_REACTORS_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_MAX_BLOCKING_COMMANDS = 64;
+    private static final int REPLY_CHUNK_SIZE = 16 * 1024;
+    private static final int REPLY_CHUNKS_COUNT = 1024;
+    private static final long WORKERS_SHUTDOWN_SECONDS = 5;
+
+    private final int port;
+    private final Reactor[] reactors;
+    private final ExecutorService workers;
+    private final CommandExecutor executor;
+
+    private ServerSocketChannel serverSocketChannel;
+    private Selector acceptSelector;
+    private Thread acceptorThread;
+    private volatile boolean isServerWorking;
+    private int nextReactor;
+
+    public Server(int port, CommandExecutor executor) {
+        this(port, DEFAULT_REACTORS_COUNT, DEFAULT_MAX_BLOCKING_COMMANDS,
+                ProtocolMode.FRAMED, executor);
     }
 
-    public Server(int port, BookmarksManager manager) {
+    public Server(int port, int reactorsCount, int maxBlockingCommands,
+                  ProtocolMode protocolMode, CommandExecutor executor) {
+        if (reactorsCount <= 0 || maxBlockingCommands <= 0) {
+            throw new IllegalArgumentException("Reactors count and blocking " +
+                    "commands limit must be positive!");
+        }
         this.port = port;
-        this.manager = manager;
-        this.commandExecutor = new CommandExecutor(manager);
+        this.workers = Executors.newVirtualThreadPerTaskExecutor();
+        this.executor = executor;
+        Semaphore blockingCommandsLimit = new Semaphore(maxBlockingCommands);
+        BufferPool bufferPool = new BufferPool(REPLY_CHUNK_SIZE, REPLY_CHUNKS_COUNT);
+
+        this.reactors = new Reactor[reactorsCount];
+        for (int i = 0; i < reactorsCount; i++) {
+            reactors[i] = new Reactor(executor, protocolMode, bufferPool,
+                    workers, blockingCommandsLimit);
+        }
     }
 
-
-    public void start() {
-        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
-            selector = Selector.open();
-            configureServerSocketChannel(serverSocketChannel, selector);
-            buffer = ByteBuffer.allocate(BUFFER_SIZE);
-            isServerWorking = true;
-            while (isServerWorking) {
+    //with -Dshortener.local.port=<port> the links are shortened by the server itself;
+    //with -Dstorage.paged=true all accounts and bookmarks are kept in a single page file
+    public static void main(String[] args) {
+        LocalShortener localShortener = null;
+        try {
+            localShortener = LocalShortener.fromProperties(SERVER_HOST);
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e); //the links are shortened by Bitly then
+        }
+        ShortenLinkAPIHandler.useLocalShortener(localShortener);
+        BookmarksManager manager = Boolean.getBoolean(PAGED_STORE_PROPERTY) ?
+                new BookmarksManager(PersistenceScheduler.DEFAULT_MAX_LATENCY,
+                        ResidentBookmarks.DEFAULT_MAX_RESIDENT_BOOKMARKS,
+                        Path.of(BookmarksManagerAPI.PAGED_STORE_FILE), PagedStore.DEFAULT_CACHED_PAGES) :
+                new BookmarksManager();
+        Server server = new Server(SERVER_PORT, new CommandExecutor(manager));
+        LocalShortener shortener = localShortener;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(); //drains unwritten changes
+            if (shortener != null) {
                 try {
-                    int readyChannels = selector.select();
-                    if (readyChannels == 0) {
-                        continue;
-                    }
-                    Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
-                    while (keyIterator.hasNext()) {
-                        SelectionKey key = keyIterator.next();
-                        checkKeyStateCases(key);
-                        keyIterator.remove();
-                    }
+                    shortener.close();
                 } catch (IOException e) {
-                    System.out.println("Error occurred while processing client request: " + e.getMessage());
+                    ExceptionsLogger.logClientException(e);
                 }
             }
+        }));
+        server.start();
+    }
+
+    public void start() {
+        try {
+            serverSocketChannel = ServerSocketChannel.open();
+            serverSocketChannel.bind(new InetSocketAddress(SERVER_HOST, port));
+            serverSocketChannel.configureBlocking(false);
+
+            acceptSelector = Selector.open();
+            serverSocketChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
         } catch (IOException e) {
-            throw new UncheckedIOException("failed to start server", e);
+            throw new UncheckedIOException("There is a problem with the server socket", e);
+        }
+
+        isServerWorking = true;
+        for (int i = 0; i < reactors.length; i++) {
+            new Thread(reactors[i], "reactor-" + i).start();
         }
+        acceptorThread = new Thread(this::acceptConnections, "acceptor");
+        acceptorThread.start();
     }
 
     public void stop() {
         isServerWorking = false;
-        if (selector.isOpen()) {
-            selector.wakeup();
+        if (acceptSelector != null && acceptSelector.isOpen()) {
+            acceptSelector.wakeup();
         }
-    }
-
-    private void checkKeyStateCases(SelectionKey key) throws IOException {
-        if (key.isReadable()) {
-            SocketChannel clientChannel = (SocketChannel) key.channel();
-            String clientInput = getClientInput(clientChannel);
-            if (clientInput == null) {
-                return;
-            }
-            if (clientInput.equals(DISCONNECT_CASE)) {
-                disconnectClient(clientChannel, key);
-                return;
+        for (Reactor reactor : reactors) {
+            reactor.stop();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(WORKERS_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
             }
-            String output = commandExecutor.execute(CommandCreator.newCommand(clientInput), clientChannel);
-            writeClientOutput(clientChannel, output);
-        } else if (key.isAcceptable()) {
-            accept(selector, key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        executor.shutdown(); //after the blocking commands, whose changes it persists
     }
 
-    private void disconnectClient(SocketChannel clientChannel, SelectionKey clientKey) throws IOException {
-        clientKey.cancel();
-        clientChannel.close();
-    }
-
-    private void configureServerSocketChannel(ServerSocketChannel channel, Selector selector) throws IOException {
-        channel.bind(new InetSocketAddress(HOST, SERVER_PORT));
-        channel.configureBlocking(false);
-        channel.register(selector, SelectionKey.OP_ACCEPT);
-    }
-
-    private String getClientInput(SocketChannel clientChannel) throws IOException {
-        buffer.clear();
-
-        int readBytes = clientChannel.read(buffer);
-        if (readBytes < 0) {
-            clientChannel.close();
-            return null;
-        }
-
-        buffer.flip();
-
-        byte[] clientInputBytes = new byte[buffer.remaining()];
-        buffer.get(clientInputBytes);
-
-        return new String(clientInputBytes, StandardCharsets.UTF_8);
+    public int getPort() {
+        return serverSocketChannel.socket().getLocalPort();
     }
 
-    private void writeClientOutput(SocketChannel clientChannel, String output) throws IOException {
-        buffer.clear();
-        buffer.put(output.getBytes());
-        buffer.flip();
-
-        clientChannel.write(buffer);
-    }
-
-    private void accept(Selector selector, SelectionKey key) throws IOException {
-        ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
-        SocketChannel accept = sockChannel.accept();
-
-        accept.configureBlocking(false);
-        accept.register(selector, SelectionKey.OP_READ);
-    }
-}*/
-
-public class Server {
-    public static final int SERVER_PORT = 7777;
-    private static final String SERVER_HOST = "localhost";
-    private static final int BUFFER_SIZE = 4096;
-    private static final CommandExecutor executor = new CommandExecutor();
-
-    public static void main(String[] args) {
-        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
-
-            serverSocketChannel.bind(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
-            serverSocketChannel.configureBlocking(false);
-
-            Selector selector = Selector.open();
-            serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
-
-            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-
-            while (true) {
-                int readyChannels = selector.select();
-                if (readyChannels == 0) {
-                    // select() is blocking but may still return with 0, check javadoc
+    private void acceptConnections() {
+        try (ServerSocketChannel channel = serverSocketChannel; Selector selector = acceptSelector) {
+            while (isServerWorking) {
+                if (selector.select() == 0) {
                     continue;
                 }
-
-                Set<SelectionKey> selectedKeys = selector.selectedKeys();
-                Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
-
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
                 while (keyIterator.hasNext()) {
                     SelectionKey key = keyIterator.next();
-                    if (key.isReadable()) {
-                        SocketChannel sc = (SocketChannel) key.channel();
-
-                        buffer.clear();
-                        int r = sc.read(buffer);
-                        if (r < 0) {
-                            System.out.println("Client has closed the connection");
-                            sc.close();
-                            continue;
-                        }
-                        buffer.flip();
-
-                        byte[] clientInputBytes = new byte[buffer.remaining()];
-                        buffer.get(clientInputBytes);
-
-                       String clientInput = new String(clientInputBytes, StandardCharsets.UTF_8);
-
-                        String output = executor.execute(CommandCreator.newCommand(clientInput), sc);
-
-                        System.out.println("Sent to executor");
-
-                        buffer.clear();
-                        buffer.put(output.getBytes());
-                        buffer.flip();
-                        sc.write(buffer);
-
-                    } else if (key.isAcceptable()) {
-                        ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
-                        SocketChannel accept = sockChannel.accept();
-                        accept.configureBlocking(false);
-                        accept.register(selector, SelectionKey.OP_READ);
-                    }
                     keyIterator.remove();
+                    if (key.isAcceptable()) {
+                        accept(channel);
+                    }
                 }
             }
         } catch (IOException e) {
-            throw new RuntimeException("There is a problem with the server socket", e);
+            ExceptionsLogger.logClientException(e);
+            throw new UncheckedIOException("There is a problem with the server socket", e);
         }
     }
-}
 
+    private void accept(ServerSocketChannel channel) throws IOException {
+        SocketChannel accepted = channel.accept();
+        if (accepted == null) {
+            return;
+        }
+        accepted.configureBlocking(false);
+        reactors[nextReactor].register(accepted);
+        nextReactor = (nextReactor + 1) % reactors.length;
+    }
+}
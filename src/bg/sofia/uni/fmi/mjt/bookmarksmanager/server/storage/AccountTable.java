@@ -0,0 +1,181 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+//Fixed-layout table of the registered accounts, kept apart from the bookmarks:
+//a header followed by one RECORD_SIZE record per account, in registration order.
+//Registering appends a single record, so no write depends on the number of
+//accounts or on their bookmarks. A record is
+//[state byte][username length short][username][password length short][password]
+//padded with zeros; a record torn by a crash at the end of the file is ignored.
+
+public class AccountTable implements AccountsStore {
+    public static final int MAX_USERNAME_BYTES = 64;
+    public static final int MAX_PASSWORD_BYTES = 128;
+
+    private static final byte[] HEADER = "BMACCTS1".getBytes(StandardCharsets.US_ASCII);
+    private static final int RECORD_SIZE = 256;
+    private static final byte ACTIVE_RECORD = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path path;
+    private FileChannel channel;
+    private long recordsCount = -1; //unknown until the table is opened
+
+    public AccountTable(Path path) {
+        this.path = path;
+    }
+
+    //an empty or missing file is an empty table; anything else is a file in another format
+    public static boolean isAccountTable(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return true;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(HEADER, in.readNBytes(HEADER.length));
+        }
+    }
+
+    public static boolean fits(String username, String password) {
+        return username.getBytes(StandardCharsets.UTF_8).length <= MAX_USERNAME_BYTES &&
+                password.getBytes(StandardCharsets.UTF_8).length <= MAX_PASSWORD_BYTES;
+    }
+
+    @Override
+    public synchronized List<Account> readAll() throws IOException {
+        FileChannel tableChannel = open();
+        List<Account> accounts = new ArrayList<>();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        for (long i = 0; i < recordsCount; i++) {
+            record.clear();
+            readFully(tableChannel, record, positionOf(i));
+            record.flip();
+            if (record.get() == ACTIVE_RECORD) {
+                accounts.add(new Account(readString(record), readString(record)));
+            }
+        }
+        return accounts;
+    }
+
+    //the record is handed to the OS; flush() makes it durable
+    @Override
+    public synchronized void append(Account account) throws IOException {
+        FileChannel tableChannel = open();
+        writeFully(tableChannel, encode(account), positionOf(recordsCount));
+        recordsCount++;
+    }
+
+    //replaces the whole table atomically (temp file + rename)
+    @Override
+    public synchronized void rewrite(Collection<Account> accounts) throws IOException {
+        Path temp = Path.of(path + TEMP_SUFFIX);
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(tempChannel, ByteBuffer.wrap(HEADER), 0);
+            long position = HEADER.length;
+            for (Account account : accounts) {
+                writeFully(tempChannel, encode(account), position);
+                position += RECORD_SIZE;
+            }
+            tempChannel.force(true);
+        }
+        close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+            recordsCount = -1;
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                checkHeader(channel);
+            } catch (IOException e) {
+                channel.close();
+                channel = null;
+                throw e;
+            }
+            recordsCount = (channel.size() - HEADER.length) / RECORD_SIZE;
+        }
+        return channel;
+    }
+
+    //writes the header of an empty table (or of one torn while being created);
+    //a file in any other format is never appended to
+    private void checkHeader(FileChannel tableChannel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER.length, tableChannel.size()));
+        readFully(tableChannel, header, 0);
+        if (!Arrays.equals(HEADER, 0, header.capacity(), header.array(), 0, header.capacity())) {
+            throw new IOException(path + " is not an accounts table");
+        }
+        if (header.capacity() < HEADER.length) {
+            writeFully(tableChannel, ByteBuffer.wrap(HEADER), 0);
+        }
+    }
+
+    private static long positionOf(long recordIndex) {
+        return HEADER.length + recordIndex * RECORD_SIZE;
+    }
+
+    private static ByteBuffer encode(Account account) {
+        byte[] username = account.username().getBytes(StandardCharsets.UTF_8);
+        byte[] password = account.password().getBytes(StandardCharsets.UTF_8);
+        if (username.length > MAX_USERNAME_BYTES || password.length > MAX_PASSWORD_BYTES) {
+            throw new IllegalArgumentException("Username/password of " + account.username() +
+                    " does not fit in an account record!");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(ACTIVE_RECORD)
+                .putShort((short) username.length).put(username)
+                .putShort((short) password.length).put(password);
+        return record.clear(); //the whole record, with its zero padding
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the accounts table " + position);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+//Where the registered accounts are persisted; append() only has to reach the OS,
+//flush() makes the appended accounts durable.
+
+public interface AccountsStore extends Flushable, Closeable {
+
+    record Account(String username, String password) {
+    }
+
+    List<Account> readAll() throws IOException;
+
+    void append(Account account) throws IOException;
+
+    //replaces all accounts with the given ones
+    void rewrite(Collection<Account> accounts) throws IOException;
+}
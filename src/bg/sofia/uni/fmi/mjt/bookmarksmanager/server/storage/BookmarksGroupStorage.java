@@ -1,30 +1,51 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarkRecordStore;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.OffHeapBookmarks;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.GroupAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchBookmarkException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchGroupException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck.LinkChecker;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck.LinkProber;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck.LinkStatus;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.BookmarksSource;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ChromeImportState;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ChromeImporter;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportPipeline;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged.PagedStore;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.user.User;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import com.google.gson.JsonParseException;
+import java.io.BufferedOutputStream;
+import java.io.FileReader;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serial;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -33,30 +54,62 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger.logSth;
 import static java.nio.file.Files.exists;
 
-public class BookmarksGroupStorage implements Serializable {
+public class BookmarksGroupStorage implements Serializable, Flushable {
     private static final int ERROR_STATUS_CODE = 400;
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson LOG_GSON = new Gson(); //one record per line
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_TEMP_SUFFIX = ".tmp";
+    private static final int COMPACTION_THRESHOLD = 1000; //log records before a new snapshot
+    private static final int IMPORT_BATCH_SIZE = 1_000;
+    private static final String CHROME_STATE_SUFFIX = ".chrome"; //what was imported from Chrome last
 
     //saves users bookmarks in files in JSON format
     //all the groups of ONE user
     //Key concepts to consider:
     //Serialization & Deserialization – To store and load bookmarks from a file.
     //Atomic Updates – To ensure that file modifications reflect in memory (groups map).
-
-    private final Map<String, BookmarksGroup> groups;
-    transient
+    //The file holds a snapshot of the groups (see SnapshotFormat), replaced atomically (temp file + rename).
+    //Every change after it is appended to the operation log (fileName + LOG_SUFFIX),
+    //and on load the snapshot is read and the log replayed over it.
+    //With a persistence scheduler the records wait in memory and are written
+    //(and synced once) by its flusher, together with any requested snapshot.
+    //The groups are read from the files on first use and can be unloaded from
+    //the heap again once the files have all of them; only the file name is
+    //serialized with the user.
+    //A storage over a PagedStore keeps no files of its own: every change is
+    //applied to the user's entries in the store instead of being logged.
+    //With a BookmarkRecordStore the loaded bookmarks are kept off the heap in it,
+    //until the groups are unloaded.
+
+    @Serial
+    private static final long serialVersionUID = 8939725872177473632L; //of the users files before the accounts table
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("fileName", String.class)
+    };
+
+    private Map<String, BookmarksGroup> groups; //null until loaded
     private final String fileName;
+    private transient OperationLog log;
+    private transient PersistenceScheduler scheduler;
+    private transient SnapshotFormat snapshotFormat; //of the next snapshot; any format is read
+    private transient List<String> pendingRecords;
+    private transient boolean isSnapshotRequested;
+    private transient boolean isFlushing;
+    private transient Object flushLock; //held by the flush which is writing
+    private transient boolean isPersisted; //the files hold all of the groups
+    private transient PagedStore pagedStore;
+    private transient String username; //whose entries in the paged store these are
+    private transient BookmarkRecordStore recordStore; //null for bookmarks on the heap
 
-    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
-    private static final int NOT_FOUND = 400;
     private static final String WEBSOCKET_PUSH_URL = "http://localhost:8080/push";
 
     public BookmarksGroupStorage(String fileName) {
-        this.groups = new HashMap<>();
         this.fileName = fileName;
 
         if (!exists(Path.of(fileName))) {
@@ -64,35 +117,56 @@ public class BookmarksGroupStorage implements Serializable {
         }
     }
 
-
+    //the given groups replace whatever was persisted in the file before
     public BookmarksGroupStorage(Map<String, BookmarksGroup> groups, String fileName) {
         this.groups = groups;
         this.fileName = fileName;
         FileCreator.createFile(this.fileName);
+        try {
+            getLog().delete();
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+        }
     }
 
-    public Map<String, BookmarksGroup> getGroups() {
-        return groups;
+    //the groups of the user in the store, read on first use
+    public BookmarksGroupStorage(PagedStore pagedStore, String username) {
+        this.fileName = pagedStore.getPath() + "#" + username;
+        this.pagedStore = pagedStore;
+        this.username = username;
     }
 
-    public boolean containsGroup(String groupName) {
-        return groups.containsKey(groupName);  //The BManager has already validated this
+    //a copy taken under the lock, so it can be read while the groups are changed
+    public synchronized Map<String, BookmarksGroup> getGroups() {
+        Map<String, BookmarksGroup> copy = new HashMap<>();
+        loadedGroups().forEach((groupName, group) -> copy.put(groupName, group.copy()));
+        return copy;
+    }
+
+    //reads the groups from the files, if they are not in the heap yet
+    public void load() {
+        loadedGroups();
+    }
+
+    public synchronized boolean containsGroup(String groupName) {
+        return loadedGroups().containsKey(groupName);  //The BManager has already validated this
         //groupName so there is no need to do it here
     }
 
-    public void createNewGroup(String groupName) {
-        if (groups.containsKey(groupName)) {
+    public synchronized void createNewGroup(String groupName) {
+        if (loadedGroups().containsKey(groupName)) {
             sendPushNotification("[error] A group with name " + groupName + " already exists");
             throw new GroupAlreadyExistsException(String.format("A " +
                     "group with name %s already exists", groupName));
         }
+        checkStorable(groupName, null);
 
-        groups.put(groupName, new BookmarksGroup(groupName, new HashMap<>()));
+        loadedGroups().put(groupName, new BookmarksGroup(groupName, newBookmarksMap(List.of())));
+        appendToLog(LogRecord.createGroup(groupName));
         sendPushNotification("[success] New group created: " + groupName);
-        //updateGroupsFile();
     }
 
-    public void addNewBookmarkToGroup(Bookmark bookmark, String groupName) {
+    public synchronized void addNewBookmarkToGroup(Bookmark bookmark, String groupName) {
         if (groupName == null || groupName.isEmpty() || groupName.isBlank() ||
                 bookmark == null) {
             sendPushNotification("[error] Invalid group name or bookmark!");
@@ -103,15 +177,30 @@ public class BookmarksGroupStorage implements Serializable {
             throw new NoSuchGroupException(String.format("There is no group %s.",
                     groupName));
         }
-        if (groups.get(groupName).getBookmarks().contains(bookmark)) {
+        if (bookmark.equals(loadedGroups().get(groupName).getBookmark(bookmark.title()))) {
             sendPushNotification("[info] Bookmark already exists in group: " + groupName);
             return;
         }
-        groups.get(groupName).addNewBookmark(bookmark);
-        updateGroupsFile();
+        checkStorable(groupName, bookmark);
+        loadedGroups().get(groupName).addNewBookmark(bookmark);
+        appendToLog(LogRecord.addBookmark(groupName, bookmark));
         sendPushNotification("[success] New bookmark added: " + bookmark.title() + " to group: " + groupName);
     }
 
+    //swaps a bookmark for its new version, unless it was removed or changed meanwhile
+    public synchronized boolean replaceBookmark(String groupName, Bookmark previous, Bookmark replacement) {
+        BookmarksGroup group = loadedGroups().get(groupName);
+        if (group == null || !previous.equals(group.getBookmark(previous.title())) ||
+                !isStorable(groupName, replacement)) {
+            return false;
+        }
+        group.removeBookmark(previous);
+        appendToLog(LogRecord.removeBookmark(groupName, previous.title()));
+        group.addNewBookmark(replacement);
+        appendToLog(LogRecord.addBookmark(groupName, replacement));
+        return true;
+    }
+
     public void sendPushNotification(String message) {
         try {
             HttpClient client = HttpClient.newHttpClient();
@@ -127,7 +216,8 @@ public class BookmarksGroupStorage implements Serializable {
         }
     }
 
-    public void removeBookmarkFromGroup(String bookmarkTitle, String groupName) {
+    //returns the removed bookmark
+    public synchronized Bookmark removeBookmarkFromGroup(String bookmarkTitle, String groupName) {
         if (groupName == null || groupName.isEmpty() || groupName.isBlank() ||
                 bookmarkTitle == null || bookmarkTitle.isEmpty() ||
                 bookmarkTitle.isBlank()) {
@@ -140,7 +230,7 @@ public class BookmarksGroupStorage implements Serializable {
             throw new NoSuchGroupException(String.format("There is no group %s.",
                     groupName));
         }
-        Bookmark toRemove = groups.get(groupName).getBookmarks().stream().
+        Bookmark toRemove = loadedGroups().get(groupName).getBookmarks().stream().
                 filter(bookmark ->
                         bookmark.title().equalsIgnoreCase(bookmarkTitle)).
                 findFirst().orElse(null);
@@ -150,40 +240,327 @@ public class BookmarksGroupStorage implements Serializable {
             throw new NoSuchBookmarkException(String.format("Group %s has " +
                     "no bookmark %s to be removed!", groupName, bookmarkTitle));
         }
-        groups.get(groupName).removeBookmark(toRemove);
-        updateGroupsFile();
+        loadedGroups().get(groupName).removeBookmark(toRemove);
+        appendToLog(LogRecord.removeBookmark(groupName, toRemove.title()));
         sendPushNotification("[info] Bookmark removed: " + bookmarkTitle + " from group: " + groupName);
+        return toRemove;
     }
 
     public List<Bookmark> importBookmarksFromChrome() {
-        Map<String, BookmarksGroup> chromeGroups = ChromeImporter.importChromeGroups();
-        if (chromeGroups == null) {
+        return importBookmarksFromChrome(new ImportPipeline());
+    }
+
+    //Only what changed in Chrome since the last import is imported: nothing at all
+    //while the file's checksum is the same, else only the bookmarks added or changed
+    //are enriched, and they are applied to the groups together with the removed ones.
+    //Returns the bookmarks added.
+    public List<Bookmark> importBookmarksFromChrome(ImportPipeline pipeline) {
+        String chromeFile = ChromeImporter.findChromeBookmarksFile();
+        if (chromeFile == null) {
             sendPushNotification("[error] No Chrome bookmarks to be imported");
-            return null;   //exceptions have already been logged in the
-            // methods of the ChromeImporter class, so not needed here
+            return null;
         }
-        for (Map.Entry<String, BookmarksGroup> groupEntry : chromeGroups.entrySet()) {
-            if (!groups.containsKey(groupEntry.getKey())) {
-                groups.put(groupEntry.getKey(), groupEntry.getValue());
+        Path statePath = Path.of(fileName + CHROME_STATE_SUFFIX);
+        ChromeImportState previous = ChromeImportState.load(statePath);
+        ChromeImportState current;
+        Set<String> chromeGroupNames = new LinkedHashSet<>();
+        try {
+            String checksum;
+            try (Reader reader = new FileReader(chromeFile)) {
+                checksum = ChromeImporter.readChecksum(reader);
+            }
+            if (previous.hasChecksum(checksum)) {
+                sendPushNotification("[info] Chrome bookmarks have not changed since the last import");
+                return List.of();
+            }
+            Map<String, ChromeImportState.Node> nodes = new HashMap<>();
+            try (Reader reader = new FileReader(chromeFile)) {
+                ChromeImporter.read(reader, new BookmarksSource.Visitor() {
+                    @Override
+                    public void group(String groupName) {
+                        chromeGroupNames.add(groupName);
+                    }
+
+                    @Override
+                    public void bookmark(String groupName, String title, String url) {
+                        bookmark(groupName, title, url, groupName + " " + url);
+                    }
+
+                    @Override
+                    public void bookmark(String groupName, String title, String url, String nodeId) {
+                        nodes.put(nodeId, new ChromeImportState.Node(groupName, title, url));
+                    }
+                });
             }
+            current = new ChromeImportState(checksum, nodes);
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            sendPushNotification("[error] No Chrome bookmarks to be imported");
+            return null;
         }
-        updateGroupsFile();
-        sendPushNotification("[success] Chrome bookmarks imported: " + chromeGroups.size() + " groups");
-        return chromeGroups.values().stream().map(BookmarksGroup::
+
+        ChromeImportState.Delta delta = previous.deltaTo(current, chromeGroupNames);
+        List<Bookmark> added = applyImport(delta, pipeline);
+        if (added == null) {
+            return null;
+        }
+        try {
+            flush(); //the delta is durable before the state which makes the next import skip it
+            if (pagedStore != null) {
+                pagedStore.flush();
+            }
+            current.save(statePath);
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e); //the next import applies the delta again
+        }
+        return added;
+    }
+
+    private List<Bookmark> applyImport(ChromeImportState.Delta delta, ImportPipeline pipeline) {
+        Map<String, BookmarksGroup> enriched;
+        try {
+            enriched = pipeline.run(visitor -> {
+                delta.groupNames().forEach(visitor::group);
+                delta.added().forEach(node -> visitor.bookmark(node.groupName(), node.title(), node.url()));
+            }, (enrichedCount, foundCount) -> sendPushNotification("[info] Import progress: " +
+                    enrichedCount + " of " + foundCount + " changed bookmarks"));
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            return null;
+        }
+        List<Bookmark> added = new ArrayList<>();
+        synchronized (this) {
+            List<LogRecord> records = new ArrayList<>();
+            for (ChromeImportState.Node node : delta.removed()) {
+                BookmarksGroup group = loadedGroups().get(node.groupName());
+                Bookmark existing = group == null ? null : group.getBookmark(node.title());
+                if (existing != null && Objects.equals(existing.url(), node.url())) { //not one of the user's own
+                    group.removeBookmark(existing);
+                    records.add(LogRecord.removeBookmark(node.groupName(), node.title()));
+                }
+            }
+            for (BookmarksGroup importedGroup : enriched.values()) {
+                mergeImported(importedGroup, records, added);
+            }
+            appendToLog(records);
+        }
+        sendPushNotification("[success] Chrome bookmarks imported: " + delta.added().size() +
+                " added or changed, " + delta.removed().size() + " removed or changed");
+        return added;
+    }
+
+    //The pages are fetched without holding the storage, so that the user's other
+    //commands are not blocked meanwhile. The groups which are new are then added
+    //at once, durable after a single write. Returns all bookmarks read.
+    public List<Bookmark> importBookmarks(BookmarksSource source, ImportPipeline pipeline) {
+        Map<String, BookmarksGroup> imported;
+        try {
+            imported = pipeline.run(source, (enrichedCount, foundCount) ->
+                    sendPushNotification("[info] Import progress: " + enrichedCount + " of " +
+                            foundCount + " bookmarks read so far"));
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            sendPushNotification("[error] No bookmarks to be imported");
+            return null;
+        }
+        synchronized (this) {
+            List<LogRecord> records = new ArrayList<>();
+            for (Map.Entry<String, BookmarksGroup> groupEntry : imported.entrySet()) {
+                if (!loadedGroups().containsKey(groupEntry.getKey())) {
+                    mergeImported(groupEntry.getValue(), records, new ArrayList<>());
+                }
+            }
+            appendToLog(records);
+        }
+        sendPushNotification("[success] Bookmarks imported: " + imported.size() + " groups");
+        return imported.values().stream().map(BookmarksGroup::
                 getBookmarks).flatMap(Collection::stream).toList();
     }
 
-    public void updateGroupsFile() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
-            //for (BookmarksGroup group : groups.values()) {
-            //  writer.write(GSON.toJson(group));
-            //writer.newLine();
+    //Same as importBookmarks, but for sources of any size: the bookmarks are stored
+    //every IMPORT_BATCH_SIZE of them as they are enriched- each batch under one lock
+    //and durable after one write- instead of being collected first, and imported
+    //bookmarks are also added to the groups which already exist (unless one with the
+    //same title and another url is there). Returns the number of bookmarks added,
+    //-1 if the source could not be read (the batches stored before that are kept).
+    public int importBookmarksInBatches(BookmarksSource source, ImportPipeline pipeline) {
+        AtomicInteger addedCount = new AtomicInteger();
+        int foundCount;
+        try {
+            foundCount = pipeline.run(source, IMPORT_BATCH_SIZE, batch -> {
+                List<Bookmark> added = new ArrayList<>();
+                synchronized (this) {
+                    List<LogRecord> records = new ArrayList<>();
+                    for (BookmarksGroup importedGroup : batch.values()) {
+                        mergeImported(importedGroup, records, added);
+                    }
+                    appendToLog(records);
+                }
+                addedCount.addAndGet(added.size());
+            }, (enrichedCount, found) -> sendPushNotification("[info] Import progress: " +
+                    enrichedCount + " of " + found + " bookmarks read so far"));
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+            sendPushNotification("[error] Import failed after " + addedCount.get() + " bookmarks added");
+            return -1;
+        }
+        sendPushNotification("[success] Bookmarks imported: " + addedCount.get() + " of " + foundCount + " added");
+        return addedCount.get();
+    }
+
+    //the imported group is added as it is if there is no such group yet;
+    //the bookmarks which could not be stored are left out
+    private void mergeImported(BookmarksGroup importedGroup, List<LogRecord> records, List<Bookmark> added) {
+        String groupName = importedGroup.getGroupName();
+        if (!isStorable(groupName, null)) {
+            return;
+        }
+        BookmarksGroup group = loadedGroups().get(groupName);
+        if (group == null && importedGroup.getBookmarks().stream().allMatch(bookmark ->
+                isStorable(groupName, bookmark))) {
+            loadedGroups().put(groupName, movedOffHeap(importedGroup));
+            records.add(LogRecord.addGroup(importedGroup));
+            added.addAll(importedGroup.getBookmarks());
+            return;
+        }
+        if (group == null) {
+            group = new BookmarksGroup(groupName, newBookmarksMap(List.of()));
+            loadedGroups().put(groupName, group);
+            records.add(LogRecord.createGroup(groupName));
+        }
+        for (Bookmark bookmark : importedGroup.getBookmarks()) {
+            Bookmark existing = group.getBookmark(bookmark.title());
+            if ((existing == null || Objects.equals(existing.url(), bookmark.url())) &&
+                    isStorable(groupName, bookmark)) {
+                group.addNewBookmark(bookmark);
+                records.add(LogRecord.addBookmark(importedGroup.getGroupName(), bookmark));
+                added.add(bookmark);
+            }
+        }
+    }
+
+    //writes a snapshot of all groups and drops the log records it includes
+    public synchronized void updateGroupsFile() {
+        if (pagedStore != null) {
+            try {
+                pagedStore.flush();
+            } catch (IOException e) {
+                ExceptionsLogger.logClientException(e);
+            }
+            return;
+        }
+        Path snapshot = Path.of(fileName);
+        Path temp = Path.of(fileName + SNAPSHOT_TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+                getSnapshotFormat().write(loadedGroups(), out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            getLog().truncate(); //a crash before this only makes the replay repeat idempotent changes
+            isPersisted = true;
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+        }
+    }
+
+    //the snapshot is written by the scheduler's flusher, or right away without one
+    public void requestSnapshot() {
+        synchronized (this) {
+            if (scheduler != null) {
+                isSnapshotRequested = true;
+                scheduler.markDirty(this);
+                return;
+            }
+        }
+        updateGroupsFile();
+    }
+
+    public synchronized void setPersistenceScheduler(PersistenceScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void setSnapshotFormat(SnapshotFormat snapshotFormat) {
+        this.snapshotFormat = snapshotFormat;
+    }
+
+    //applies to the groups loaded after it is set
+    public synchronized void setRecordStore(BookmarkRecordStore recordStore) {
+        this.recordStore = recordStore;
+    }
+
+    public synchronized SnapshotFormat getSnapshotFormat() {
+        return snapshotFormat == null ? SnapshotFormat.JSON : snapshotFormat;
+    }
+
+    //writes the pending log records with a single sync and the requested snapshot;
+    //one flush at a time, so that the batches reach the log in the order they were
+    //taken, and a batch which could not be written is kept for the next flush
+    @Override
+    public void flush() throws IOException {
+        synchronized (getFlushLock()) {
+            List<String> records;
+            boolean isSnapshotDue;
+            synchronized (this) {
+                records = pendingRecords == null ? List.of() : pendingRecords;
+                pendingRecords = null;
+                isSnapshotDue = isSnapshotRequested;
+                isSnapshotRequested = false;
+                isFlushing = true;
+            }
+            try {
+                writeToLog(records, isSnapshotDue);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    if (!records.isEmpty()) { //before the ones appended meanwhile
+                        List<String> kept = new ArrayList<>(records);
+                        if (pendingRecords != null) {
+                            kept.addAll(pendingRecords);
+                        }
+                        pendingRecords = kept;
+                    }
+                    isSnapshotRequested |= isSnapshotDue;
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    isFlushing = false;
+                }
+            }
+        }
+    }
+
+    public synchronized boolean isLoaded() {
+        return groups != null;
+    }
+
+    public synchronized int getResidentBookmarksCount() {
+        return groups == null ? 0 : groups.values().stream().mapToInt(BookmarksGroup::getBookmarksCount).sum();
+    }
 
-            writer.write(GSON.toJson(this));
-            //}
+    //drops the groups from the heap, unless some of their changes are not in the files yet;
+    //they are read from the files again on next use
+    public synchronized boolean unload() {
+        if (groups == null) {
+            return true;
+        }
+        if (!isPersisted || pendingRecords != null || isSnapshotRequested || isFlushing) {
+            return false;
+        }
+        groups.values().forEach(BookmarksGroup::releaseRecords); //for the records of the next ones
+        groups = null;
+        try {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
         } catch (IOException e) {
             ExceptionsLogger.logClientException(e);
         }
+        return true;
     }
 
     public String getFileName() {
@@ -202,83 +579,278 @@ public class BookmarksGroupStorage implements Serializable {
         BookmarksGroupStorage storage = (BookmarksGroupStorage) obj;
 
         return fileName.equals(storage.getFileName()) &&
-                groups.entrySet().containsAll(storage.
-                        getGroups().entrySet()) &&
-                storage.getGroups().entrySet().containsAll(groups.entrySet());
+                loadedGroups().entrySet().containsAll(storage.
+                        loadedGroups().entrySet()) &&
+                storage.loadedGroups().entrySet().containsAll(loadedGroups().entrySet());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(groups);
+        return Objects.hash(loadedGroups());
     }
 
 
-    public int cleanUp() {
+    //the distinct links of all bookmarks
+    public synchronized Set<String> getUrls() {
+        Set<String> urls = new HashSet<>();
+        for (BookmarksGroup group : loadedGroups().values()) {
+            for (Bookmark bookmark : group.getBookmarks()) {
+                urls.add(bookmark.url());
+            }
+        }
+        return urls;
+    }
 
-        HttpClient client = HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.NORMAL)
-                .version(HttpClient.Version.HTTP_2)
-                .connectTimeout(PROBE_TIMEOUT)
-                .build();
+    //returns the removed bookmarks
+    public List<Bookmark> cleanUp() {
+        return cleanUp(new LinkChecker());
+    }
 
-        int removedTotal = 0;
+    //the links are probed without holding the storage, so that the user's other
+    //commands are not blocked meanwhile; a bookmark changed in the meantime is kept
+    public List<Bookmark> cleanUp(LinkProber linkProber) {
+        Map<String, List<Bookmark>> candidates = new HashMap<>(); //by the names of their groups
+        synchronized (this) {
+            for (Map.Entry<String, BookmarksGroup> group : loadedGroups().entrySet()) {
+                candidates.put(group.getKey(), List.copyOf(group.getValue().getBookmarks())); //not views of records
+            }
+        }
+        Map<String, LinkStatus> statuses = linkProber.check(candidates.values().stream()
+                .flatMap(Collection::stream).map(Bookmark::url).toList());
+
+        List<Bookmark> removed = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, List<Bookmark>> groupCandidates : candidates.entrySet()) {
+                BookmarksGroup group = loadedGroups().get(groupCandidates.getKey());
+                for (Bookmark bookmark : groupCandidates.getValue()) {
+                    boolean isAlive = bookmark.url() != null && statuses.get(bookmark.url()) == LinkStatus.ALIVE;
+                    if (!isAlive && group != null && bookmark.equals(group.getBookmark(bookmark.title()))) {
+                        group.removeBookmark(bookmark);
+                        appendToLog(LogRecord.removeBookmark(groupCandidates.getKey(), bookmark.title()));
+                        removed.add(bookmark);
+                    }
+                }
+            }
+        }
 
-        for (BookmarksGroup group : groups.values()) {
-            var snapshot = new java.util.ArrayList<>(group.getBookmarks());
-            var badUrls = new java.util.HashSet<String>();
+        if (!removed.isEmpty()) {
+            sendPushNotification("[info] Cleanup removed " + removed.size() + " invalid bookmarks.");
+        } else {
+            sendPushNotification("[info] Cleanup found no invalid bookmarks.");
+        }
+        return removed;
+    }
 
-            for (Bookmark bm : snapshot) {
-                int code = probeGet(client, bm.url());
-                if (code >= NOT_FOUND || code == -1) {
-                    badUrls.add(bm.url());
-                    System.err.println("Invalid url added: " + bm.url());
-                }
+    //a change which the paged store could not keep is refused before the groups are changed
+    private void checkStorable(String groupName, Bookmark bookmark) {
+        if (!isStorable(groupName, bookmark)) {
+            sendPushNotification("[error] Too long group name or bookmark's title!");
+            throw new IllegalArgumentException("Group's name/bookmark's title too long to be stored!");
+        }
+    }
+
+    private boolean isStorable(String groupName, Bookmark bookmark) {
+        return pagedStore == null || PagedStore.fits(username, groupName, bookmark == null ? null : bookmark.title());
+    }
+
+    //keeps the change durable in O(1)- right away or by the scheduler's next flush
+    private void appendToLog(LogRecord record) {
+        appendToLog(List.of(record));
+    }
+
+    //the changes of a batch are written (and synced) together
+    private void appendToLog(List<LogRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (pagedStore != null) {
+            applyToPagedStore(records);
+            return;
+        }
+        List<String> lines = records.stream().map(LOG_GSON::toJson).toList();
+        if (scheduler != null) {
+            if (pendingRecords == null) {
+                pendingRecords = new ArrayList<>();
             }
+            pendingRecords.addAll(lines);
+            scheduler.markDirty(this);
+            return;
+        }
+        try {
+            writeToLog(lines, false);
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+        }
+    }
 
-            if (!badUrls.isEmpty()) {
-                int before = group.getBookmarks().size();
-                group.removeBookmarksByUrl(badUrls);
-                removedTotal += (before - group.getBookmarks().size());
+    //only the pages of the changed entries are written, by the next flush of the store
+    private void applyToPagedStore(List<LogRecord> records) {
+        try {
+            for (LogRecord record : records) {
+                record.applyTo(pagedStore, username);
+            }
+            if (scheduler != null) {
+                scheduler.markDirty(pagedStore);
+            } else {
+                pagedStore.flush();
             }
+        } catch (IOException | IllegalArgumentException e) {
+            ExceptionsLogger.logClientException(e);
         }
+    }
 
-        if (removedTotal > 0) {
+    private void writeToLog(List<String> records, boolean isSnapshotDue) throws IOException {
+        if (pagedStore != null) { //its entries are always up to date
+            if (isSnapshotDue) {
+                pagedStore.flush();
+            }
+            return;
+        }
+        OperationLog operationLog = getLog();
+        for (String line : records) {
+            operationLog.append(line);
+        }
+        if (isSnapshotDue || operationLog.getRecordsCount() >= COMPACTION_THRESHOLD) {
             updateGroupsFile();
-            System.err.println("Group's file updated.");
-            sendPushNotification("[info] Cleanup removed " + removedTotal + " invalid bookmarks.");
-        } else {
-            sendPushNotification("[info] Cleanup found no invalid bookmarks.");
+        } else if (!records.isEmpty() && scheduler != null) {
+            operationLog.sync(); //one sync for the whole batch
         }
-        return removedTotal;
     }
 
-    private int probeGet(HttpClient client, String url) {
-        final URI uri;
+    private synchronized Map<String, BookmarksGroup> loadedGroups() {
+        if (groups == null) {
+            groups = pagedStore != null ? readFromPagedStore() : recover();
+            if (recordStore != null) {
+                groups.replaceAll((groupName, group) -> movedOffHeap(group));
+            }
+            isPersisted = true;
+        }
+        return groups;
+    }
+
+    private Map<String, Bookmark> newBookmarksMap(Collection<Bookmark> bookmarks) {
+        Map<String, Bookmark> bookmarksMap = recordStore != null ? new OffHeapBookmarks(recordStore) : new HashMap<>();
+        for (Bookmark bookmark : bookmarks) {
+            bookmarksMap.put(bookmark.title(), bookmark);
+        }
+        return bookmarksMap;
+    }
+
+    private BookmarksGroup movedOffHeap(BookmarksGroup group) {
+        if (recordStore == null) {
+            return group;
+        }
+        return new BookmarksGroup(group.getGroupName(), newBookmarksMap(group.getBookmarks()));
+    }
+
+    private Map<String, BookmarksGroup> readFromPagedStore() {
         try {
-            uri = URI.create(url.trim());
-        } catch (IllegalArgumentException e) {
+            return pagedStore.readGroups(username);
+        } catch (IOException e) {
             ExceptionsLogger.logClientException(e);
-            System.err.println("Uri never created!");
-            return -1;
+            return new HashMap<>();
         }
+    }
 
+    //loads the snapshot and replays the log over it
+    private Map<String, BookmarksGroup> recover() {
+        Map<String, BookmarksGroup> recovered = new HashMap<>();
+        if (fileName == null) {
+            return recovered;
+        }
         try {
-            HttpRequest req = HttpRequest.newBuilder(uri)
-                    .GET()
-                    .timeout(PROBE_TIMEOUT)
-                    .build();
-            HttpResponse<Void> res = client.send(req, HttpResponse.BodyHandlers.discarding());
-            System.err.println("Status code: " + res.statusCode());
-            return res.statusCode();
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-            ExceptionsLogger.logClientException(ie);
-            //System.err.println("InterruptedException: " + ie.getMessage());
-            return -1;
-        } catch (IOException ioe) {
-            ExceptionsLogger.logClientException(ioe);
-            //System.err.println("IOException: " + ioe.getMessage());
-            return -1;
+            Path snapshotPath = Path.of(fileName);
+            if (exists(snapshotPath) && Files.size(snapshotPath) > 0) {
+                try (InputStream in = Files.newInputStream(snapshotPath)) {
+                    recovered.putAll(SnapshotFormat.read(in));
+                }
+            }
+            for (String line : getLog().readRecords()) {
+                LogRecord record;
+                try {
+                    record = LOG_GSON.fromJson(line, LogRecord.class);
+                } catch (JsonParseException e) {
+                    ExceptionsLogger.logClientException(e);
+                    break; //a record torn by a crash- nothing after it was acknowledged
+                }
+                record.applyTo(recovered);
+            }
+        } catch (IOException | JsonParseException | IllegalStateException e) { //malformed snapshot
+            ExceptionsLogger.logClientException(e);
+        }
+        return recovered;
+    }
+
+    private synchronized Object getFlushLock() {
+        if (flushLock == null) {
+            flushLock = new Object();
+        }
+        return flushLock;
+    }
+
+    private synchronized OperationLog getLog() {
+        if (log == null) {
+            log = new OperationLog(Path.of(fileName + LOG_SUFFIX));
+        }
+        return log;
+    }
+
+    //one change of the groups; applying it again has no further effect, since
+    //records can be replayed over a snapshot which already includes them
+    private record LogRecord(String operation, String groupName, Bookmark bookmark,
+                             String bookmarkTitle, BookmarksGroup group) {
+        private static final String CREATE_GROUP = "create-group";
+        private static final String ADD_GROUP = "add-group";
+        private static final String ADD_BOOKMARK = "add";
+        private static final String REMOVE_BOOKMARK = "remove";
+
+        static LogRecord createGroup(String groupName) {
+            return new LogRecord(CREATE_GROUP, groupName, null, null, null);
+        }
+
+        static LogRecord addGroup(BookmarksGroup group) {
+            return new LogRecord(ADD_GROUP, group.getGroupName(), null, null, group);
+        }
+
+        static LogRecord addBookmark(String groupName, Bookmark bookmark) {
+            return new LogRecord(ADD_BOOKMARK, groupName, bookmark, null, null);
+        }
+
+        static LogRecord removeBookmark(String groupName, String bookmarkTitle) {
+            return new LogRecord(REMOVE_BOOKMARK, groupName, null, bookmarkTitle, null);
+        }
+
+        void applyTo(Map<String, BookmarksGroup> groups) {
+            switch (operation) {
+                case CREATE_GROUP -> groups.putIfAbsent(groupName, new BookmarksGroup(groupName, new HashMap<>()));
+                case ADD_GROUP -> groups.putIfAbsent(groupName, group);
+                case ADD_BOOKMARK -> groups.computeIfAbsent(groupName, name ->
+                        new BookmarksGroup(name, new HashMap<>())).addNewBookmark(bookmark);
+                case REMOVE_BOOKMARK -> {
+                    BookmarksGroup existing = groups.get(groupName);
+                    if (existing != null) {
+                        existing.getBookmarks().stream()
+                                .filter(bookmark -> bookmarkTitle.equals(bookmark.title()))
+                                .findFirst().ifPresent(existing::removeBookmark);
+                    }
+                }
+                default -> throw new JsonParseException("Unknown log operation " + operation);
+            }
+        }
+
+        void applyTo(PagedStore store, String username) throws IOException {
+            switch (operation) {
+                case CREATE_GROUP -> store.putGroup(username, groupName);
+                case ADD_GROUP -> {
+                    store.putGroup(username, groupName);
+                    for (Bookmark groupBookmark : group.getBookmarks()) {
+                        store.putBookmark(username, groupName, groupBookmark);
+                    }
+                }
+                case ADD_BOOKMARK -> store.putBookmark(username, groupName, bookmark);
+                case REMOVE_BOOKMARK -> store.removeBookmark(username, groupName, bookmarkTitle);
+                default -> throw new IllegalArgumentException("Unknown operation " + operation);
+            }
         }
     }
 }
@@ -0,0 +1,207 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+//Streaming codec of the groups file: the groups are written field by field to the
+//writer in compact JSON, and read back token by token, without reflection and
+//without building the whole document as a String or a tree first.
+//The layout is the one Gson produces for the groups, so files written before
+//(pretty-printed) are read as well:
+//{"groups":{"<name>":{"groupName":..,"bookmarks":{"<title>":{"title":..,"url":..,
+//"keywords":[..],"groupName":..,"termFrequencies":{..}}}}}}
+
+public final class GroupsCodec {
+    private static final String GROUPS = "groups";
+    private static final String GROUP_NAME = "groupName";
+    private static final String BOOKMARKS = "bookmarks";
+    private static final String TITLE = "title";
+    private static final String URL = "url";
+    private static final String KEYWORDS = "keywords";
+    private static final String TERM_FREQUENCIES = "termFrequencies";
+
+    private GroupsCodec() {
+    }
+
+    public static void write(Map<String, BookmarksGroup> groups, Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out); //not closed- the caller owns the writer
+        writer.beginObject().name(GROUPS).beginObject();
+        for (Map.Entry<String, BookmarksGroup> group : groups.entrySet()) {
+            writer.name(group.getKey());
+            writeGroup(writer, group.getValue());
+        }
+        writer.endObject().endObject();
+        writer.flush();
+    }
+
+    public static Map<String, BookmarksGroup> read(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        Map<String, BookmarksGroup> groups = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (GROUPS.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    BookmarksGroup group = readGroup(reader, name);
+                    if (group != null) {
+                        groups.put(name, group);
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return groups;
+    }
+
+    private static void writeGroup(JsonWriter writer, BookmarksGroup group) throws IOException {
+        writer.beginObject();
+        writer.name(GROUP_NAME).value(group.getGroupName());
+        writer.name(BOOKMARKS).beginObject();
+        for (Bookmark bookmark : group.getBookmarks()) {
+            writer.name(String.valueOf(bookmark.title())); //as Gson writes a null key
+            writeBookmark(writer, bookmark);
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private static void writeBookmark(JsonWriter writer, Bookmark bookmark) throws IOException {
+        writer.beginObject();
+        writeString(writer, TITLE, bookmark.title());
+        writeString(writer, URL, bookmark.url());
+        if (bookmark.keywords() != null) {
+            writer.name(KEYWORDS).beginArray();
+            for (String keyword : bookmark.keywords()) {
+                writer.value(keyword);
+            }
+            writer.endArray();
+        }
+        writeString(writer, GROUP_NAME, bookmark.groupName());
+        if (bookmark.termFrequencies() != null) {
+            writer.name(TERM_FREQUENCIES).beginObject();
+            for (Map.Entry<String, Integer> term : bookmark.termFrequencies().entrySet()) {
+                writer.name(term.getKey()).value(term.getValue());
+            }
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    private static void writeString(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) { //left out, as Gson does
+            writer.name(name).value(value);
+        }
+    }
+
+    private static BookmarksGroup readGroup(JsonReader reader, String name) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        String groupName = name;
+        Map<String, Bookmark> bookmarks = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case GROUP_NAME -> groupName = readString(reader);
+                case BOOKMARKS -> readBookmarks(reader, bookmarks);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new BookmarksGroup(groupName, bookmarks);
+    }
+
+    private static void readBookmarks(JsonReader reader, Map<String, Bookmark> bookmarks) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            reader.nextName(); //the title, which is in the bookmark as well
+            Bookmark bookmark = readBookmark(reader);
+            if (bookmark != null) {
+                bookmarks.put(bookmark.title(), bookmark);
+            }
+        }
+        reader.endObject();
+    }
+
+    private static Bookmark readBookmark(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        String title = null;
+        String url = null;
+        Set<String> keywords = null;
+        String groupName = null;
+        Map<String, Integer> termFrequencies = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case TITLE -> title = readString(reader);
+                case URL -> url = readString(reader);
+                case KEYWORDS -> keywords = readKeywords(reader);
+                case GROUP_NAME -> groupName = readString(reader);
+                case TERM_FREQUENCIES -> termFrequencies = readTermFrequencies(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Bookmark(title, url, keywords, groupName, termFrequencies);
+    }
+
+    private static Set<String> readKeywords(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Set<String> keywords = new LinkedHashSet<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            keywords.add(readString(reader));
+        }
+        reader.endArray();
+        return keywords;
+    }
+
+    private static Map<String, Integer> readTermFrequencies(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Map<String, Integer> termFrequencies = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            termFrequencies.put(reader.nextName(), reader.nextInt());
+        }
+        reader.endObject();
+        return termFrequencies;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
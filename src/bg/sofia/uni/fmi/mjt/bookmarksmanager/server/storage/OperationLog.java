@@ -0,0 +1,139 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+//Append-only log of the changes of one user's bookmarks, one record per line.
+//A record is handed to the OS as soon as it is appended, so it survives the
+//process being killed; the (expensive) fsync is batched: it is done once per
+//SYNC_BATCH_SIZE records or SYNC_INTERVAL_MILLIS, whichever comes first.
+
+public class OperationLog implements Closeable {
+    private static final int SYNC_BATCH_SIZE = 32;
+    private static final long SYNC_INTERVAL_MILLIS = 50;
+    private static final char RECORDS_SEPARATOR = '\n';
+
+    private final Path path;
+    private FileChannel channel;
+    private int recordsCount = -1; //unknown until the log is opened
+    private int unsyncedCount;
+    private long lastSyncMillis;
+
+    public OperationLog(Path path) {
+        this.path = path;
+    }
+
+    public synchronized void append(String record) throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(record + RECORDS_SEPARATOR);
+        FileChannel logChannel = open();
+        while (bytes.hasRemaining()) {
+            logChannel.write(bytes);
+        }
+        recordsCount++;
+        unsyncedCount++;
+        if (unsyncedCount >= SYNC_BATCH_SIZE ||
+                System.currentTimeMillis() - lastSyncMillis >= SYNC_INTERVAL_MILLIS) {
+            sync();
+        }
+    }
+
+    public synchronized void sync() throws IOException {
+        if (channel != null && unsyncedCount > 0) {
+            channel.force(false);
+        }
+        unsyncedCount = 0;
+        lastSyncMillis = System.currentTimeMillis();
+    }
+
+    //the records in the order they were appended; a last record torn
+    //by a crash in the middle of its write is left out
+    public synchronized List<String> readRecords() throws IOException {
+        byte[] content = readContent();
+        return recordsOf(content, completeRecordsLength(content));
+    }
+
+    public synchronized int getRecordsCount() throws IOException {
+        open();
+        return recordsCount;
+    }
+
+    //drops all records, once they are part of a snapshot
+    public synchronized void truncate() throws IOException {
+        open().truncate(0);
+        channel.force(true);
+        recordsCount = 0;
+        unsyncedCount = 0;
+    }
+
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+            recordsCount = -1;
+        }
+    }
+
+    //a record torn by a crash is cut off, so that the records appended
+    //after it do not continue its line
+    private FileChannel open() throws IOException {
+        if (channel == null) {
+            byte[] content = readContent();
+            int end = completeRecordsLength(content);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.size() > end) {
+                channel.truncate(end);
+                channel.force(false);
+            }
+            channel.position(end);
+            recordsCount = recordsOf(content, end).size();
+        }
+        return channel;
+    }
+
+    private byte[] readContent() throws IOException {
+        try {
+            return Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return new byte[0];
+        }
+    }
+
+    //up to and including the last separator
+    private static int completeRecordsLength(byte[] content) {
+        int end = content.length;
+        while (end > 0 && content[end - 1] != RECORDS_SEPARATOR) {
+            end--;
+        }
+        return end;
+    }
+
+    private static List<String> recordsOf(byte[] content, int length) {
+        String records = new String(content, 0, length, StandardCharsets.UTF_8);
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int end = records.indexOf(RECORDS_SEPARATOR); end >= 0;
+             end = records.indexOf(RECORDS_SEPARATOR, start)) {
+            if (end > start) {
+                result.add(records.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Group commit of the persisted state: a change only marks its store as dirty and
+//a background flusher writes every dirty store once per maxLatency, however many
+//changes it got meanwhile, so no disk I/O is done on the request path.
+//The durability policy is the maxLatency itself- a change acknowledged to the
+//client reaches the disk at most maxLatency later. With a zero maxLatency every
+//store is written immediately, as it was before.
+
+public final class PersistenceScheduler implements Closeable {
+    public static final Duration DEFAULT_MAX_LATENCY = Duration.ofMillis(200);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final Set<Flushable> dirtyStores;
+    private final ScheduledExecutorService flusher;
+    private boolean isClosed;
+
+    public PersistenceScheduler(Duration maxLatency) {
+        if (maxLatency == null || maxLatency.isNegative()) {
+            throw new IllegalArgumentException("Max latency must not be null or negative!");
+        }
+        this.dirtyStores = ConcurrentHashMap.newKeySet();
+        if (maxLatency.isZero()) {
+            this.flusher = null;
+            this.isClosed = true; //every store is flushed by the one which marks it
+        } else {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "persistence-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long periodMillis = maxLatency.toMillis();
+            flusher.scheduleWithFixedDelay(this::flushDirtyStores, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //the store is written by the next flush; marking it again before that costs nothing
+    public void markDirty(Flushable store) {
+        synchronized (this) {
+            if (!isClosed) {
+                dirtyStores.add(store);
+                return;
+            }
+        }
+        flush(store); //nobody would flush it later
+    }
+
+    public boolean isDirty(Flushable store) {
+        return dirtyStores.contains(store);
+    }
+
+    //writes everything marked dirty so far
+    public void flushDirtyStores() {
+        Iterator<Flushable> iterator = dirtyStores.iterator();
+        while (iterator.hasNext()) {
+            Flushable store = iterator.next();
+            iterator.remove(); //marked again while being flushed means flushed again next time
+            flush(store);
+        }
+    }
+
+    //stops the flusher and drains the dirty stores, on a clean shutdown
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+        }
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ExceptionsLogger.logClientException(e);
+        }
+        flushDirtyStores();
+    }
+
+    private static void flush(Flushable store) {
+        try {
+            store.flush();
+        } catch (IOException | RuntimeException e) {
+            ExceptionsLogger.logClientException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+//Keeps the bookmarks of the users in the heap within a memory budget, measured
+//in bookmarks. The groups of a logged in user are pinned; once the user's last
+//session ends they become idle and the least recently used idle users are
+//unloaded whenever the resident bookmarks exceed the budget. The resident
+//bookmarks are counted as of the last pin or unpin of each user, so no operation
+//depends on the number of users.
+
+public class ResidentBookmarks {
+    public static final long DEFAULT_MAX_RESIDENT_BOOKMARKS = 200_000;
+
+    private final long maxResidentBookmarks;
+    private final Consumer<String> onUnload;
+    private final Map<String, BookmarksGroupStorage> idleUsers; //least recently used first
+    private final Map<String, BookmarksGroupStorage> activeUsers;
+    private final Map<String, Integer> sessionsCount;
+    private final Map<String, Integer> residentCounts; //of the tracked users
+    private long residentCount; //the sum of residentCounts
+
+    //onUnload is told the username, so that caches built over the groups can be dropped as well
+    public ResidentBookmarks(long maxResidentBookmarks, Consumer<String> onUnload) {
+        if (maxResidentBookmarks < 0) {
+            throw new IllegalArgumentException("Memory budget can not be negative!");
+        }
+        this.maxResidentBookmarks = maxResidentBookmarks;
+        this.onUnload = onUnload;
+        this.idleUsers = new LinkedHashMap<>();
+        this.activeUsers = new HashMap<>();
+        this.sessionsCount = new HashMap<>();
+        this.residentCounts = new HashMap<>();
+    }
+
+    //on login- the groups are loaded (if they were not) and kept while the session lasts;
+    //they are read before the lock is taken, so other users are not kept waiting meanwhile
+    public void pin(String username, BookmarksGroupStorage storage) {
+        storage.load();
+        synchronized (this) {
+            idleUsers.remove(username);
+            activeUsers.put(username, storage);
+            sessionsCount.merge(username, 1, Integer::sum);
+            updateResidentCount(username, storage);
+            evictIfNeeded();
+        }
+    }
+
+    //on disconnect- the groups become the most recently used idle ones
+    public synchronized void unpin(String username) {
+        Integer sessions = sessionsCount.computeIfPresent(username, (name, count) -> count > 1 ? count - 1 : null);
+        if (sessions != null) {
+            return;
+        }
+        BookmarksGroupStorage storage = activeUsers.remove(username);
+        if (storage != null) {
+            idleUsers.put(username, storage);
+            updateResidentCount(username, storage); //with the changes of the session
+        }
+        evictIfNeeded();
+    }
+
+    //drops the groups of a user loaded for a moment (e.g. by an administrator's command),
+    //unless the user logged in meanwhile
+    public synchronized void unloadIfNotTracked(String username, BookmarksGroupStorage storage) {
+        if (!activeUsers.containsKey(username) && !idleUsers.containsKey(username) && storage.unload()) {
+            onUnload.accept(username);
+        }
+    }
+
+    public synchronized boolean isResident(String username) {
+        BookmarksGroupStorage storage = activeUsers.containsKey(username) ?
+                activeUsers.get(username) : idleUsers.get(username);
+        return storage != null && storage.isLoaded();
+    }
+
+    public synchronized long getResidentBookmarksCount() {
+        return residentCount;
+    }
+
+    private void updateResidentCount(String username, BookmarksGroupStorage storage) {
+        int count = storage.getResidentBookmarksCount();
+        Integer previous = residentCounts.put(username, count);
+        residentCount += count - (previous == null ? 0 : previous);
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, BookmarksGroupStorage>> iterator = idleUsers.entrySet().iterator();
+        while (residentCount > maxResidentBookmarks && iterator.hasNext()) {
+            Map.Entry<String, BookmarksGroupStorage> idle = iterator.next();
+            if (idle.getValue().unload()) { //not unloaded while it has unwritten changes
+                iterator.remove();
+                Integer count = residentCounts.remove(idle.getKey());
+                residentCount -= count == null ? 0 : count;
+                onUnload.accept(idle.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+//How a groups snapshot is stored. JSON is the plain GroupsCodec output; DEFLATE is
+//DEFLATE_HEADER followed by the same JSON, raw-deflated with a preset dictionary of
+//the field names and the most common URL and keyword fragments, so that even small
+//files compress well. A file is read in whichever format it was written, so the
+//format can be changed at any time.
+
+public enum SnapshotFormat {
+    JSON,
+    DEFLATE;
+
+    private static final byte[] DEFLATE_HEADER = {'B', 'M', 'Z', 1};
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    //zlib matches the end of the dictionary most cheaply, so the most common strings are last
+    private static final byte[] DICTIONARY = ("\"termFrequencies\":{\"" +
+            "tutorial\",\"news\",\"blog\",\"book\",\"game\",\"video\",\"music\",\"shop\"," +
+            "\"java\",\"python\",\"code\",\"github\",\"google\",\"docs\",\"wiki\"," +
+            ".org/.net/.io/.bg/.html\"},\"bookmarks\":{\"{\"groups\":{\"" +
+            "\"keywords\":[\"\",\"\"],\"groupName\":\"\"},\"" +
+            "\":{\"title\":\"\",\"url\":\"https://www.\",\"url\":\"https://.com/\"")
+            .getBytes(StandardCharsets.UTF_8);
+
+    public void write(Map<String, BookmarksGroup> groups, OutputStream out) throws IOException {
+        if (this == JSON) {
+            writeJson(groups, out);
+            return;
+        }
+        out.write(DEFLATE_HEADER);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            writeJson(groups, deflated);
+            deflated.finish(); //not closed- the caller owns the stream
+        } finally {
+            deflater.end();
+        }
+    }
+
+    //reads a snapshot of either format
+    public static Map<String, BookmarksGroup> read(InputStream in) throws IOException {
+        InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(DEFLATE_HEADER.length);
+        if (!Arrays.equals(DEFLATE_HEADER, buffered.readNBytes(DEFLATE_HEADER.length))) {
+            buffered.reset();
+            return GroupsCodec.read(new InputStreamReader(buffered, StandardCharsets.UTF_8));
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(DICTIONARY);
+            return GroupsCodec.read(new InputStreamReader(new InflaterInputStream(buffered, inflater, BUFFER_SIZE),
+                    StandardCharsets.UTF_8));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeJson(Map<String, BookmarksGroup> groups, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        GroupsCodec.write(groups, writer);
+        writer.flush();
+    }
+}
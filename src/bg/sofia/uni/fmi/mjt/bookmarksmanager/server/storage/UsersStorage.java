@@ -1,42 +1,80 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.BookmarksManagerAPI;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarkRecordStore;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.UserAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged.PagedStore;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.user.User;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UsersStorage {
     //keeps registered users
+    //The accounts are persisted in a fixed-layout AccountTable and every user's
+    //bookmarks in their own BookmarksGroupStorage, so the two are loaded and
+    //written independently of each other- or both in the one file of a PagedStore.
     private static final int MIN_PASSWORD_LENGTH = 5;
     private static final String PASSWORD_REGEX =
             "^(?=.*[A-Z])(?=.*[a-z])(?=.*\\d).+$";
 
     private final String fileName;
     private final Map<String, User> users;
+    private final PersistenceScheduler scheduler; //null when everything is written right away
+    private final SnapshotFormat snapshotFormat;
+    private final AccountsStore accounts;
+    private final PagedStore pagedStore; //null when every user has files of their own
+    private BookmarkRecordStore recordStore; //null for users' bookmarks on the heap
 
     public UsersStorage(String fileName) {
-        this.users = new HashMap<>();
+        this(fileName, null, SnapshotFormat.JSON);
+    }
+
+    //snapshotFormat is the one the users' groups are written in
+    public UsersStorage(String fileName, PersistenceScheduler scheduler, SnapshotFormat snapshotFormat) {
+        this(fileName, new AccountTable(Path.of(fileName)), null, scheduler, snapshotFormat);
+    }
+
+    //the accounts and the bookmarks of all users are in the store
+    public UsersStorage(PagedStore pagedStore, PersistenceScheduler scheduler) {
+        this(pagedStore.getPath().toString(), pagedStore, pagedStore, scheduler, SnapshotFormat.JSON);
+    }
+
+    private UsersStorage(String fileName, AccountsStore accounts, PagedStore pagedStore,
+                         PersistenceScheduler scheduler, SnapshotFormat snapshotFormat) {
+        this.users = new ConcurrentHashMap<>(); //read on the reactors, changed on the workers
         this.fileName = fileName;
+        this.scheduler = scheduler;
+        this.snapshotFormat = snapshotFormat;
+        this.accounts = accounts;
+        this.pagedStore = pagedStore;
         try {
             initializeUsersDatabase(fileName);
         } catch (IllegalStateException e) {
             ExceptionsLogger.logClientException(e);
         }
+        for (User user : users.values()) {
+            if (user.getStorage() != null) {
+                user.getStorage().setPersistenceScheduler(scheduler);
+                user.getStorage().setSnapshotFormat(snapshotFormat);
+            }
+        }
     }
 
     public UsersStorage(Map<String, User> users, String fileName) {
         this.users = users;
         this.fileName = fileName;
+        this.scheduler = null;
+        this.snapshotFormat = SnapshotFormat.JSON;
+        this.accounts = new AccountTable(Path.of(fileName));
+        this.pagedStore = null;
         try {
             initializeUsersDatabase(fileName);
         } catch (IllegalStateException e) {
@@ -45,7 +83,7 @@ public class UsersStorage {
     }
 
 
-    public String register(String username, String password) {
+    public synchronized String register(String username, String password) {
         if (username == null || username.isEmpty() ||
                 username.isBlank()) {
             ExceptionsLogger.logClientException(new IllegalArgumentException(String.
@@ -61,13 +99,19 @@ public class UsersStorage {
                     "one small letter and one digit.";
         }
 
+        if (!AccountTable.fits(username, password)) {
+            ExceptionsLogger.logClientException(new IllegalArgumentException(String.
+                    format("Too long username %s or password", username)));
+            return "Username/password is too long!";
+        }
+
         if (isARegisteredUser(username)) {
             throw new UserAlreadyExistsException(String.format("User with" +
                     "name %s already exists!", username));
         }
-        User registeredUser = new User(username, password,
-                new BookmarksGroupStorage(BookmarksManagerAPI.GROUP_FILE_PATH + username));
+        User registeredUser = new User(username, password, newGroupStorage(username));
         users.put(username, registeredUser);
+        appendAccount(registeredUser);
         return String.format("User %s has been successfully registered.", username);
     }
 
@@ -83,17 +127,12 @@ public class UsersStorage {
         users.replace(username, user);
     }
 
-    public void saveUsers() {
-        Path filePath = Paths.get(fileName);
-        if (!Files.exists(filePath)) {
-            FileCreator.createFile(fileName);
-        }
-
-        try (var objectOutputStream = new ObjectOutputStream(Files.newOutputStream(filePath))) {
-            for (User u : users.values()) {
-                objectOutputStream.writeObject(u);
-                objectOutputStream.flush();
-            }
+    //rewrites the whole accounts table- registering only appends to it
+    public synchronized void saveUsers() {
+        try {
+            accounts.rewrite(users.values().stream()
+                    .map(user -> new AccountsStore.Account(user.getUsername(), user.getPassword()))
+                    .toList());
         } catch (IOException e) {
             throw new IllegalStateException("Could not save users to database!", e);
         }
@@ -108,14 +147,33 @@ public class UsersStorage {
         }
     }
 
+    //a users file of the format before the accounts table is migrated to it
     public void readUsers() {
         Path filePath = Paths.get(fileName);
+        try {
+            if (pagedStore == null && !AccountTable.isAccountTable(filePath)) {
+                readSerializedUsers(filePath);
+                saveUsers();
+                return;
+            }
+            for (AccountsStore.Account account : accounts.readAll()) {
+                users.put(account.username(), new User(account.username(), account.password(),
+                        newGroupStorage(account.username())));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read users from database!", e);
+        }
+    }
 
+    //only the accounts are taken from the old file- the groups of every user are
+    //in their own groups file, which the rebuilt storage reads
+    private void readSerializedUsers(Path filePath) {
         try (var objectInputStream = new ObjectInputStream(Files.newInputStream(filePath))) {
             while (true) {
                 try {
                     User currentUser = (User) objectInputStream.readObject();
-                    users.put(currentUser.getUsername(), currentUser);
+                    users.put(currentUser.getUsername(), new User(currentUser.getUsername(),
+                            currentUser.getPassword(), newGroupStorage(currentUser.getUsername())));
                 } catch (EOFException e) {
                     break;
                 }
@@ -151,6 +209,39 @@ public class UsersStorage {
         return Objects.hash(users);
     }
 
+    //the bookmarks users load from now on are kept off the heap in the store
+    public synchronized void setRecordStore(BookmarkRecordStore recordStore) {
+        this.recordStore = recordStore;
+        for (User user : users.values()) {
+            if (user.getStorage() != null) {
+                user.getStorage().setRecordStore(recordStore);
+            }
+        }
+    }
+
+    private BookmarksGroupStorage newGroupStorage(String username) {
+        BookmarksGroupStorage storage = pagedStore != null ? new BookmarksGroupStorage(pagedStore, username) :
+                new BookmarksGroupStorage(BookmarksManagerAPI.GROUP_FILE_PATH + username);
+        storage.setPersistenceScheduler(scheduler);
+        storage.setSnapshotFormat(snapshotFormat);
+        storage.setRecordStore(recordStore);
+        return storage;
+    }
+
+    //a few bytes are written on the request path; the sync is left to the scheduler
+    private void appendAccount(User user) {
+        try {
+            accounts.append(new AccountsStore.Account(user.getUsername(), user.getPassword()));
+            if (scheduler != null) {
+                scheduler.markDirty(accounts);
+            } else {
+                accounts.flush();
+            }
+        } catch (IOException e) {
+            ExceptionsLogger.logClientException(e);
+        }
+    }
+
     private boolean validatePassword(String password) {
         return password != null && !password.isBlank() &&
                 password.length() >= MIN_PASSWORD_LENGTH
@@ -0,0 +1,289 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//B+tree of byte[] keys (compared unsigned, lexicographically) and byte[] values,
+//one node per page of a PageFile. Leaves are chained left to right for prefix scans.
+//Node page: [type byte][entries count short][link int] and then the entries-
+//[key length short][key][value length short][value] in a leaf, whose link is the
+//next leaf, or [key length short][key][child int] in an inner node, whose link is
+//the leftmost child. The child after a key holds the keys greater or equal to it.
+//A change rewrites only the pages on the path from the root to the leaf (and the
+//new page of a split). Emptied leaves are not merged- they are reused by later inserts.
+
+final class BPlusTree {
+    private static final byte LEAF = 1;
+    private static final byte INNER = 2;
+    private static final int NODE_HEADER_SIZE = 1 + Short.BYTES + Integer.BYTES;
+
+    //so that a node split into two always fits in two pages
+    static final int MAX_ENTRY_SIZE = (PageFile.PAGE_SIZE - NODE_HEADER_SIZE) / 4;
+
+    private final PageFile file;
+
+    BPlusTree(PageFile file) {
+        this.file = file;
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(byte[] key, byte[] value) throws IOException;
+    }
+
+    byte[] get(byte[] key) throws IOException {
+        if (file.getRootPage() == PageFile.NO_PAGE) {
+            return null;
+        }
+        Node leaf = read(findLeaf(key));
+        int index = leaf.indexOf(key);
+        return index >= 0 ? leaf.values.get(index) : null;
+    }
+
+    void put(byte[] key, byte[] value) throws IOException {
+        if (Short.BYTES + key.length + Short.BYTES + value.length > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("An entry of " + (key.length + value.length) +
+                    " bytes does not fit in a page");
+        }
+        if (file.getRootPage() == PageFile.NO_PAGE) {
+            Node root = Node.leaf();
+            root.keys.add(key);
+            root.values.add(value);
+            file.setRootPage(write(file.allocate(), root));
+            return;
+        }
+        Split split = insert(file.getRootPage(), key, value);
+        if (split != null) {
+            Node root = Node.inner(file.getRootPage());
+            root.keys.add(split.separator());
+            root.children.add(split.rightPage());
+            file.setRootPage(write(file.allocate(), root));
+        }
+    }
+
+    boolean remove(byte[] key) throws IOException {
+        if (file.getRootPage() == PageFile.NO_PAGE) {
+            return false;
+        }
+        int leafPage = findLeaf(key);
+        Node leaf = read(leafPage);
+        int index = leaf.indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        leaf.keys.remove(index);
+        leaf.values.remove(index);
+        write(leafPage, leaf);
+        return true;
+    }
+
+    //visits the entries whose keys start with the prefix, in keys order
+    void scan(byte[] prefix, EntryVisitor visitor) throws IOException {
+        if (file.getRootPage() == PageFile.NO_PAGE) {
+            return;
+        }
+        int leafPage = findLeaf(prefix);
+        while (leafPage != PageFile.NO_PAGE) {
+            Node leaf = read(leafPage);
+            for (int i = leaf.lowerBound(prefix); i < leaf.keys.size(); i++) {
+                if (!startsWith(leaf.keys.get(i), prefix)) {
+                    return;
+                }
+                visitor.visit(leaf.keys.get(i), leaf.values.get(i));
+            }
+            leafPage = leaf.link;
+        }
+    }
+
+    private int findLeaf(byte[] key) throws IOException {
+        int pageId = file.getRootPage();
+        Node node = read(pageId);
+        while (!node.isLeaf) {
+            pageId = node.children.get(node.upperBound(key));
+            node = read(pageId);
+        }
+        return pageId;
+    }
+
+    //the split of the node, if it did not fit in its page after the insert
+    private Split insert(int pageId, byte[] key, byte[] value) throws IOException {
+        Node node = read(pageId);
+        if (node.isLeaf) {
+            int index = node.indexOf(key);
+            if (index >= 0) {
+                node.values.set(index, value);
+            } else {
+                node.keys.add(-index - 1, key);
+                node.values.add(-index - 1, value);
+            }
+        } else {
+            int childIndex = node.upperBound(key);
+            Split childSplit = insert(node.children.get(childIndex), key, value);
+            if (childSplit == null) {
+                return null;
+            }
+            node.keys.add(childIndex, childSplit.separator());
+            node.children.add(childIndex + 1, childSplit.rightPage());
+        }
+        if (node.size() <= PageFile.PAGE_SIZE) {
+            write(pageId, node);
+            return null;
+        }
+        return split(pageId, node);
+    }
+
+    private Split split(int pageId, Node node) throws IOException {
+        int half = node.size() / 2;
+        int middle = 0;
+        for (int size = NODE_HEADER_SIZE; size < half && middle < node.keys.size() - 1; middle++) {
+            size += node.entrySize(middle);
+        }
+        int rightPage = file.allocate();
+        Node right;
+        byte[] separator = node.keys.get(middle);
+        if (node.isLeaf) {
+            right = Node.leaf();
+            right.keys.addAll(node.keys.subList(middle, node.keys.size()));
+            right.values.addAll(node.values.subList(middle, node.values.size()));
+            right.link = node.link;
+            node.keys.subList(middle, node.keys.size()).clear();
+            node.values.subList(middle, node.values.size()).clear();
+            node.link = rightPage;
+        } else { //the separator moves up
+            right = Node.inner(node.children.get(middle + 1));
+            right.keys.addAll(node.keys.subList(middle + 1, node.keys.size()));
+            right.children.addAll(node.children.subList(middle + 2, node.children.size()));
+            node.keys.subList(middle, node.keys.size()).clear();
+            node.children.subList(middle + 1, node.children.size()).clear();
+        }
+        write(pageId, node);
+        write(rightPage, right);
+        return new Split(separator, rightPage);
+    }
+
+    private Node read(int pageId) throws IOException {
+        ByteBuffer page = file.page(pageId).duplicate().clear();
+        byte type = page.get();
+        if (type != LEAF && type != INNER) {
+            throw new IOException("Page " + pageId + " is not a tree node");
+        }
+        int count = Short.toUnsignedInt(page.getShort());
+        int link = page.getInt();
+        Node node = type == LEAF ? Node.leaf() : Node.inner(link);
+        node.link = link;
+        for (int i = 0; i < count; i++) {
+            node.keys.add(readBytes(page));
+            if (type == LEAF) {
+                node.values.add(readBytes(page));
+            } else {
+                node.children.add(page.getInt());
+            }
+        }
+        return node;
+    }
+
+    private int write(int pageId, Node node) throws IOException {
+        ByteBuffer page = file.page(pageId).duplicate().clear();
+        page.put(node.isLeaf ? LEAF : INNER)
+                .putShort((short) node.keys.size())
+                .putInt(node.isLeaf ? node.link : node.children.getFirst());
+        for (int i = 0; i < node.keys.size(); i++) {
+            writeBytes(page, node.keys.get(i));
+            if (node.isLeaf) {
+                writeBytes(page, node.values.get(i));
+            } else {
+                page.putInt(node.children.get(i + 1));
+            }
+        }
+        file.markDirty(pageId);
+        return pageId;
+    }
+
+    private static byte[] readBytes(ByteBuffer page) {
+        byte[] bytes = new byte[Short.toUnsignedInt(page.getShort())];
+        page.get(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(ByteBuffer page, byte[] bytes) {
+        page.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length &&
+                Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private record Split(byte[] separator, int rightPage) {
+    }
+
+    //a node decoded from its page; inner nodes keep the leftmost child as children[0]
+    private static final class Node {
+        private final boolean isLeaf;
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private final List<Integer> children = new ArrayList<>();
+        private int link = PageFile.NO_PAGE;
+
+        private Node(boolean isLeaf) {
+            this.isLeaf = isLeaf;
+        }
+
+        static Node leaf() {
+            return new Node(true);
+        }
+
+        static Node inner(int leftmostChild) {
+            Node node = new Node(false);
+            node.children.add(leftmostChild);
+            return node;
+        }
+
+        //the index of the key, or -(insertion point) - 1
+        int indexOf(byte[] key) {
+            int low = 0;
+            int high = keys.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = Arrays.compareUnsigned(keys.get(middle), key);
+                if (comparison == 0) {
+                    return middle;
+                }
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return -low - 1;
+        }
+
+        //the first index whose key is not less than the given one
+        int lowerBound(byte[] key) {
+            int index = indexOf(key);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        //the number of keys not greater than the given one- the child to descend to
+        int upperBound(byte[] key) {
+            int index = indexOf(key);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        int entrySize(int index) {
+            return Short.BYTES + keys.get(index).length +
+                    (isLeaf ? Short.BYTES + values.get(index).length : Integer.BYTES);
+        }
+
+        int size() {
+            int size = NODE_HEADER_SIZE;
+            for (int i = 0; i < keys.size(); i++) {
+                size += entrySize(i);
+            }
+            return size;
+        }
+    }
+}
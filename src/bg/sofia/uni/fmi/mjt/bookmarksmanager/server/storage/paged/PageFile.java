@@ -0,0 +1,237 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+//A file of PAGE_SIZE pages behind a bounded cache. Page 0 is the header:
+//[magic int][page size int][pages count int][root page int].
+//Pages are changed in the cache and written only by flush(): the dirty pages are
+//first appended to a journal next to the file, which is synced and ends with a
+//commit marker, and only then written in place. A crash in the middle of a flush
+//is repaired on open by replaying a committed journal, so the file always holds
+//the pages of some flush as a whole. The cache keeps at most maxCachedPages pages;
+//dirty pages are only dropped after a flush, which evictIfNeeded() does itself
+//when nothing else can be evicted. Not thread-safe- the owner synchronizes.
+
+final class PageFile implements Closeable {
+    static final int PAGE_SIZE = 16 * 1024;
+    static final int NO_PAGE = 0; //the header is never a page of the tree
+
+    private static final int MAGIC = 0x424D5047; //"BMPG"
+    private static final int HEADER_PAGE = 0;
+    private static final int COMMIT_MARKER = 0x434F4D54; //"COMT"
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final FileChannel channel;
+    private final Path journalPath;
+    private final int maxCachedPages;
+    private final Map<Integer, ByteBuffer> cache; //least recently used first
+    private final TreeSet<Integer> dirtyPages;
+    private int pagesCount;
+    private int rootPage;
+
+    PageFile(Path path, int maxCachedPages) throws IOException {
+        if (maxCachedPages <= 0) {
+            throw new IllegalArgumentException("The page cache must hold at least one page!");
+        }
+        this.journalPath = Path.of(path + JOURNAL_SUFFIX);
+        this.maxCachedPages = maxCachedPages;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.dirtyPages = new TreeSet<>();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            replayJournal();
+            if (channel.size() == 0) {
+                pagesCount = 1;
+                rootPage = NO_PAGE;
+                dirtyPages.add(HEADER_PAGE);
+                flush();
+            } else {
+                readHeader();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int getRootPage() {
+        return rootPage;
+    }
+
+    void setRootPage(int rootPage) {
+        this.rootPage = rootPage;
+        dirtyPages.add(HEADER_PAGE);
+    }
+
+    int getPagesCount() {
+        return pagesCount;
+    }
+
+    int getCachedPagesCount() {
+        return cache.size();
+    }
+
+    //the cached page; changes to it must be followed by markDirty()
+    ByteBuffer page(int pageId) throws IOException {
+        if (pageId <= HEADER_PAGE || pageId >= pagesCount) {
+            throw new IOException("No page " + pageId + " in a file of " + pagesCount + " pages");
+        }
+        ByteBuffer page = cache.get(pageId);
+        if (page == null) {
+            page = ByteBuffer.allocate(PAGE_SIZE);
+            readFully(page, (long) pageId * PAGE_SIZE);
+            cache.put(pageId, page);
+        }
+        return page;
+    }
+
+    void markDirty(int pageId) {
+        dirtyPages.add(pageId);
+    }
+
+    int allocate() {
+        int pageId = pagesCount++;
+        cache.put(pageId, ByteBuffer.allocate(PAGE_SIZE));
+        dirtyPages.add(pageId);
+        dirtyPages.add(HEADER_PAGE);
+        return pageId;
+    }
+
+    //called between operations only, so that no half-done change is flushed
+    void evictIfNeeded() throws IOException {
+        evictCleanPages();
+        if (cache.size() > maxCachedPages) {
+            flush();
+            evictCleanPages();
+        }
+    }
+
+    void flush() throws IOException {
+        if (dirtyPages.isEmpty()) {
+            return;
+        }
+        List<Integer> pageIds = new ArrayList<>(dirtyPages);
+        writeJournal(pageIds);
+        for (int pageId : pageIds) {
+            writeFully(contentOf(pageId), (long) pageId * PAGE_SIZE);
+        }
+        channel.force(true);
+        Files.deleteIfExists(journalPath); //the file has all of its pages now
+        dirtyPages.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void evictCleanPages() {
+        Iterator<Map.Entry<Integer, ByteBuffer>> iterator = cache.entrySet().iterator();
+        while (cache.size() > maxCachedPages && iterator.hasNext()) {
+            if (!dirtyPages.contains(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private ByteBuffer contentOf(int pageId) {
+        if (pageId != HEADER_PAGE) {
+            return cache.get(pageId).duplicate().clear();
+        }
+        ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+        header.putInt(MAGIC).putInt(PAGE_SIZE).putInt(pagesCount).putInt(rootPage);
+        return header.clear();
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != PAGE_SIZE) {
+            throw new IOException("Not a bookmarks page file");
+        }
+        pagesCount = header.getInt();
+        rootPage = header.getInt();
+    }
+
+    private void writeJournal(List<Integer> pageIds) throws IOException {
+        try (FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer pageId = ByteBuffer.allocate(Integer.BYTES);
+            for (int id : pageIds) {
+                writeAll(journal, pageId.clear().putInt(id).flip());
+                writeAll(journal, contentOf(id));
+            }
+            writeAll(journal, pageId.clear().putInt(COMMIT_MARKER).flip());
+            journal.force(true);
+        }
+    }
+
+    //a journal without its commit marker was not complete, so the file was not touched yet
+    private void replayJournal() throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        int entrySize = Integer.BYTES + PAGE_SIZE;
+        long journalSize = Files.size(journalPath);
+        if (journalSize % entrySize == Integer.BYTES) {
+            try (FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+                ByteBuffer marker = ByteBuffer.allocate(Integer.BYTES);
+                readFully(journal, marker, journalSize - Integer.BYTES);
+                if (marker.flip().getInt() == COMMIT_MARKER) {
+                    ByteBuffer entry = ByteBuffer.allocate(entrySize);
+                    for (long position = 0; position < journalSize - Integer.BYTES; position += entrySize) {
+                        readFully(journal, entry.clear(), position);
+                        int pageId = entry.flip().getInt();
+                        writeFully(entry.slice(), (long) pageId * PAGE_SIZE);
+                    }
+                    channel.force(true);
+                }
+            }
+        }
+        Files.delete(journalPath);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(channel, buffer, position);
+    }
+
+    private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the page file at " + position);
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    private static void writeAll(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.AccountsStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//All users' accounts and bookmarks in a single page file, in one B+tree.
+//Accounts are keyed by [ACCOUNTS][username] and the bookmarks data by
+//[BOOKMARKS][username][group name][GROUP] for a group and by
+//[BOOKMARKS][username][group name][BOOKMARK][title] for a bookmark, every name
+//but the last one length-prefixed, so that a user's or a group's entries are
+//a contiguous range found by a prefix scan. A change updates only the pages
+//of its entry and is durable after the next flush().
+//A bookmark too large for one entry continues in overflow entries keyed by
+//[OVERFLOW][username][group name][title tag][title][index], read in order of
+//their index; only bookmarks whose names leave no room for a value are refused.
+
+public class PagedStore implements AccountsStore {
+    public static final int DEFAULT_CACHED_PAGES = 1024;
+
+    private static final byte ACCOUNTS = 0;
+    private static final byte BOOKMARKS = 1;
+    private static final byte OVERFLOW = 2;
+    private static final byte GROUP = 0;
+    private static final byte BOOKMARK = 1;
+    private static final byte NULL_TITLE = 0;
+    private static final byte TITLE = 1;
+    private static final int NULL_COLLECTION = -1;
+    private static final int MIN_CHUNK_SIZE = 256; //of a bookmark's value, in each of its entries
+
+    private final Path path;
+    private final PageFile file;
+    private final BPlusTree tree;
+
+    public PagedStore(Path path, int maxCachedPages) throws IOException {
+        this.path = path;
+        this.file = new PageFile(path, maxCachedPages);
+        this.tree = new BPlusTree(file);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    //whether the bookmark's keys leave room for its value in the pages (title null for a group)
+    public static boolean fits(String username, String groupName, String title) {
+        try {
+            return chunkCapacity(overflowKey(username, groupName, title, 1)) >= MIN_CHUNK_SIZE;
+        } catch (IllegalArgumentException e) { //a name longer than any key
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized List<Account> readAll() throws IOException {
+        List<Account> accounts = new ArrayList<>();
+        tree.scan(new byte[] {ACCOUNTS}, (key, value) -> accounts.add(new Account(
+                new String(key, 1, key.length - 1, StandardCharsets.UTF_8),
+                new String(value, StandardCharsets.UTF_8))));
+        file.evictIfNeeded();
+        return accounts;
+    }
+
+    @Override
+    public synchronized void append(Account account) throws IOException {
+        tree.put(accountKey(account.username()), account.password().getBytes(StandardCharsets.UTF_8));
+        file.evictIfNeeded();
+    }
+
+    @Override
+    public synchronized void rewrite(Collection<Account> accounts) throws IOException {
+        Set<String> usernames = new HashSet<>();
+        for (Account account : accounts) {
+            usernames.add(account.username());
+            tree.put(accountKey(account.username()), account.password().getBytes(StandardCharsets.UTF_8));
+        }
+        for (Account existing : readAll()) {
+            if (!usernames.contains(existing.username())) {
+                tree.remove(accountKey(existing.username()));
+            }
+        }
+        file.evictIfNeeded();
+    }
+
+    public synchronized Map<String, BookmarksGroup> readGroups(String username) throws IOException {
+        Map<BookmarkId, ByteArrayOutputStream> overflows = readOverflows(username);
+        Map<String, BookmarksGroup> groups = new HashMap<>();
+        KeyWriter userPrefix = new KeyWriter(BOOKMARKS).name(username);
+        int prefixLength = userPrefix.size();
+        tree.scan(userPrefix.toBytes(), (key, value) -> {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(key, prefixLength,
+                    key.length - prefixLength));
+            String groupName = readName(in);
+            BookmarksGroup group = groups.computeIfAbsent(groupName, name -> new BookmarksGroup(name, new HashMap<>()));
+            if (in.readByte() == BOOKMARK) {
+                String title = in.readByte() == NULL_TITLE ? null :
+                        new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                ByteArrayOutputStream overflow = overflows.get(new BookmarkId(groupName, title));
+                group.addNewBookmark(decodeBookmark(title, overflow == null ? value : concat(value, overflow)));
+            }
+        });
+        file.evictIfNeeded();
+        return groups;
+    }
+
+    public synchronized void putGroup(String username, String groupName) throws IOException {
+        byte[] key = groupKey(username, groupName);
+        if (tree.get(key) == null) {
+            tree.put(key, new byte[0]);
+        }
+        file.evictIfNeeded();
+    }
+
+    public synchronized void putBookmark(String username, String groupName, Bookmark bookmark) throws IOException {
+        if (!fits(username, groupName, bookmark.title())) {
+            throw new IllegalArgumentException("The names of bookmark " + bookmark.title() +
+                    " are too long to be stored");
+        }
+        putGroup(username, groupName);
+        byte[] key = bookmarkKey(username, groupName, bookmark.title());
+        byte[] value = encodeBookmark(bookmark);
+        int position = Math.min(value.length, chunkCapacity(key));
+        tree.put(key, Arrays.copyOf(value, position));
+        int index = 0;
+        while (position < value.length) {
+            byte[] chunkKey = overflowKey(username, groupName, bookmark.title(), ++index);
+            int end = Math.min(value.length, position + chunkCapacity(chunkKey));
+            tree.put(chunkKey, Arrays.copyOfRange(value, position, end));
+            position = end;
+        }
+        removeOverflow(username, groupName, bookmark.title(), index + 1); //of a larger previous version
+        file.evictIfNeeded();
+    }
+
+    public synchronized boolean removeBookmark(String username, String groupName, String title) throws IOException {
+        boolean isRemoved = tree.remove(bookmarkKey(username, groupName, title));
+        removeOverflow(username, groupName, title, 1);
+        file.evictIfNeeded();
+        return isRemoved;
+    }
+
+    public synchronized int getPagesCount() {
+        return file.getPagesCount();
+    }
+
+    public synchronized int getCachedPagesCount() {
+        return file.getCachedPagesCount();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        file.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    private static byte[] accountKey(String username) {
+        return new KeyWriter(ACCOUNTS).last(username).toBytes();
+    }
+
+    private static byte[] groupKey(String username, String groupName) {
+        return new KeyWriter(BOOKMARKS).name(username).name(groupName).tag(GROUP).toBytes();
+    }
+
+    private static byte[] bookmarkKey(String username, String groupName, String title) {
+        KeyWriter key = new KeyWriter(BOOKMARKS).name(username).name(groupName).tag(BOOKMARK);
+        return title == null ? key.tag(NULL_TITLE).toBytes() : key.tag(TITLE).last(title).toBytes();
+    }
+
+    //the overflow entries of each of the user's bookmarks, concatenated in order
+    private Map<BookmarkId, ByteArrayOutputStream> readOverflows(String username) throws IOException {
+        Map<BookmarkId, ByteArrayOutputStream> overflows = new HashMap<>();
+        KeyWriter userPrefix = new KeyWriter(OVERFLOW).name(username);
+        int prefixLength = userPrefix.size();
+        tree.scan(userPrefix.toBytes(), (key, value) -> {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(key, prefixLength,
+                    key.length - prefixLength));
+            String groupName = readName(in);
+            String title = in.readByte() == NULL_TITLE ? null : readName(in);
+            overflows.computeIfAbsent(new BookmarkId(groupName, title), id -> new ByteArrayOutputStream())
+                    .writeBytes(value);
+        });
+        return overflows;
+    }
+
+    private void removeOverflow(String username, String groupName, String title, int fromIndex) throws IOException {
+        for (int index = fromIndex; tree.remove(overflowKey(username, groupName, title, index)); index++) {
+            //the entries of a bookmark have consecutive indexes
+        }
+    }
+
+    private static byte[] overflowKey(String username, String groupName, String title, int index) {
+        KeyWriter key = new KeyWriter(OVERFLOW).name(username).name(groupName);
+        return (title == null ? key.tag(NULL_TITLE) : key.tag(TITLE).name(title)).index(index).toBytes();
+    }
+
+    //how much of a value fits in an entry with the key
+    private static int chunkCapacity(byte[] key) {
+        return BPlusTree.MAX_ENTRY_SIZE - 2 * Short.BYTES - key.length;
+    }
+
+    private static byte[] concat(byte[] value, ByteArrayOutputStream overflow) {
+        byte[] result = Arrays.copyOf(value, value.length + overflow.size());
+        System.arraycopy(overflow.toByteArray(), 0, result, value.length, overflow.size());
+        return result;
+    }
+
+    private static String readName(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //the title and the group name are in the key, the rest of the bookmark in the value
+    private static byte[] encodeBookmark(Bookmark bookmark) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeNullable(out, bookmark.url());
+        writeNullable(out, bookmark.groupName());
+        if (bookmark.keywords() == null) {
+            out.writeInt(NULL_COLLECTION);
+        } else {
+            out.writeInt(bookmark.keywords().size());
+            for (String keyword : bookmark.keywords()) {
+                out.writeUTF(keyword);
+            }
+        }
+        if (bookmark.termFrequencies() == null) {
+            out.writeInt(NULL_COLLECTION);
+        } else {
+            out.writeInt(bookmark.termFrequencies().size());
+            for (Map.Entry<String, Integer> term : bookmark.termFrequencies().entrySet()) {
+                out.writeUTF(term.getKey());
+                out.writeInt(term.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Bookmark decodeBookmark(String title, byte[] value) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        String url = readNullable(in);
+        String groupName = readNullable(in);
+        Set<String> keywords = null;
+        int keywordsCount = in.readInt();
+        if (keywordsCount != NULL_COLLECTION) {
+            keywords = new LinkedHashSet<>();
+            for (int i = 0; i < keywordsCount; i++) {
+                keywords.add(in.readUTF());
+            }
+        }
+        Map<String, Integer> termFrequencies = null;
+        int termsCount = in.readInt();
+        if (termsCount != NULL_COLLECTION) {
+            termFrequencies = new LinkedHashMap<>();
+            for (int i = 0; i < termsCount; i++) {
+                termFrequencies.put(in.readUTF(), in.readInt());
+            }
+        }
+        return new Bookmark(title, url, keywords, groupName, termFrequencies);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private record BookmarkId(String groupName, String title) {
+    }
+
+    //builds a key from its parts
+    private static final class KeyWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        KeyWriter(byte space) {
+            bytes.write(space);
+        }
+
+        KeyWriter name(String name) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            if (encoded.length > 0xFFFF) {
+                throw new IllegalArgumentException("Too long name " + name.substring(0, 32) + "...");
+            }
+            bytes.write(encoded.length >>> 8);
+            bytes.write(encoded.length);
+            bytes.writeBytes(encoded);
+            return this;
+        }
+
+        KeyWriter last(String name) {
+            bytes.writeBytes(name.getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        KeyWriter tag(byte tag) {
+            bytes.write(tag);
+            return this;
+        }
+
+        //big-endian, so that the keys are ordered by it
+        KeyWriter index(int index) {
+            bytes.write(index >>> 24);
+            bytes.write(index >>> 16);
+            bytes.write(index >>> 8);
+            bytes.write(index);
+            return this;
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        byte[] toBytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
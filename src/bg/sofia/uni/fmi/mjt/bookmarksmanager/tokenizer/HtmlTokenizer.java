@@ -14,6 +14,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -57,10 +59,14 @@ public class HtmlTokenizer {
         this.stopwords = stopwords;
     }
 
+    //the tokenizer with the default stopwords, which are read only once
+    public static HtmlTokenizer getDefault() {
+        return DefaultTokenizerHolder.INSTANCE;
+    }
+
     public String getTitle(String url) {
         try {
-            Document doc = Jsoup.connect(url).get();
-            return doc.title().strip().replaceAll(" +", "-");
+            return getTitle(Jsoup.connect(url).get());
         } catch (IOException e) {
             ExceptionsLogger.logClientException(e);
         }
@@ -68,17 +74,35 @@ public class HtmlTokenizer {
     }
 
     public Set<String> getKeywords(String url) {
+        Map<String, Integer> termFrequencies = getTermFrequencies(url);
+        return termFrequencies == null ? null : new HashSet<>(termFrequencies.keySet());
+    }
+
+    public Map<String, Integer> getTermFrequencies(String url) {
         try {
-            Document doc = Jsoup.connect(url).get();
-            String pageText = getText(doc);
-            return tokenize(pageText);
+            return getTermFrequencies(Jsoup.connect(url).get());
         } catch (IOException e) {
             ExceptionsLogger.logClientException(e);
         }
         return null;
     }
 
+    //the extraction from an already fetched page, so that one download serves both
+    public String getTitle(Document doc) {
+        return doc.title().strip().replaceAll(" +", "-");
+    }
+
+    public Map<String, Integer> getTermFrequencies(Document doc) {
+        return countTerms(getText(doc));
+    }
+
     public Set<String> tokenize(String input) {
+        return new HashSet<>(countTerms(input).keySet());
+    }
+
+    //the most frequent words of the input (at most MAX_KEYWORDS_NUMBER of them)
+    //with the number of their occurrences, the most frequent first
+    public Map<String, Integer> countTerms(String input) {
         //System.out.println("Input:" + input);
         Stream<String> derivedWords = getStringStream(input);
 
@@ -89,8 +113,8 @@ public class HtmlTokenizer {
                                Long>comparingByValue().
                        reversed()).limit(Math.min(MAX_KEYWORDS_NUMBER,
                        wordsOccurrences.size()))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().intValue(),
+                        (first, second) -> first, LinkedHashMap::new));
     }
 
     public Stream<String> getStringStream(String input) {
@@ -107,6 +131,15 @@ public class HtmlTokenizer {
     }
 
 
+    //the form in which keywords are compared: lowercase and stemmed like
+    //the words extracted from the pages (null for a null or blank word)
+    public static String normalize(String word) {
+        if (word == null || word.isBlank()) {
+            return null;
+        }
+        return applyAlgorithms(word.strip().toLowerCase());
+    }
+
     private static String getText(Document doc) {
         Elements elements = doc.select(CSS_QUERY);
 
@@ -121,4 +154,8 @@ public class HtmlTokenizer {
     private static String applyAlgorithms(String word) {
         return suffixStemmer.stem(pluralStemmer.stem(word));
     }
+
+    private static final class DefaultTokenizerHolder {
+        private static final HtmlTokenizer INSTANCE = new HtmlTokenizer();
+    }
 }
@@ -1,10 +1,13 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.user;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.BookmarksGroupStorage;
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.Objects;
 
 public class User implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 7969408767626805038L; //of the users files before the accounts table
 
     private  String username;
     private  String password;
@@ -48,6 +51,10 @@ public class User implements Serializable {
         return username;
     }
 
+    public String getPassword() {
+        return password;
+    }
+
     public BookmarksGroupStorage getStorage() {
         return storage;
     }
@@ -2,12 +2,17 @@ package bg.sofia.uni.fmi.mjt.bookmarksmanager;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.EnrichedPage;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.EnrichmentPipeline;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.PageEnricher;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidCredentialsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchUserException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.UserNotLoggedInException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksFinder;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportFormat;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.BookmarksGroupStorage;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.PersistenceScheduler;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.UsersStorage;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.user.User;
 import org.junit.After;
@@ -20,13 +25,17 @@ import java.io.IOException;
 import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 
 
@@ -189,6 +198,22 @@ public class BookmarksManagerTest {
         assertEquals(result, expected);
     }
 
+    @Test
+    public void testAsyncAddReplacesThePlaceholderOnceEnriched() throws IOException {
+        String url = "https://github.com/fmi/java-course";
+        PageEnricher enricher = mock(PageEnricher.class);
+        when(enricher.fetch(url)).thenReturn(new EnrichedPage("Java-course", Map.of("java", 2)));
+        EnrichmentPipeline pipeline = new EnrichmentPipeline(enricher, 10, 1, 1, Duration.ZERO);
+        manager.useAsyncEnrichment(pipeline);
+
+        manager.addNewBookmarkToGroup(sc1, "Group1", url, false);
+        pipeline.close(); //waits for the enrichment
+
+        BookmarksGroup group = bookmarksStorage1.getGroups().get("Group1");
+        assertNull(group.getBookmark(url));
+        assertEquals(Set.of("java"), group.getBookmark("Java-course").keywords());
+    }
+
     @Test
     public void testAddNewBookmarkToGroupUserNotLoggedIn() {
         String url = "https://github.com/fmi/java-course/tree/master";
@@ -256,6 +281,31 @@ public class BookmarksManagerTest {
         assertEquals(expectedOutput,  manager.cleanUp(sc1));
     }
 
+    @Test
+    public void testCleanUpAllNeedsAnAdministrator() {
+        assertEquals("Only an administrator can clean up the bookmarks of all users!",
+                manager.cleanUpAll(sc1));
+        assertEquals(NOT_LOGGED_WARNING, manager.cleanUpAll(sc2));
+    }
+
+    @Test
+    public void testImportFromFileReadsOnlyTheImportsDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("imports");
+        Path outside = Files.createTempFile("bookmarks", ".html");
+        try {
+            manager.setImportsDirectory(directory);
+            String refused = "Bookmarks can only be imported from the files in the imports directory!";
+            assertEquals(refused, manager.importFromFile(sc1, outside, ImportFormat.NETSCAPE));
+            assertEquals(refused, manager.importFromFile(sc1,
+                    Path.of("..", outside.getFileName().toString()), ImportFormat.NETSCAPE));
+            assertEquals("There is no file missing.html to import bookmarks from!",
+                    manager.importFromFile(sc1, Path.of("missing.html"), ImportFormat.NETSCAPE));
+        } finally {
+            Files.deleteIfExists(outside);
+            Files.deleteIfExists(directory);
+        }
+    }
+
     @Test
     public void testListAllAssertThrows() {
         Assertions.assertThrows(UserNotLoggedInException.class, () -> {
@@ -298,6 +348,18 @@ public class BookmarksManagerTest {
                 "searching for bookmarks of not logged in user!");
     }
 
+    @Test
+    public void testDisconnectWritesTheGroupsBeforeReleasingThem() {
+        PersistenceScheduler scheduler = new PersistenceScheduler(Duration.ofHours(1));
+        bookmarksStorage1.setPersistenceScheduler(scheduler);
+        bookmarksStorage1.createNewGroup("Group2");
+
+        manager.disconnectUser(sc1);
+
+        assertTrue("The idle groups should be unloadable right away", bookmarksStorage1.unload());
+        scheduler.close();
+    }
+
     @Test
     public void testDisconnectUserRemoveClientChannel() {
         manager.disconnectUser(sc1);
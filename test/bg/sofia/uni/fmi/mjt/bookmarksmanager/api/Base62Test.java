@@ -0,0 +1,27 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Base62Test {
+
+    @Test
+    void testCodesAreDecodedBack() {
+        assertEquals("0", Base62.encode(0));
+        assertEquals("z", Base62.encode(61));
+        assertEquals("10", Base62.encode(62));
+        for (long value : new long[] {0, 1, 61, 62, 3843, 3844, 1_000_000_007L, Long.MAX_VALUE}) {
+            assertEquals(value, Base62.decode(Base62.encode(value)));
+        }
+    }
+
+    @Test
+    void testInvalidCodesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Base62.decode(""));
+        assertThrows(IllegalArgumentException.class, () -> Base62.decode("ab-c"));
+        assertThrows(IllegalArgumentException.class, () -> Base62.decode("zzzzzzzzzzz"));
+        assertThrows(IllegalArgumentException.class, () -> Base62.encode(-1));
+    }
+}
@@ -0,0 +1,149 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//shortens links through a local Bitly stub
+public class LinkShortenerTest {
+    private static final String URL = "https://github.com/google/gson";
+
+    private BitlyStub stub;
+    private Function<String, CompletableFuture<String>> service;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = new BitlyStub(0, Duration.ofMillis(100));
+        HttpClient client = HttpClient.newHttpClient();
+        service = url -> ShortenLinkAPIHandler.getShortenedLinkAsync(client, stub.getUri(), url);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void testConcurrentRequestsForALinkAreSentOnce() {
+        LinkShortener shortener = new LinkShortener(service, null, 16, 100);
+
+        List<CompletableFuture<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(shortener.shortenAsync(URL));
+        }
+        Set<String> links = requests.stream().map(CompletableFuture::join).collect(Collectors.toSet());
+
+        assertEquals(1, links.size());
+        assertTrue(links.iterator().next().startsWith("https://bit.ly/"));
+        assertEquals(1, stub.getRequestsCount());
+        assertEquals(links.iterator().next(), shortener.shorten(URL));
+        assertEquals(1, stub.getRequestsCount(), "A cached link should not be requested again");
+    }
+
+    @Test
+    void testShortenedLinksSurviveARestart() {
+        Path cacheFile = directory.resolve("shortened-links.log");
+        String link = new LinkShortener(service, cacheFile, 16, 100).shorten(URL);
+
+        AtomicInteger requestsCount = new AtomicInteger();
+        LinkShortener restarted = new LinkShortener(url -> {
+            requestsCount.incrementAndGet();
+            return CompletableFuture.completedFuture(url);
+        }, cacheFile, 16, 100);
+
+        assertEquals(link, restarted.shorten(URL));
+        assertEquals(0, requestsCount.get());
+    }
+
+    @Test
+    void testCacheFileIsCompactedWhileRunning() throws IOException {
+        Path cacheFile = directory.resolve("shortened-links.log");
+        int maxEntries = 2;
+        LinkShortener shortener = new LinkShortener(url -> CompletableFuture.completedFuture(url + "-short"),
+                cacheFile, maxEntries, 1000);
+
+        for (int i = 0; i < 10 * maxEntries; i++) {
+            shortener.shorten(URL + "?" + i);
+        }
+
+        assertTrue(Files.readAllLines(cacheFile).size() <= 2 * maxEntries,
+                "The dropped links should not pile up in the file");
+        LinkShortener restarted = new LinkShortener(url -> CompletableFuture.completedFuture(url),
+                cacheFile, maxEntries, 1000);
+        assertEquals(URL + "?19-short", restarted.shorten(URL + "?19"));
+    }
+
+    @Test
+    void testLinksWhoseTurnIsTooFarAreNotQueued() {
+        AtomicInteger requestsCount = new AtomicInteger();
+        LinkShortener shortener = new LinkShortener(url -> {
+            requestsCount.incrementAndGet();
+            return CompletableFuture.completedFuture(url + "-short");
+        }, null, 16, 1, Duration.ofMillis(100));
+
+        long start = System.nanoTime();
+        assertEquals(URL + "-short", shortener.shorten(URL));
+        assertEquals(URL + "?1", shortener.shorten(URL + "?1"));
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(elapsedMillis < 1000, "Took " + elapsedMillis + " ms");
+        assertEquals(1, requestsCount.get());
+        assertEquals(1, shortener.size(), "A link left as it is should not be cached");
+    }
+
+    @Test
+    void testLinksThatCouldNotBeShortenedAreNotCached() {
+        AtomicInteger requestsCount = new AtomicInteger();
+        LinkShortener shortener = new LinkShortener(url -> {
+            requestsCount.incrementAndGet();
+            return requestsCount.get() == 1 ? CompletableFuture.failedFuture(new IOException("Network error")) :
+                    CompletableFuture.completedFuture(url);
+        }, null, 16, 100);
+
+        assertEquals(URL, shortener.shorten(URL));
+        assertEquals(URL, shortener.shorten(URL));
+        assertEquals(2, requestsCount.get());
+        assertEquals(0, shortener.size());
+    }
+
+    @Test
+    void testRequestsAreSpacedByTheRateLimit() {
+        int requestsPerSecond = 20;
+        int linksCount = 5;
+        LinkShortener shortener = new LinkShortener(service, null, 16, requestsPerSecond);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> requests = new ArrayList<>();
+        for (int i = 0; i < linksCount; i++) {
+            requests.add(shortener.shortenAsync(URL + "?" + i));
+        }
+        requests.forEach(CompletableFuture::join);
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(elapsedMillis >= (linksCount - 1) * 1000L / requestsPerSecond,
+                "Took " + elapsedMillis + " ms");
+        assertEquals(linksCount, stub.getRequestsCount());
+        assertNotEquals(requests.get(0).join(), requests.get(1).join());
+    }
+}
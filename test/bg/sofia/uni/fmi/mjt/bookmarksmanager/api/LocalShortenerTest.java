@@ -0,0 +1,77 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LocalShortenerTest {
+    private static final String URL = "https://github.com/google/gson?tab=readme";
+
+    private LocalShortener shortener;
+    private final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        shortener = new LocalShortener(new ShortLinkTable(directory.resolve("short-links.table")), 0, null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ShortenLinkAPIHandler.useLocalShortener(null);
+        shortener.close();
+    }
+
+    @Test
+    void testShortLinksRedirectToTheirUrls() throws IOException, InterruptedException {
+        String link = shortener.shorten(URL);
+
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(link)).build(),
+                HttpResponse.BodyHandlers.discarding());
+
+        assertTrue(link.startsWith(shortener.getBaseUri()));
+        assertEquals(301, response.statusCode());
+        assertEquals(URL, response.headers().firstValue("Location").orElse(null));
+    }
+
+    @Test
+    void testEndpointIsBoundToLocalhostOnly() {
+        assertTrue(shortener.getAddress().getAddress().isLoopbackAddress());
+    }
+
+    @Test
+    void testUnknownCodesAreNotFound() throws IOException, InterruptedException {
+        for (String code : new String[] {"5", "not-a-code", ""}) {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(
+                    URI.create(shortener.getBaseUri() + code)).build(), HttpResponse.BodyHandlers.discarding());
+
+            assertEquals(404, response.statusCode(), "Code " + code);
+        }
+    }
+
+    @Test
+    void testLinksAreMintedLocallyOnceItIsUsed() {
+        ShortenLinkAPIHandler.useLocalShortener(shortener);
+
+        String first = ShortenLinkAPIHandler.shorten(URL);
+        String second = ShortenLinkAPIHandler.shorten("https://jsoup.org/");
+
+        assertEquals(shortener.getBaseUri() + "1", first);
+        assertNotEquals(first, second);
+        assertEquals("https://jsoup.org/", shortener.resolve(second.substring(shortener.getBaseUri().length())));
+    }
+}
@@ -0,0 +1,88 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShortLinkTableTest {
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testIdsAreASequenceWhichSurvivesReopening() throws IOException {
+        Path path = directory.resolve("short-links.table");
+        try (ShortLinkTable table = new ShortLinkTable(path, SEGMENT_SIZE)) {
+            for (int i = 1; i <= 20; i++) { //the records of several segments
+                assertEquals(i, table.append("https://example.com/" + i));
+            }
+        }
+
+        try (ShortLinkTable table = new ShortLinkTable(path, SEGMENT_SIZE)) {
+            assertEquals(20, table.size());
+            assertEquals("https://example.com/1", table.get(1));
+            assertEquals("https://example.com/20", table.get(20));
+            assertEquals(21, table.append("https://github.com/"));
+            assertEquals("https://github.com/", table.get(21));
+            assertNull(table.get(0));
+            assertNull(table.get(22));
+        }
+    }
+
+    @Test
+    void testConcurrentAppendsAreCommittedTogether() throws Exception {
+        Path path = directory.resolve("short-links.table");
+        int threadsCount = 8;
+        int perThread = 50;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        try (ShortLinkTable table = new ShortLinkTable(path, SEGMENT_SIZE);
+             ExecutorService executor = Executors.newFixedThreadPool(threadsCount)) {
+            List<Future<?>> appends = new ArrayList<>();
+            for (int t = 0; t < threadsCount; t++) {
+                int thread = t;
+                appends.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        long id = table.append("https://example.com/" + thread + "/" + i);
+                        assertEquals("https://example.com/" + thread + "/" + i, table.get(id));
+                        ids.add(id);
+                    }
+                }));
+            }
+            for (Future<?> append : appends) {
+                append.get();
+            }
+        }
+        assertEquals(threadsCount * perThread, ids.size());
+
+        try (ShortLinkTable table = new ShortLinkTable(path, SEGMENT_SIZE)) {
+            assertEquals(threadsCount * perThread, table.size());
+            for (long id = 1; id <= table.size(); id++) {
+                assertTrue(table.get(id).startsWith("https://example.com/"));
+            }
+        }
+    }
+
+    @Test
+    void testUrlsLongerThanASegmentAreRejected() throws IOException {
+        try (ShortLinkTable table = new ShortLinkTable(directory.resolve("short-links.table"), SEGMENT_SIZE)) {
+            assertThrows(IllegalArgumentException.class, () -> table.append("https://example.com/" + "a".repeat(64)));
+            assertThrows(IllegalArgumentException.class, () -> table.append(""));
+            assertEquals(0, table.size());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BookmarkRecordStoreTest {
+    private static final Path TEST_FILE = Path.of("test" + File.separator + "bg" + File.separator +
+            "sofia" + File.separator + "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "bookmark" + File.separator +
+            "testBookmarkRecords");
+    private static final int SEGMENT_SIZE = 256;
+
+    private static final Bookmark JAVA = new Bookmark("Java", "https://java.com", Set.of("java", "jvm"),
+            "Work", Map.of("java", 3, "jvm", 1));
+    private static final Bookmark UNTITLED = new Bookmark(null, "https://news.com", null, "Новини");
+
+    private BookmarkRecordStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new BookmarkRecordStore(TEST_FILE, SEGMENT_SIZE);
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void testRecordsAreReadBack() {
+        long javaOffset = store.append(JAVA);
+        long untitledOffset = store.append(UNTITLED);
+
+        assertEquals(JAVA, store.read(javaOffset));
+        assertEquals(UNTITLED, store.read(untitledOffset));
+        assertEquals("Java", store.readTitle(javaOffset));
+    }
+
+    @Test
+    void testRecordsDoNotSpanSegments() {
+        long previous = -1;
+        for (int i = 0; i < 20; i++) {
+            long offset = store.append(JAVA);
+            assertTrue(offset / SEGMENT_SIZE == (store.getSize() - 1) / SEGMENT_SIZE,
+                    "A record must lie in a single segment");
+            assertTrue(offset > previous);
+            previous = offset;
+        }
+        assertTrue(store.getDeadBytes() > 0, "The segments' unused ends are dead space");
+        assertEquals(JAVA, store.read(previous));
+    }
+
+    @Test
+    void testReleasedRecordsAreCountedAsDead() {
+        long offset = store.append(JAVA);
+        store.release(offset);
+        assertEquals(store.getSize(), store.getDeadBytes());
+    }
+
+    @Test
+    void testReleasedSlotsAreReused() {
+        long javaOffset = store.append(JAVA);
+        store.append(UNTITLED);
+        long size = store.getSize();
+        store.release(javaOffset);
+
+        assertEquals(javaOffset, store.append(JAVA));
+        assertEquals(size, store.getSize());
+        assertEquals(0, store.getDeadBytes());
+    }
+
+    @Test
+    void testTooLargeRecordIsRejected() {
+        Bookmark large = new Bookmark("Large", "https://large.com/" + "a".repeat(SEGMENT_SIZE), null, "Work");
+        assertThrows(IllegalArgumentException.class, () -> store.append(large));
+    }
+
+    @Test
+    void testFileIsDeletedOnClose() throws IOException {
+        store.append(JAVA);
+        store.close();
+        assertFalse(Files.exists(TEST_FILE));
+    }
+}
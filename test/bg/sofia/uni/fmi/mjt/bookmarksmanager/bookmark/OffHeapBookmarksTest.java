@@ -0,0 +1,121 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapBookmarksTest {
+    private static final Path TEST_FILE = Path.of("test" + File.separator + "bg" + File.separator +
+            "sofia" + File.separator + "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "bookmark" + File.separator +
+            "testOffHeapBookmarks");
+    private static final int BOOKMARKS_COUNT = 1_000;
+
+    private BookmarkRecordStore store;
+    private OffHeapBookmarks bookmarks;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new BookmarkRecordStore(TEST_FILE);
+        bookmarks = new OffHeapBookmarks(store);
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void testBookmarksAreFoundByTitle() {
+        for (int i = 0; i < BOOKMARKS_COUNT; i++) {
+            bookmarks.put("Title" + i, bookmark(i));
+        }
+        assertEquals(BOOKMARKS_COUNT, bookmarks.size());
+        for (int i = 0; i < BOOKMARKS_COUNT; i++) {
+            assertEquals(bookmark(i), bookmarks.get("Title" + i));
+        }
+        assertNull(bookmarks.get("Missing"));
+        assertFalse(bookmarks.containsKey(42));
+    }
+
+    @Test
+    void testPutReplacesAndRemoveDeletes() {
+        bookmarks.put("Title1", bookmark(1));
+        Bookmark changed = new Bookmark("Title1", "https://changed.com", Set.of(), "Work");
+
+        assertEquals(bookmark(1), bookmarks.put("Title1", changed));
+        assertEquals(changed, bookmarks.get("Title1"));
+        assertEquals(changed, bookmarks.remove("Title1"));
+        assertTrue(bookmarks.isEmpty());
+        assertTrue(store.getDeadBytes() > 0, "The replaced and removed records are dead");
+    }
+
+    @Test
+    void testRemovedSlotsAreReused() {
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < BOOKMARKS_COUNT; i++) {
+                bookmarks.put("Title" + i, bookmark(i));
+            }
+            for (int i = 0; i < BOOKMARKS_COUNT; i += 2) {
+                bookmarks.remove("Title" + i);
+            }
+            assertEquals(BOOKMARKS_COUNT / 2, bookmarks.size());
+        }
+        assertEquals(bookmark(1), bookmarks.get("Title1"));
+        assertNull(bookmarks.get("Title0"));
+    }
+
+    @Test
+    void testNullTitleIsAKey() {
+        Bookmark untitled = new Bookmark(null, "https://untitled.com", null, "Work");
+        bookmarks.put(null, untitled);
+        assertEquals(untitled, bookmarks.get(null));
+    }
+
+    @Test
+    void testKeyMustBeTheTitle() {
+        assertThrows(IllegalArgumentException.class, () -> bookmarks.put("Other", bookmark(1)));
+    }
+
+    @Test
+    void testGroupOverOffHeapBookmarks() {
+        BookmarksGroup group = new BookmarksGroup("Work", bookmarks);
+        group.addNewBookmark(bookmark(1));
+        group.addNewBookmark(bookmark(2));
+        group.removeBookmarksByUrl(List.of(bookmark(1).url()));
+
+        assertEquals(List.of(bookmark(2)), group.getBookmarks());
+        assertEquals(1, group.getBookmarksCount());
+        assertEquals(bookmark(2), group.getBookmark("Title2"));
+    }
+
+    @Test
+    void testViewsAreASnapshot() {
+        bookmarks.put("Title1", bookmark(1));
+        bookmarks.put("Title2", bookmark(2));
+        List<Bookmark> views = bookmarks.views();
+        bookmarks.remove("Title1");
+
+        assertEquals(Set.of(bookmark(1), bookmark(2)), new HashSet<>(views));
+        assertEquals(Set.of(bookmark(2)), new HashSet<>(bookmarks.values()));
+    }
+
+    private static Bookmark bookmark(int i) {
+        return new Bookmark("Title" + i, "https://example.com/" + i, Set.of("keyword" + i), "Work",
+                Map.of("keyword" + i, i));
+    }
+}
@@ -4,15 +4,29 @@ import bg.sofia.uni.fmi.mjt.bookmarksmanager.BookmarksManager;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidCredentialsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.UserNotLoggedInException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.finder.BookmarksCursor;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportFormat;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.BufferPool;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyBuffer;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyContinuation;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -77,6 +91,13 @@ public class CommandExecutorTest {
         assertEquals(result, expectedResult);
     }
 
+    @Test
+    void testLoginAndRegisterAreKeptOffTheReactors() {
+        assertTrue(CommandExecutor.isBlockingCommand(new Command(LOGIN_CMD, new String[0])));
+        assertTrue(CommandExecutor.isBlockingCommand(new Command(REGISTER_CMD, new String[0])));
+        assertFalse(CommandExecutor.isBlockingCommand(new Command(NEW_GROUP_CMD, new String[0])));
+    }
+
     @Test
     void testLoginCommandThrows() {
         when(manager.login(sc1, testUserName, testUserPassword)).
@@ -149,6 +170,75 @@ public class CommandExecutorTest {
         assertEquals(result, NOT_LOGGED_WARNING);
     }
 
+    @Test
+    void testListPageSuggestsNextPage() {
+        Bookmark bookmark = new Bookmark(testBookmarkTitle, "https://example.com", Set.of("tag"), testGroupName);
+        when(manager.listPage(sc1, null, 1)).thenReturn(List.of(bookmark));
+
+        String result = commandExecutor.execute(new Command(LIST_CMD, new String[] {"--limit", "1"}), sc1);
+
+        assertEquals("Page of bookmarks:" + List.of(bookmark) + System.lineSeparator() +
+                "Next page: list --limit 1 --after " + BookmarksCursor.of(bookmark).encode(), result);
+    }
+
+    @Test
+    void testListPageInvalidLimit() {
+        String [] arguments = {"--limit", "0"};
+        String result = commandExecutor.execute(new Command(LIST_CMD, arguments), sc1);
+
+        assertEquals(String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
+                CommandTemplate.LIST_PAGE.getCommandValue(), LIST_CMD + Arrays.toString(arguments)), result);
+    }
+
+    @Test
+    void testStreamedListIsSentInParts() {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            bookmarks.add(new Bookmark("Title" + i, "https://example.com/" + i, Set.of("tag"), testGroupName));
+        }
+        when(manager.listAll(sc1)).thenReturn(bookmarks);
+        BufferPool pool = new BufferPool(1024, 8);
+        ReplyBuffer reply = new ReplyBuffer(pool, false);
+
+        commandExecutor.execute(new Command(LIST_CMD, new String[] {"--stream"}), sc1, reply);
+        assertEquals("Streaming 300 bookmarks:", decode(reply.finish()));
+
+        StringBuilder streamed = new StringBuilder();
+        int parts = 0;
+        ReplyContinuation continuation = reply.getContinuation();
+        for (ReplyBuffer part = new ReplyBuffer(pool, false); continuation.writeNext(part);
+             part = new ReplyBuffer(pool, false)) {
+            streamed.append(decode(part.finish()));
+            part.release();
+            parts++;
+        }
+        assertEquals(2, parts);
+        assertEquals(bookmarks.stream().map(Bookmark::toString).collect(Collectors.joining()), streamed.toString());
+    }
+
+    @Test
+    void testStreamedSearchNotLoggedInEndsImmediately() {
+        when(manager.streamByTitle(sc1, testBookmarkTitle)).thenThrow(UserNotLoggedInException.class);
+        BufferPool pool = new BufferPool(1024, 8);
+        ReplyBuffer reply = new ReplyBuffer(pool, false);
+
+        commandExecutor.execute(new Command(SEARCH_CMD, new String[] {"--title", testBookmarkTitle, "--stream"}),
+                sc1, reply);
+
+        assertEquals(NOT_LOGGED_WARNING, decode(reply.finish()));
+        assertFalse(reply.getContinuation().writeNext(new ReplyBuffer(pool, false)));
+    }
+
+    @Test
+    void testSearchByQueryJoinsTheQueryWords() {
+        Bookmark bookmark = new Bookmark(testBookmarkTitle, "https://example.com", Set.of("java"), testGroupName);
+        when(manager.searchByQuery(sc1, "java streams", 20)).thenReturn(List.of(bookmark));
+
+        String result = commandExecutor.execute(new Command(SEARCH_CMD, new String[] {"--query", "java", "streams"}), sc1);
+
+        assertEquals(List.of(bookmark).toString(), result);
+    }
+
     @Test
     void testSearchBookmarks() {
         String result = commandExecutor.execute(new Command(SEARCH_CMD, new String[] {}), sc1);
@@ -189,6 +279,14 @@ public class CommandExecutorTest {
         assertEquals(expectedResult, result);
     }
 
+    @Test
+    void testCleanUpAll() {
+        when(manager.cleanUpAll(sc1)).thenReturn("Successful removal of 0 invalid bookmarks");
+
+        String result = commandExecutor.execute(new Command(CLEAN_UP_CMD, new String[] {"--all"}), sc1);
+        assertEquals("Successful removal of 0 invalid bookmarks", result);
+    }
+
     @Test
     void testImportFromChrome() {
         String [] arguments = {testUserName, testUserPassword};
@@ -202,10 +300,36 @@ public class CommandExecutorTest {
 
     }
 
+    @Test
+    void testImportFromFileWithSpacesInItsPath() {
+        when(manager.importFromFile(sc1, Path.of("My Exports/bookmarks.html"), ImportFormat.NETSCAPE))
+                .thenReturn("Bookmarks imported from My Exports/bookmarks.html: 2");
+
+        String result = commandExecutor.execute(new Command("import",
+                new String[] {"--file", "My", "Exports/bookmarks.html", "--format", "netscape"}), sc1);
+
+        assertEquals("Bookmarks imported from My Exports/bookmarks.html: 2", result);
+    }
+
+    @Test
+    void testImportFromFileOfUnknownFormat() {
+        String[] arguments = {"--file", "bookmarks.html", "--format", "opera"};
+
+        assertEquals(String.format(INVALID_ARGUMENTS_FORMAT_MESSAGE,
+                CommandTemplate.IMPORT_FILE.getCommandValue(), "import" + Arrays.toString(arguments)),
+                commandExecutor.execute(new Command("import", arguments), sc1));
+    }
+
     @Test
     void testDisconnectClient() {
         assertEquals(commandExecutor.execute(new
                 Command(DISCONNECT_CMD, new String [] {}), null),
                 "No such a connection to the server!");
     }
+
+    private static String decode(List<ByteBuffer> chunks) {
+        StringBuilder text = new StringBuilder();
+        chunks.forEach(chunk -> text.append(StandardCharsets.UTF_8.decode(chunk)));
+        return text.toString();
+    }
 }
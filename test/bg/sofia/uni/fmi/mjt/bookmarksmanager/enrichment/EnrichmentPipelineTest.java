@@ -0,0 +1,127 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.HttpStatusException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//enriches pages of a local stub server with slow, flaky and missing pages
+public class EnrichmentPipelineTest {
+    private static final Duration BACKOFF = Duration.ofMillis(10);
+    private static final long SLOW_MILLIS = 500;
+    private static final long WAIT_SECONDS = 5;
+    private static final String PAGE = "<html><head><title>Java streams</title></head>" +
+            "<body><p>streams and lambdas</p></body></html>";
+
+    private HttpServer server;
+    private String base;
+    private EnrichmentPipeline pipeline;
+    private final AtomicInteger flakyRequests = new AtomicInteger();
+    private final AtomicInteger missingRequests = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(SLOW_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reply(exchange, 200);
+        });
+        server.createContext("/flaky", exchange ->
+                reply(exchange, flakyRequests.incrementAndGet() == 1 ? 503 : 200));
+        server.createContext("/missing", exchange -> {
+            missingRequests.incrementAndGet();
+            reply(exchange, 404);
+        });
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort();
+        pipeline = newPipeline(10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.close();
+        server.stop(0);
+    }
+
+    @Test
+    void testSubmitDoesNotWaitForThePage() throws InterruptedException {
+        CountDownLatch enriched = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        assertTrue(pipeline.submit(base + "/slow", page -> enriched.countDown(), e -> { }));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS));
+        assertTrue(enriched.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTransientFailureIsRetried() throws Exception {
+        CompletableFuture<EnrichedPage> result = new CompletableFuture<>();
+
+        pipeline.submit(base + "/flaky", result::complete, result::completeExceptionally);
+
+        assertEquals("Java-streams", result.get(WAIT_SECONDS, TimeUnit.SECONDS).title());
+        assertEquals(2, flakyRequests.get());
+    }
+
+    @Test
+    void testMissingPageIsNotRetried() throws Exception {
+        CompletableFuture<Exception> failure = new CompletableFuture<>();
+
+        pipeline.submit(base + "/missing", page -> failure.complete(null), failure::complete);
+
+        assertInstanceOf(HttpStatusException.class, failure.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, missingRequests.get());
+    }
+
+    @Test
+    void testFullPipelineEnrichesInTheCallersThread() {
+        pipeline.close();
+        pipeline = newPipeline(1);
+        AtomicInteger enriched = new AtomicInteger();
+
+        assertTrue(pipeline.submit(base + "/slow", page -> enriched.incrementAndGet(), e -> { }));
+        assertFalse(pipeline.submit(base + "/flaky?b", page -> enriched.incrementAndGet(), e -> { }));
+        assertTrue(enriched.get() >= 1);
+    }
+
+    private EnrichmentPipeline newPipeline(int maxPending) {
+        PageEnricher enricher = new PageEnricher(new HtmlTokenizer(Set.of("and")),
+                PageEnricher.DEFAULT_MAX_ENTRIES, Duration.ZERO, Clock.systemUTC());
+        return new EnrichmentPipeline(enricher, maxPending, 4, 3, BACKOFF);
+    }
+
+    private static void reply(HttpExchange exchange, int status) throws IOException {
+        byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
@@ -0,0 +1,153 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//enriches pages of a local stub server that supports ETag revalidation
+public class PageEnricherTest {
+    private static final Duration FRESH_FOR = Duration.ofMinutes(10);
+    private static final String ETAG = "\"v1\"";
+    private static final String PAGE = "<html><head><title>Java streams</title></head>" +
+            "<body><p>streams streams and lambdas</p></body></html>";
+
+    private final MutableClock clock = new MutableClock();
+    private final AtomicInteger fullFetches = new AtomicInteger();
+    private final AtomicInteger notModifiedReplies = new AtomicInteger();
+    private HttpServer server;
+    private String base;
+    private PageEnricher enricher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/page", this::replyWithPage);
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort();
+        enricher = new PageEnricher(new HtmlTokenizer(Set.of("and")), 2, FRESH_FOR, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testTitleAndKeywordsComeFromOneFetch() {
+        EnrichedPage page = enricher.enrich(base + "/page");
+
+        assertNotNull(page);
+        assertEquals("Java-streams", page.title());
+        assertEquals(2, page.termFrequencies().get("stream"));
+        assertTrue(page.termFrequencies().containsKey("lambda"));
+        assertEquals(1, fullFetches.get());
+    }
+
+    @Test
+    void testFreshPageIsNotFetchedAgainForAnEquivalentUrl() {
+        EnrichedPage first = enricher.enrich(base + "/page#section");
+        EnrichedPage second = enricher.enrich(base.replace("http", "HTTP") + "/page");
+
+        assertSame(first, second);
+        assertEquals(1, fullFetches.get());
+        assertEquals(1, enricher.size());
+    }
+
+    @Test
+    void testStalePageIsRevalidated() {
+        EnrichedPage first = enricher.enrich(base + "/page");
+        clock.advance(FRESH_FOR);
+
+        assertSame(first, enricher.enrich(base + "/page"));
+        assertEquals(1, fullFetches.get());
+        assertEquals(1, notModifiedReplies.get());
+    }
+
+    @Test
+    void testFailedFetchIsNotCached() {
+        assertNull(enricher.enrich(base + "/missing"));
+        assertEquals(0, enricher.size());
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        enricher.enrich(base + "/page?a");
+        enricher.enrich(base + "/page?b");
+        enricher.enrich(base + "/page?c");
+
+        assertEquals(2, enricher.size());
+    }
+
+    @Test
+    void testNormalize() {
+        assertEquals("https://example.com/", PageEnricher.normalize("HTTPS://Example.COM:443#top"));
+        assertEquals("http://example.com:8080/a?b=c", PageEnricher.normalize("http://example.com:8080/a?b=c"));
+        assertEquals("not a url", PageEnricher.normalize(" not a url "));
+    }
+
+    private void replyWithPage(HttpExchange exchange) throws IOException {
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedReplies.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        fullFetches.incrementAndGet();
+        byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -11,12 +11,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.mockito.Mockito;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
 
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.StreamSupport;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.when;
@@ -118,6 +120,25 @@ public class BookmarksFinderTest {
     }
 
 
+    @Test
+    void testAddAndRemoveUpdateLoadedUserWithoutReloading() {
+        assertEquals(3, finder.searchBookmarksByUser("User3", storage).size());
+        Bookmark added = new Bookmark("AssertJ", "https://site.example/assertj",
+                Set.of("testing"), "Learn");
+
+        finder.addBookmark("User3", added);
+        assertEquals(List.of("AssertJ", "Docs: Mockito", "JUnit Guide"),
+                finder.searchBookmarksByGroup("Learn", "User3", storage).stream().map(Bookmark::title).toList());
+        assertEquals(4, finder.searchBookmarksByUser("User3", storage).size());
+        assertEquals(finder.searchBookmarksByUser("User3", storage), finder.getCachedBookmarks().get("User3"));
+
+        finder.removeBookmarks("User3", finder.searchBookmarksByGroup("Build", "User3", storage));
+        Assertions.assertTrue(finder.searchBookmarksByGroup("Build", "User3", storage).isEmpty());
+        assertEquals(3, finder.searchBookmarksByUser("User3", storage).size());
+
+        verify(storage, times(1)).getUsers();
+    }
+
     @Test
     void testSearchBookmarksByTags_containsAllRequiredTags() {
         List<Bookmark> result = finder.searchBookmarksByTags("User2",
@@ -132,6 +153,78 @@ public class BookmarksFinderTest {
         Assertions.assertTrue(result.isEmpty());
     }
 
+    @Test
+    void testSearchBookmarksByTags_matchesStemmedAndCaseInsensitiveTags() {
+        List<Bookmark> result = finder.searchBookmarksByTags("User2",
+                Set.of("Books", "games"), storage);
+        assertEquals(linksOfUser2, result);
+    }
+
+    @Test
+    void testSearchBookmarksByTags_indexFollowsAddedAndRemovedBookmarks() {
+        assertEquals(List.of(b1), finder.searchBookmarksByTags("User1", Set.of("java"), storage));
+
+        Bookmark added = new Bookmark("Java-docs", "https://docs.oracle.com/en/java/",
+                Set.of("java", "docs"), "Educational");
+        finder.addBookmark("User1", added);
+        assertEquals(List.of(added, b1), finder.searchBookmarksByTags("User1", Set.of("java"), storage));
+
+        finder.removeBookmarks("User1", List.of(b1));
+        assertEquals(List.of(added), finder.searchBookmarksByTags("User1", Set.of("java"), storage));
+        Assertions.assertTrue(finder.searchBookmarksByTags("User1", Set.of("mjt"), storage).isEmpty());
+    }
+
+    @Test
+    void testSearchBookmarksByTags_replacedBookmarkIsUnindexed() {
+        finder.searchBookmarksByTags("User2", Set.of("book"), storage);
+        Bookmark replacement = new Bookmark("Ozone", "https://www.ozone.bg/",
+                Set.of("electronics"), "OnlineStores");
+        finder.addBookmark("User2", replacement);
+
+        Assertions.assertTrue(finder.searchBookmarksByTags("User2", Set.of("book"), storage).isEmpty());
+        assertEquals(List.of(replacement), finder.searchBookmarksByTags("User2", Set.of("electronics"), storage));
+    }
+
+    @Test
+    void testBatchOfAddsAndRemovesKeepsTheOrderAndTheLatestReplacement() {
+        List<Bookmark> before = finder.searchBookmarksByUser("User1", storage);
+        Bookmark first = new Bookmark("Zig", "https://ziglang.org/", Set.of("zig"), "Educational");
+        Bookmark replaced = new Bookmark("Zig", "https://ziglang.org/learn/", Set.of("zig"), "Educational");
+        Bookmark other = new Bookmark("Ada", "https://ada-lang.io/", Set.of("ada"), "Educational");
+        finder.addBookmark("User1", first);
+        finder.addBookmark("User1", other);
+        finder.addBookmark("User1", replaced);
+
+        List<Bookmark> group = finder.searchBookmarksByGroup("Educational", "User1", storage);
+        assertEquals(List.of(other, b1, replaced), group);
+        assertEquals(before.size() + 2, finder.searchBookmarksByUser("User1", storage).size());
+        assertEquals(List.of(replaced), finder.searchBookmarksByTags("User1", Set.of("zig"), storage));
+
+        finder.removeBookmarks("User1", List.of(other, b1, other));
+        assertEquals(List.of(replaced), finder.searchBookmarksByGroup("Educational", "User1", storage));
+        assertEquals(3, group.size(), "A snapshot should not change");
+        assertEquals(before.size(), finder.searchBookmarksByUser("User1", storage).size());
+    }
+
+    @Test
+    void testStreamBookmarksByTagsAndTitle_agreeWithSearches() {
+        Bookmark added = new Bookmark("Java-docs", "https://docs.oracle.com/en/java/",
+                Set.of("java", "docs"), "Educational");
+        finder.searchBookmarksByUser("User1", storage); //added bookmarks only update a loaded user
+        finder.addBookmark("User1", added);
+
+        BookmarksMatches byTags = finder.streamBookmarksByTags("User1", Set.of("Java"), storage);
+        assertEquals(2, byTags.count());
+        assertEquals(finder.searchBookmarksByTags("User1", Set.of("Java"), storage),
+                StreamSupport.stream(byTags.spliterator(), false).toList());
+
+        BookmarksMatches byTitle = finder.streamBookmarksByTitle("User1", "GIT", storage);
+        assertEquals(2, byTitle.count());
+        assertEquals(finder.searchBookmarksByTitle("User1", "GIT", storage),
+                StreamSupport.stream(byTitle.spliterator(), false).toList());
+        assertEquals(0, finder.streamBookmarksByTags("User1", Set.of("java", "missing"), storage).count());
+    }
+
     @Test
     void testSearchBookmarksByTitle_caseInsensitiveAndPartial() {
         List<Bookmark> result = finder.searchBookmarksByTitle("User1",
@@ -144,6 +237,80 @@ public class BookmarksFinderTest {
     }
 
 
+    @Test
+    void testSearchBookmarksByTitle_shortAndLongQueries() {
+        assertEquals(List.of(b2, b1), finder.searchBookmarksByTitle("User1", "hu", storage));
+        assertEquals(List.of(b1), finder.searchBookmarksByTitle("User1", "COURSE-GIT", storage));
+        Assertions.assertTrue(finder.searchBookmarksByTitle("User1", "gitlab", storage).isEmpty());
+    }
+
+    @Test
+    void testSearchBookmarksByTitle_indexFollowsAddedAndRemovedBookmarks() {
+        Assertions.assertTrue(finder.searchBookmarksByTitle("User2", "wiki", storage).isEmpty());
+
+        Bookmark added = new Bookmark("Wikipedia", "https://wikipedia.org/", Set.of("wiki"), "Reference");
+        Bookmark untitled = new Bookmark(null, "https://unreachable.example/", null, "Reference");
+        finder.addBookmark("User2", added);
+        finder.addBookmark("User2", untitled);
+        assertEquals(List.of(added), finder.searchBookmarksByTitle("User2", "wiki", storage));
+
+        finder.removeBookmarks("User2", List.of(added, untitled));
+        Assertions.assertTrue(finder.searchBookmarksByTitle("User2", "wiki", storage).isEmpty());
+        assertEquals(linksOfUser2, finder.searchBookmarksByTitle("User2", "zon", storage));
+    }
+
+    @Test
+    void testSearchBookmarksByQuery_ranksByRelevance() {
+        assertEquals(List.of(b1), finder.searchBookmarksByQuery("User1", "Java", 10, storage));
+        Bookmark javaDocs = new Bookmark("Java-docs", "https://docs.oracle.com/en/java/",
+                Set.of("java", "api"), "Educational", Map.of("java", 12, "api", 3));
+        Bookmark javaBlog = new Bookmark("Some-blog", "https://blog.example/",
+                Set.of("java", "coffee"), "Educational", Map.of("java", 1, "coffee", 9));
+        finder.addBookmark("User1", javaDocs);
+        finder.addBookmark("User1", javaBlog);
+
+        assertEquals(List.of(javaDocs, b1, javaBlog), finder.searchBookmarksByQuery("User1", "Java", 10, storage));
+        assertEquals(List.of(javaDocs), finder.searchBookmarksByQuery("User1", "java", 1, storage));
+        assertEquals(List.of(b2, b1), finder.searchBookmarksByQuery("User1", "github", 10, storage));
+        Assertions.assertTrue(finder.searchBookmarksByQuery("User1", "kotlin", 10, storage).isEmpty());
+    }
+
+    @Test
+    void testSearchBookmarksByQuery_indexFollowsRemovedBookmarks() {
+        assertEquals(List.of(b3), finder.searchBookmarksByQuery("User2", "ozone books", 10, storage));
+        finder.removeBookmarks("User2", List.of(b3));
+        Assertions.assertTrue(finder.searchBookmarksByQuery("User2", "ozone books", 10, storage).isEmpty());
+
+        finder.addBookmark("User2", b3);
+        assertEquals(List.of(b3), finder.searchBookmarksByQuery("User2", "gaming", 10, storage));
+    }
+
+    @Test
+    void testSearchBookmarksPage_walksUserBookmarksInOrder() {
+        List<Bookmark> first = finder.searchBookmarksPage("User3", null, 2, storage);
+        assertEquals(List.of("CI Pipelines", "Docs: Mockito"), first.stream().map(Bookmark::title).toList());
+
+        BookmarksCursor cursor = BookmarksCursor.decode(BookmarksCursor.of(first.getLast()).encode());
+        List<Bookmark> second = finder.searchBookmarksPage("User3", cursor, 2, storage);
+        assertEquals(List.of("JUnit Guide"), second.stream().map(Bookmark::title).toList());
+
+        Assertions.assertTrue(finder.searchBookmarksPage("User3",
+                BookmarksCursor.of(second.getLast()), 2, storage).isEmpty());
+    }
+
+    @Test
+    void testSearchBookmarksPage_cursorOfRemovedBookmarkStartsAfterIt() {
+        BookmarksCursor removed = new BookmarksCursor("Learn", "Gone");
+        List<Bookmark> page = finder.searchBookmarksPage("User3", removed, 10, storage);
+        assertEquals(List.of("JUnit Guide"), page.stream().map(Bookmark::title).toList());
+    }
+
+    @Test
+    void testBookmarksCursor_invalidTokenThrows() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BookmarksCursor.decode("not a cursor!"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BookmarksCursor.decode("bm9zZXBhcmF0b3I"));
+    }
+
     @Test
     void testInvalidateUserCache_removesOnlyThatUser() {
         Assertions.assertTrue(finder.getCachedBookmarks().containsKey("User2"));
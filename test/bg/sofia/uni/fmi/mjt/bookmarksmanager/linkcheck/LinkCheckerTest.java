@@ -0,0 +1,125 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//probes a local stub server with working, missing, slow and failing endpoints
+public class LinkCheckerTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final long SLOW_MILLIS = 300;
+    private static final int SLOW_LINKS = 16;
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/ok", exchange -> reply(exchange, 200, null));
+        server.createContext("/missing", exchange -> reply(exchange, 404, null));
+        server.createContext("/no-head", exchange -> {
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                reply(exchange, 405, null);
+            } else {
+                reply(exchange, "bytes=0-0".equals(exchange.getRequestHeaders().getFirst("Range")) ? 206 : 500, null);
+            }
+        });
+        server.createContext("/redirect", exchange -> reply(exchange, 301, "/ok"));
+        server.createContext("/redirect-to-missing", exchange -> reply(exchange, 302, "/missing"));
+        server.createContext("/loop", exchange -> reply(exchange, 302, "/loop"));
+        server.createContext("/failing", exchange -> reply(exchange, 503, null));
+        server.createContext("/slow", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(SLOW_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            reply(exchange, 200, null);
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testStatusesAreClassified() {
+        LinkChecker checker = new LinkChecker(8, 8, TIMEOUT);
+        Map<String, LinkStatus> statuses = checker.check(List.of(base + "/ok", base + "/missing",
+                base + "/no-head", base + "/redirect", base + "/redirect-to-missing", base + "/loop",
+                base + "/failing", "not a url", "http://127.0.0.1:1/closed"));
+
+        assertEquals(LinkStatus.ALIVE, statuses.get(base + "/ok"));
+        assertEquals(LinkStatus.DEAD, statuses.get(base + "/missing"));
+        assertEquals(LinkStatus.ALIVE, statuses.get(base + "/no-head"), "A refused HEAD falls back to a GET");
+        assertEquals(LinkStatus.ALIVE, statuses.get(base + "/redirect"));
+        assertEquals(LinkStatus.DEAD, statuses.get(base + "/redirect-to-missing"));
+        assertEquals(LinkStatus.DEAD, statuses.get(base + "/loop"));
+        assertEquals(LinkStatus.UNREACHABLE, statuses.get(base + "/failing"));
+        assertEquals(LinkStatus.DEAD, statuses.get("not a url"));
+        assertEquals(LinkStatus.UNREACHABLE, statuses.get("http://127.0.0.1:1/closed"));
+    }
+
+    @Test
+    void testSlowLinksAreProbedConcurrently() {
+        LinkChecker checker = new LinkChecker(SLOW_LINKS, SLOW_LINKS, TIMEOUT);
+        long start = System.nanoTime();
+        Map<String, LinkStatus> statuses = checker.check(slowLinks());
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertEquals(SLOW_LINKS, statuses.size());
+        assertTrue(statuses.values().stream().allMatch(LinkStatus.ALIVE::equals));
+        assertTrue(elapsedMillis < SLOW_LINKS * SLOW_MILLIS / 2,
+                "Probing one link after another would take " + SLOW_LINKS * SLOW_MILLIS + "ms, took " + elapsedMillis);
+    }
+
+    @Test
+    void testPerHostLimitIsKept() {
+        int maxPerHost = 3;
+        LinkChecker checker = new LinkChecker(SLOW_LINKS, maxPerHost, TIMEOUT);
+        checker.check(slowLinks());
+
+        assertTrue(maxInFlight.get() <= maxPerHost,
+                "At most " + maxPerHost + " probes may reach a host at a time, were " + maxInFlight.get());
+    }
+
+    private List<String> slowLinks() {
+        List<String> links = new ArrayList<>();
+        for (int i = 0; i < SLOW_LINKS; i++) {
+            links.add(base + "/slow?page=" + i);
+        }
+        return links;
+    }
+
+    private static void reply(HttpExchange exchange, int status, String location) throws IOException {
+        if (location != null) {
+            exchange.getResponseHeaders().add("Location", location);
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+}
@@ -0,0 +1,107 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.linkcheck;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class UrlHealthCacheTest {
+    private static final Duration HEALTHY_TTL = Duration.ofHours(24);
+    private static final Duration BROKEN_TTL = Duration.ofHours(1);
+    private static final String ALIVE_URL = "https://alive.com";
+    private static final String DEAD_URL = "https://dead.com";
+
+    private final List<String> probed = new ArrayList<>();
+    private final MutableClock clock = new MutableClock();
+    private UrlHealthCache cache;
+
+    @BeforeEach
+    void setUp() {
+        LinkProber prober = urls -> {
+            Map<String, LinkStatus> statuses = new HashMap<>();
+            for (String url : urls) {
+                probed.add(url);
+                statuses.put(url, url.equals(ALIVE_URL) ? LinkStatus.ALIVE : LinkStatus.DEAD);
+            }
+            return statuses;
+        };
+        cache = new UrlHealthCache(prober, HEALTHY_TTL, BROKEN_TTL, 2, clock);
+    }
+
+    @Test
+    void testKnownLinksAreNotProbedAgain() {
+        cache.check(List.of(ALIVE_URL, DEAD_URL));
+        Map<String, LinkStatus> statuses = cache.check(List.of(ALIVE_URL, DEAD_URL));
+
+        assertEquals(Map.of(ALIVE_URL, LinkStatus.ALIVE, DEAD_URL, LinkStatus.DEAD), statuses);
+        assertEquals(2, probed.size());
+    }
+
+    @Test
+    void testBrokenLinksExpireSooner() {
+        cache.check(List.of(ALIVE_URL, DEAD_URL));
+        clock.advance(BROKEN_TTL);
+        cache.check(List.of(ALIVE_URL, DEAD_URL));
+        assertEquals(List.of(DEAD_URL), probed.subList(2, probed.size()));
+
+        clock.advance(HEALTHY_TTL);
+        cache.check(List.of(ALIVE_URL));
+        assertEquals(ALIVE_URL, probed.getLast());
+    }
+
+    @Test
+    void testFailuresInARowAreCounted() {
+        for (int i = 0; i < 3; i++) {
+            cache.check(Set.of(DEAD_URL));
+            clock.advance(BROKEN_TTL);
+        }
+        assertEquals(3, cache.getHealth(DEAD_URL).failuresCount());
+        cache.check(Set.of(ALIVE_URL));
+        assertEquals(0, cache.getHealth(ALIVE_URL).failuresCount());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntriesAreDropped() {
+        cache.check(List.of(ALIVE_URL, DEAD_URL));
+        cache.check(List.of(ALIVE_URL));
+        cache.check(List.of("https://third.com"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.getHealth(DEAD_URL));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
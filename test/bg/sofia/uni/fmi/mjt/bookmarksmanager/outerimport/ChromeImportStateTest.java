@@ -0,0 +1,64 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChromeImportStateTest {
+    private static final ChromeImportState.Node GITHUB =
+            new ChromeImportState.Node("bar", "Github", "https://github.com/");
+    private static final ChromeImportState.Node JSOUP =
+            new ChromeImportState.Node("bar", "Jsoup", "https://jsoup.org/");
+    private static final ChromeImportState.Node GSON =
+            new ChromeImportState.Node("other", "Gson", "https://github.com/google/gson");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testDeltaHasTheAddedChangedAndRemovedNodes() {
+        ChromeImportState previous = new ChromeImportState("c1", Map.of("1", GITHUB, "2", JSOUP));
+        ChromeImportState.Node movedJsoup = new ChromeImportState.Node("other", "Jsoup", JSOUP.url());
+        ChromeImportState current = new ChromeImportState("c2", Map.of("2", movedJsoup, "3", GSON));
+
+        ChromeImportState.Delta delta = previous.deltaTo(current, List.of("bar", "other"));
+
+        assertEquals(Set.of(movedJsoup, GSON), Set.copyOf(delta.added()));
+        assertEquals(Set.of(GITHUB, JSOUP), Set.copyOf(delta.removed()));
+        assertTrue(previous.deltaTo(previous, List.of("bar")).isEmpty());
+    }
+
+    @Test
+    void testSavedStateIsLoaded() throws IOException {
+        Path path = directory.resolve("state");
+        new ChromeImportState("c1", Map.of("1", GITHUB)).save(path);
+
+        ChromeImportState loaded = ChromeImportState.load(path);
+
+        assertTrue(loaded.hasChecksum("c1"));
+        assertTrue(new ChromeImportState("c2", Map.of("1", GITHUB)).deltaTo(loaded, List.of()).isEmpty());
+    }
+
+    @Test
+    void testMissingOrDamagedStateIsEmpty() throws IOException {
+        Path path = directory.resolve("state");
+        assertNull(ChromeImportState.load(path).getChecksum());
+
+        Files.writeString(path, "{not json");
+
+        assertFalse(ChromeImportState.load(path).hasChecksum(null));
+        assertEquals(1, new ChromeImportState(null, Map.of()).deltaTo(
+                new ChromeImportState("c1", Map.of("1", GITHUB)), List.of()).added().size());
+    }
+}
@@ -7,7 +7,10 @@ import org.junit.jupiter.api.Test;
 import org.mockito.MockedConstruction;
 
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -96,6 +99,44 @@ public class ChromeImporterTest {
         }
     }
 
+    @Test
+    void testReadVisitsBookmarksWhateverTheOrderOfTheirFields() throws IOException {
+        String json = """
+            {
+              "checksum": "abc",
+              "roots": {
+                "bookmark_bar": {
+                  "children": [
+                    { "children": [
+                        { "date_added": "1", "name": "GitHub", "type": "url", "url": "https://github.com" }
+                      ], "name": "Dev", "type": "folder" },
+                    { "url": "https://www.google.com", "type": "url", "name": "Google" }
+                  ],
+                  "name": "Bookmarks bar", "type": "folder"
+                },
+                "sync_transaction_version": "1"
+              },
+              "version": 1
+            }
+            """;
+        List<String> visited = new ArrayList<>();
+
+        ChromeImporter.read(new StringReader(json), new BookmarksSource.Visitor() {
+            @Override
+            public void group(String groupName) {
+                visited.add(groupName);
+            }
+
+            @Override
+            public void bookmark(String groupName, String title, String url) {
+                visited.add(groupName + "/" + title + "=" + url);
+            }
+        });
+
+        assertEquals(List.of("bookmark_bar", "bookmark_bar/GitHub=https://github.com",
+                "bookmark_bar/Google=https://www.google.com"), visited);
+    }
+
     @Test
     void testImportChromeGroupsReturnsNullOnUnsupportedOs() {
         System.setProperty("os.name", "Plan9");
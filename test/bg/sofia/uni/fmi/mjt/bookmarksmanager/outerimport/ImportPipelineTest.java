@@ -0,0 +1,138 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.PageEnricher;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer.HtmlTokenizer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//imports bookmarks whose pages are served, slowly, by a local stub server
+public class ImportPipelineTest {
+    private static final long SLOW_MILLIS = 100;
+    private static final int MAX_PER_HOST = 2;
+    private static final String PAGE = "<html><head><title>Page</title></head>" +
+            "<body><p>streams and lambdas</p></body></html>";
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/page", this::replySlowly);
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testBookmarksAreEnrichedInParallelWithinTheHostLimit() throws IOException {
+        int bookmarksCount = 8;
+        BookmarksSource source = visitor -> {
+            visitor.group("Dev");
+            for (int i = 0; i < bookmarksCount; i++) {
+                visitor.bookmark("Dev", "Page " + i, base + "/page?" + i);
+            }
+            visitor.bookmark("Dev", "Missing", base + "/missing");
+        };
+        List<int[]> updates = new ArrayList<>();
+
+        var groups = newPipeline().run(source, (enriched, found) -> {
+            synchronized (updates) {
+                updates.add(new int[] {enriched, found});
+            }
+        });
+
+        BookmarksGroup dev = groups.get("Dev");
+        assertEquals(bookmarksCount + 1, dev.getBookmarksCount());
+        assertTrue(dev.getBookmark("Page 0").keywords().contains("stream"));
+        assertNull(dev.getBookmark("Missing").keywords(), "A missing page should leave no keywords");
+        assertEquals(MAX_PER_HOST, maxInFlight.get());
+        int[] last = updates.getLast();
+        assertEquals(bookmarksCount + 1, last[0]);
+        assertEquals(bookmarksCount + 1, last[1]);
+    }
+
+    @Test
+    void testGroupsKeepTheirReadingOrder() throws IOException {
+        BookmarksSource source = visitor -> {
+            visitor.group("b");
+            visitor.group("a");
+            visitor.group("c");
+        };
+
+        assertEquals(List.of("b", "a", "c"),
+                List.copyOf(newPipeline().run(source, (enriched, found) -> { }).keySet()));
+    }
+
+    @Test
+    void testBookmarksAreHandedOverInBoundedBatches() throws IOException {
+        int bookmarksCount = 10;
+        int batchSize = 3;
+        BookmarksSource source = visitor -> {
+            visitor.group("Dev");
+            for (int i = 0; i < bookmarksCount; i++) {
+                visitor.bookmark("Dev", "Page " + i, base + "/missing?" + i);
+            }
+        };
+        List<Integer> batchSizes = new ArrayList<>();
+
+        int found = newPipeline().run(source, batchSize, batch -> batchSizes.add(batch.values().stream()
+                .mapToInt(BookmarksGroup::getBookmarksCount).sum()), (enriched, foundCount) -> { });
+
+        assertEquals(bookmarksCount, found);
+        assertEquals(List.of(3, 3, 3, 1), batchSizes);
+    }
+
+    private ImportPipeline newPipeline() {
+        PageEnricher enricher = new PageEnricher(new HtmlTokenizer(Set.of("and")),
+                PageEnricher.DEFAULT_MAX_ENTRIES, Duration.ZERO, Clock.systemUTC());
+        return new ImportPipeline(enricher, 16, MAX_PER_HOST, 4);
+    }
+
+    private void replySlowly(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(SLOW_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
@@ -0,0 +1,56 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class NetscapeImporterTest {
+    private static final String EXPORT = """
+            <!DOCTYPE NETSCAPE-Bookmark-file-1>
+            <!-- This is an automatically generated file.
+                 It will be read and overwritten. <DL> -> DO NOT EDIT! -->
+            <META HTTP-EQUIV="Content-Type" CONTENT="text/html; charset=UTF-8">
+            <TITLE>Bookmarks</TITLE>
+            <H1>Bookmarks</H1>
+            <DL><p>
+                <DT><H3 ADD_DATE="1700000000" PERSONAL_TOOLBAR_FOLDER="true">Bookmarks bar</H3>
+                <DL><p>
+                    <DT><A HREF="https://github.com/" ADD_DATE="1700000000" ICON="data:image/png;base64,i>">GitHub</A>
+                    <DT><H3>Java &amp; JVM</H3>
+                    <DL><p>
+                        <DT><a href='https://jsoup.org/?a=1&amp;b=2'>jsoup: Java HTML parser</a>
+                    </DL><p>
+                </DL><p>
+                <DT><A HREF="https://example.com/"></A>
+            </DL><p>
+            """;
+
+    @Test
+    void testFoldersAreReadAsTheGroupsOfTheirBookmarks() throws IOException {
+        List<String> visited = new ArrayList<>();
+
+        NetscapeImporter.read(new StringReader(EXPORT), new BookmarksSource.Visitor() {
+            @Override
+            public void group(String groupName) {
+                visited.add(groupName);
+            }
+
+            @Override
+            public void bookmark(String groupName, String title, String url) {
+                visited.add(groupName + " | " + title + " | " + url);
+            }
+        });
+
+        assertEquals(List.of(
+                "Bookmarks-bar",
+                "Bookmarks-bar | GitHub | https://github.com/",
+                "Bookmarks-bar | jsoup: Java HTML parser | https://jsoup.org/?a=1&b=2",
+                NetscapeImporter.DEFAULT_GROUP_NAME,
+                NetscapeImporter.DEFAULT_GROUP_NAME + " | https://example.com/ | https://example.com/"), visited);
+    }
+}
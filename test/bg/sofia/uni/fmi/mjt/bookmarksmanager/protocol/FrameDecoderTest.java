@@ -0,0 +1,62 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.InvalidFrameException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameDecoderTest {
+
+    @Test
+    void testDecodeWholeFrame() {
+        FrameDecoder decoder = new FrameDecoder();
+        assertEquals(List.of("list"), decoder.decode(Frames.encode("list")));
+    }
+
+    @Test
+    void testDecodeFrameSplitAcrossReads() {
+        FrameDecoder decoder = new FrameDecoder();
+        ByteBuffer frame = Frames.encode("search --title github");
+
+        assertTrue(decoder.decode(frame.slice(0, 2)).isEmpty());
+        assertTrue(decoder.decode(frame.slice(2, 7)).isEmpty());
+        assertEquals(List.of("search --title github"),
+                decoder.decode(frame.slice(9, frame.remaining() - 9)));
+    }
+
+    @Test
+    void testDecodeCoalescedFrames() {
+        FrameDecoder decoder = new FrameDecoder();
+        ByteBuffer first = Frames.encode("list");
+        ByteBuffer second = Frames.encode("cleanup");
+        ByteBuffer both = ByteBuffer.allocate(first.remaining() + second.remaining())
+                .put(first).put(second).flip();
+
+        assertEquals(List.of("list", "cleanup"), decoder.decode(both));
+    }
+
+    @Test
+    void testDecodeMultiByteCharacters() {
+        FrameDecoder decoder = new FrameDecoder();
+        assertEquals(List.of("new-group Книги"), decoder.decode(Frames.encode("new-group Книги")));
+    }
+
+    @Test
+    void testDecodeFrameLargerThanInitialCapacity() {
+        FrameDecoder decoder = new FrameDecoder();
+        String longCommand = "search --tags " + "java ".repeat(1000);
+        assertEquals(List.of(longCommand), decoder.decode(Frames.encode(longCommand)));
+    }
+
+    @Test
+    void testDecodeThrowsWhenFrameTooLarge() {
+        FrameDecoder decoder = new FrameDecoder(8);
+        assertThrows(InvalidFrameException.class, () -> decoder.decode(Frames.encode("too long command")),
+                "InvalidFrameException expected when the frame exceeds the maximal size.");
+    }
+}
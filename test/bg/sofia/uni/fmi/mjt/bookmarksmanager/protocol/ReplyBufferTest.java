@@ -0,0 +1,90 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplyBufferTest {
+    private static final int CHUNK_SIZE = 16;
+    private static final int CHUNKS_COUNT = 8;
+
+    @Test
+    void testRawReplySpanningSeveralChunks() {
+        BufferPool pool = new BufferPool(CHUNK_SIZE, CHUNKS_COUNT);
+        ReplyBuffer reply = new ReplyBuffer(pool, false);
+        String text = "Successful creation of bookmarks group Книги";
+
+        List<ByteBuffer> chunks = reply.append(text).finish();
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(text, decode(chunks));
+    }
+
+    @Test
+    void testFramedReplyHasLengthHeader() {
+        BufferPool pool = new BufferPool(CHUNK_SIZE, CHUNKS_COUNT);
+        String text = "List of all bookmarks:[]";
+
+        ByteBuffer whole = concat(new ReplyBuffer(pool, true).append(text).finish());
+
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, whole.getInt());
+        assertEquals(text, StandardCharsets.UTF_8.decode(whole).toString());
+    }
+
+    @Test
+    void testReleaseReturnsChunksToPool() {
+        BufferPool pool = new BufferPool(CHUNK_SIZE, CHUNKS_COUNT);
+        ReplyBuffer reply = new ReplyBuffer(pool, false);
+        reply.append("x".repeat(CHUNK_SIZE * 3)).finish();
+        assertEquals(CHUNKS_COUNT - 3, pool.getFreeChunksCount());
+
+        reply.release();
+        assertEquals(CHUNKS_COUNT, pool.getFreeChunksCount());
+    }
+
+    @Test
+    void testExhaustedPoolFallsBackToHeapChunks() {
+        BufferPool pool = new BufferPool(CHUNK_SIZE, 1);
+        List<ByteBuffer> chunks = new ReplyBuffer(pool, false).append("x".repeat(CHUNK_SIZE * 2)).finish();
+
+        assertTrue(chunks.get(0).isDirect());
+        assertFalse(chunks.get(1).isDirect());
+    }
+
+    @Test
+    void testBookmarkEncodedLikeToString() throws IOException {
+        Bookmark bookmark = new Bookmark("Github", "https://github.com/",
+                new LinkedHashSet<>(List.of("github", "branch")), "DevOps");
+        BufferPool pool = new BufferPool(CHUNK_SIZE, CHUNKS_COUNT);
+        ReplyBuffer reply = new ReplyBuffer(pool, false);
+
+        bookmark.appendTo(reply);
+
+        assertEquals(bookmark.toString(), decode(reply.finish()));
+        assertEquals("Bookmark info: title: Ozone" + System.lineSeparator() +
+                "url: https://www.ozone.bg/" + System.lineSeparator() +
+                "keywords: [book]" + System.lineSeparator() +
+                "groupName: OnlineStores" + System.lineSeparator(),
+                new Bookmark("Ozone", "https://www.ozone.bg/", Set.of("book"), "OnlineStores").toString());
+    }
+
+    private static String decode(List<ByteBuffer> chunks) {
+        return StandardCharsets.UTF_8.decode(concat(chunks)).toString();
+    }
+
+    private static ByteBuffer concat(List<ByteBuffer> chunks) {
+        ByteBuffer whole = ByteBuffer.allocate(chunks.stream().mapToInt(ByteBuffer::remaining).sum());
+        chunks.forEach(whole::put);
+        return whole.flip();
+    }
+}
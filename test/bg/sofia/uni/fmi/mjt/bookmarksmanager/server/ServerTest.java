@@ -0,0 +1,195 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.Command;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.Frames;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ProtocolMode;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.protocol.ReplyBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServerTest {
+    private static final String HOST = "localhost";
+    private static final long SLOW_PAGE_MILLIS = 1000;
+    private static final int SLOW_CLIENTS = 16;
+    private static final int LIST_REQUESTS = 200;
+    private static final long MAX_P99_LIST_MILLIS = 200;
+    private static final int LARGE_REPLY_SIZE = 100_000;
+    private static final int STREAMED_PARTS = 3;
+
+    private CommandExecutor executor;
+    private Server server;
+
+    @BeforeEach
+    void setUp() {
+        executor = mock(CommandExecutor.class);
+        when(executor.execute(any(Command.class), any(SocketChannel.class))).thenAnswer(invocation -> {
+            Command cmd = invocation.getArgument(0);
+            return switch (cmd.command()) {
+                case "add-to" -> {
+                    Thread.sleep(SLOW_PAGE_MILLIS); //simulates fetching a slow page
+                    yield "added " + cmd.arguments()[1];
+                }
+                case "echo" -> cmd.arguments()[0];
+                case "big" -> "x".repeat(LARGE_REPLY_SIZE);
+                default -> "listed";
+            };
+        });
+        doAnswer(invocation -> {
+            ReplyBuffer reply = invocation.getArgument(2);
+            Command cmd = invocation.getArgument(0);
+            if ("stream".equals(cmd.command())) {
+                int[] sentParts = {0};
+                reply.append("parts:");
+                reply.continueWith(part -> sentParts[0] < STREAMED_PARTS &&
+                        part.append("part" + sentParts[0]++) != null);
+                return null;
+            }
+            reply.append(executor.execute(cmd, invocation.getArgument(1)));
+            return null;
+        }).when(executor).execute(any(Command.class), any(SocketChannel.class), any(ReplyBuffer.class));
+        server = new Server(0, 2, SLOW_CLIENTS, ProtocolMode.FRAMED, executor);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testFastCommandIsAnsweredInline() throws IOException {
+        try (SocketChannel client = connect()) {
+            assertEquals("listed", send(client, "list"));
+        }
+    }
+
+    @Test
+    void testBlockingCommandReplyIsDelivered() throws IOException {
+        try (SocketChannel client = connect()) {
+            assertEquals("added https://slow.example", send(client, "add-to Group1 https://slow.example"));
+            assertEquals("listed", send(client, "list"));
+        }
+    }
+
+    @Test
+    void testReplyLargerThanReadBufferIsNotTruncated() throws IOException {
+        try (SocketChannel client = connect()) {
+            assertEquals(LARGE_REPLY_SIZE, send(client, "big").length());
+        }
+    }
+
+    @Test
+    void testPipelinedRepliesKeepCommandsOrder() throws IOException {
+        try (SocketChannel client = connect()) {
+            Frames.writeFrame(client, "echo 1");
+            Frames.writeFrame(client, "add-to Group1 https://slow.example");
+            Frames.writeFrame(client, "echo 3");
+
+            assertEquals("1", Frames.readFrame(client));
+            assertEquals("added https://slow.example", Frames.readFrame(client));
+            assertEquals("3", Frames.readFrame(client));
+        }
+    }
+
+    @Test
+    void testStreamedReplyIsSentInFramesEndingWithEmptyOne() throws IOException {
+        try (SocketChannel client = connect()) {
+            Frames.writeFrame(client, "stream");
+            Frames.writeFrame(client, "echo after");
+
+            assertEquals("parts:", Frames.readFrame(client));
+            for (int i = 0; i < STREAMED_PARTS; i++) {
+                assertEquals("part" + i, Frames.readFrame(client));
+            }
+            assertEquals("", Frames.readFrame(client));
+            assertEquals("after", Frames.readFrame(client));
+        }
+    }
+
+    @Test
+    void testCoalescedAndSplitFramesAreDecoded() throws IOException {
+        ByteBuffer first = Frames.encode("echo first");
+        ByteBuffer second = Frames.encode("echo second");
+        ByteBuffer both = ByteBuffer.allocate(first.remaining() + second.remaining()).put(first).put(second).flip();
+
+        try (SocketChannel client = connect()) {
+            client.write(both.slice(0, 3)); //not even a whole header
+            client.write(both.position(3));
+            assertEquals("first", Frames.readFrame(client));
+            assertEquals("second", Frames.readFrame(client));
+        }
+    }
+
+    @Test
+    void testListLatencyStaysFlatWhileSlowAddsRun() throws Exception {
+        ExecutorService slowClients = Executors.newFixedThreadPool(SLOW_CLIENTS);
+        CountDownLatch connected = new CountDownLatch(SLOW_CLIENTS);
+        for (int i = 0; i < SLOW_CLIENTS; i++) {
+            slowClients.submit(() -> {
+                try (SocketChannel client = connect()) {
+                    connected.countDown();
+                    for (int j = 0; j < 3; j++) {
+                        send(client, "add-to Group1 https://slow.example");
+                    }
+                }
+                return null;
+            });
+        }
+        connected.await();
+
+        List<Long> latencies = new ArrayList<>();
+        try (SocketChannel client = connect()) {
+            for (int i = 0; i < LIST_REQUESTS; i++) {
+                long start = System.nanoTime();
+                assertEquals("listed", send(client, "list"));
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        slowClients.shutdownNow();
+
+        Collections.sort(latencies);
+        long p99 = latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+        assertTrue(p99 < MAX_P99_LIST_MILLIS, "p99 latency of list was " + p99 + " ms");
+    }
+
+    @Test
+    void testClientWhichLeftWithoutDisconnectIsDisconnected() throws IOException {
+        SocketChannel client = connect();
+        assertEquals("listed", send(client, "list"));
+        client.close(); //no disconnect command
+
+        verify(executor, timeout(2000)).disconnect(any(SocketChannel.class));
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(new InetSocketAddress(HOST, server.getPort()));
+    }
+
+    private static String send(SocketChannel client, String message) throws IOException {
+        Frames.writeFrame(client, message);
+        return Frames.readFrame(client);
+    }
+}
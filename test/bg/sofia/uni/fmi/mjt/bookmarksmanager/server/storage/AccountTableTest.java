@@ -0,0 +1,102 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountTableTest {
+    private static final Path TEST_TABLE = Path.of("test" + File.separator + "bg" + File.separator +
+            "sofia" + File.separator + "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server" + File.separator +
+            "storage" + File.separator + "testAccountTable");
+
+    private static final AccountTable.Account FIRST = new AccountTable.Account("first", "Password1");
+    private static final AccountTable.Account SECOND = new AccountTable.Account("второ", "Password2");
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(TEST_TABLE);
+    }
+
+    @Test
+    void testAppendedAccountsAreReadAfterReopening() throws IOException {
+        try (AccountTable table = new AccountTable(TEST_TABLE)) {
+            table.append(FIRST);
+            table.append(SECOND);
+        }
+        try (AccountTable reopened = new AccountTable(TEST_TABLE)) {
+            assertEquals(List.of(FIRST, SECOND), reopened.readAll());
+        }
+    }
+
+    @Test
+    void testAppendWritesOneFixedSizeRecord() throws IOException {
+        try (AccountTable table = new AccountTable(TEST_TABLE)) {
+            table.append(FIRST);
+            long sizeAfterFirst = Files.size(TEST_TABLE);
+            table.append(SECOND);
+            long recordSize = Files.size(TEST_TABLE) - sizeAfterFirst;
+
+            table.append(new AccountTable.Account("third", "Password3"));
+            assertEquals(recordSize, Files.size(TEST_TABLE) - sizeAfterFirst - recordSize);
+        }
+    }
+
+    @Test
+    void testTornLastRecordIsIgnored() throws IOException {
+        try (AccountTable table = new AccountTable(TEST_TABLE)) {
+            table.append(FIRST);
+        }
+        Files.write(TEST_TABLE, new byte[] {1, 0, 5}, StandardOpenOption.APPEND);
+
+        try (AccountTable reopened = new AccountTable(TEST_TABLE)) {
+            assertEquals(List.of(FIRST), reopened.readAll());
+        }
+    }
+
+    @Test
+    void testRewriteReplacesAllAccounts() throws IOException {
+        try (AccountTable table = new AccountTable(TEST_TABLE)) {
+            table.append(FIRST);
+            table.rewrite(List.of(SECOND));
+            assertEquals(List.of(SECOND), table.readAll());
+        }
+    }
+
+    @Test
+    void testOtherFormatIsRecognized() throws IOException {
+        assertTrue(AccountTable.isAccountTable(TEST_TABLE));
+        Files.writeString(TEST_TABLE, "not an accounts table");
+        assertFalse(AccountTable.isAccountTable(TEST_TABLE));
+    }
+
+    @Test
+    void testTooLongUsernameIsRejected() throws IOException {
+        AccountTable.Account tooLong = new AccountTable.Account("u".repeat(AccountTable.MAX_USERNAME_BYTES + 1),
+                "Password1");
+        assertFalse(AccountTable.fits(tooLong.username(), tooLong.password()));
+        try (AccountTable table = new AccountTable(TEST_TABLE)) {
+            assertThrows(IllegalArgumentException.class, () -> table.append(tooLong));
+        }
+    }
+
+    @Test
+    void testOtherFormatIsNeverAppendedTo() throws IOException {
+        Files.writeString(TEST_TABLE, "not an accounts table");
+        try (AccountTable table = new AccountTable(TEST_TABLE)) {
+            assertThrows(IOException.class, () -> table.append(FIRST));
+        }
+        assertEquals("not an accounts table", Files.readString(TEST_TABLE));
+    }
+}
@@ -1,11 +1,15 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
 
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarkRecordStore;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.enrichment.PageEnricher;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.GroupAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchBookmarkException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.NoSuchGroupException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.BookmarksSource;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.outerimport.ImportPipeline;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.junit.jupiter.api.AfterEach;
@@ -20,8 +24,11 @@ import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -58,6 +65,7 @@ class BookmarksGroupStorageTest {
     void cleanUp() throws IOException {
         Path path = Path.of(TEST_FILE_NAME);
         Files.deleteIfExists(path);
+        Files.deleteIfExists(Path.of(TEST_FILE_NAME + ".log"));
        ExceptionsLogger.cleanUpLogs();
     }
 
@@ -77,6 +85,16 @@ class BookmarksGroupStorageTest {
         assertTrue(bookmarksGroupStorage.containsGroup("NewGroup"));
     }
 
+    @Test
+    void testGetGroupsIsNotChangedByLaterChanges() {
+        Map<String, BookmarksGroup> groups = bookmarksGroupStorage.getGroups();
+        bookmarksGroupStorage.createNewGroup("NewGroup");
+        bookmarksGroupStorage.removeBookmarkFromGroup("Ozone", "Group1");
+
+        assertFalse(groups.containsKey("NewGroup"));
+        assertTrue(groups.get("Group1").containsBookmark("Ozone"));
+    }
+
     @Test
     void testCreateNewGroupThrows() {
         assertThrows(GroupAlreadyExistsException.class,
@@ -194,6 +212,227 @@ class BookmarksGroupStorageTest {
                 .get("Group1").containsBookmark("Invalid"));
     }
 
+    @Test
+    public void testChangesAreRecoveredFromSnapshotAndLog() {
+        bookmarksGroupStorage.updateGroupsFile();
+        Bookmark github = new Bookmark("Github", "https://github.com/", Set.of("git"), "Group2");
+        bookmarksGroupStorage.createNewGroup("Group2");
+        bookmarksGroupStorage.addNewBookmarkToGroup(github, "Group2");
+        bookmarksGroupStorage.removeBookmarkFromGroup("Ozone", "Group1");
+
+        BookmarksGroupStorage recovered = new BookmarksGroupStorage(TEST_FILE_NAME);
+
+        assertEquals(Set.of("Group1", "Group2"), recovered.getGroups().keySet());
+        assertTrue(recovered.getGroups().get("Group2").containsBookmark("Github"));
+        assertFalse(recovered.getGroups().get("Group1").containsBookmark("Ozone"));
+    }
+
+    @Test
+    public void testChangesAfterTornRecordSurviveSecondRestart() throws IOException {
+        bookmarksGroupStorage.updateGroupsFile();
+        bookmarksGroupStorage.createNewGroup("Group2");
+        bookmarksGroupStorage.flush();
+        Files.writeString(Path.of(TEST_FILE_NAME + ".log"), "{\"operation\":\"create-gr",
+                StandardOpenOption.APPEND);
+
+        BookmarksGroupStorage restarted = new BookmarksGroupStorage(TEST_FILE_NAME);
+        restarted.createNewGroup("Group3");
+        restarted.flush();
+
+        BookmarksGroupStorage recovered = new BookmarksGroupStorage(TEST_FILE_NAME);
+        assertEquals(Set.of("Group1", "Group2", "Group3"), recovered.getGroups().keySet());
+    }
+
+    @Test
+    public void testImportedGroupsAreStoredAsOneBatch() throws IOException {
+        bookmarksGroupStorage.updateGroupsFile();
+        PersistenceScheduler scheduler = new PersistenceScheduler(Duration.ofHours(1));
+        bookmarksGroupStorage.setPersistenceScheduler(scheduler);
+        BookmarksSource source = visitor -> {
+            visitor.group("Group1");
+            visitor.bookmark("Group1", "Imported", "https://imported.example/");
+            visitor.group("Dev");
+            visitor.bookmark("Dev", "Github", "https://github.com/");
+        };
+        ImportPipeline pipeline = new ImportPipeline(mock(PageEnricher.class), 4, 2, 8);
+
+        assertEquals(2, bookmarksGroupStorage.importBookmarks(source, pipeline).size());
+
+        assertTrue(bookmarksGroupStorage.getGroups().get("Dev").containsBookmark("Github"));
+        assertFalse(bookmarksGroupStorage.getGroups().get("Group1").containsBookmark("Imported"),
+                "An existing group should not be replaced");
+        assertEquals(0, Files.size(Path.of(TEST_FILE_NAME + ".log")), "Nothing should be written before the flush");
+        scheduler.close();
+        assertTrue(new BookmarksGroupStorage(TEST_FILE_NAME).getGroups().get("Dev").containsBookmark("Github"));
+    }
+
+    @Test
+    public void testBatchedImportAddsToExistingGroupsToo() throws IOException {
+        bookmarksGroupStorage.updateGroupsFile();
+        BookmarksSource source = visitor -> {
+            visitor.group("Group1");
+            visitor.bookmark("Group1", "Imported", "https://imported.example/");
+            visitor.group("Dev");
+            for (int i = 0; i < 2_500; i++) {
+                visitor.bookmark("Dev", "Page" + i, "https://example.com/" + i);
+            }
+        };
+        ImportPipeline pipeline = new ImportPipeline(mock(PageEnricher.class), 4, 2, 8);
+
+        assertEquals(2_501, bookmarksGroupStorage.importBookmarksInBatches(source, pipeline));
+
+        BookmarksGroupStorage recovered = new BookmarksGroupStorage(TEST_FILE_NAME);
+        assertTrue(recovered.getGroups().get("Group1").containsBookmark("Imported"));
+        assertEquals(2_500, recovered.getGroups().get("Dev").getBookmarksCount());
+    }
+
+    @Test
+    public void testChromeReimportAppliesOnlyTheDelta() throws IOException {
+        String originalOs = System.getProperty("os.name");
+        String originalHome = System.getProperty("user.home");
+        Path home = Files.createTempDirectory("chrome-home");
+        Path chromeFile = home.resolve(".config/google-chrome/Default/Bookmarks");
+        Files.createDirectories(chromeFile.getParent());
+        System.setProperty("os.name", "Linux");
+        System.setProperty("user.home", home.toString());
+        PageEnricher enricher = mock(PageEnricher.class);
+        ImportPipeline pipeline = new ImportPipeline(enricher, 4, 2, 8);
+        try {
+            Files.writeString(chromeFile, chromeBookmarks("c1",
+                    "{\"guid\": \"g1\", \"name\": \"Github\", \"type\": \"url\", \"url\": \"https://github.com/\"}",
+                    "{\"guid\": \"g2\", \"name\": \"Jsoup\", \"type\": \"url\", \"url\": \"https://jsoup.org/\"}"));
+            assertEquals(2, bookmarksGroupStorage.importBookmarksFromChrome(pipeline).size());
+            assertTrue(bookmarksGroupStorage.importBookmarksFromChrome(pipeline).isEmpty(),
+                    "An unchanged file should not be imported again");
+
+            Files.writeString(chromeFile, chromeBookmarks("c2",
+                    "{\"guid\": \"g1\", \"name\": \"GitHub home\", \"type\": \"url\", \"url\": \"https://github.com/\"}",
+                    "{\"guid\": \"g3\", \"name\": \"Gson\", \"type\": \"url\", \"url\": \"https://github.com/google/gson\"}"));
+            assertEquals(2, bookmarksGroupStorage.importBookmarksFromChrome(pipeline).size());
+
+            BookmarksGroup bar = bookmarksGroupStorage.getGroups().get("bookmark_bar");
+            assertEquals(Set.of("GitHub home", "Gson"),
+                    Set.copyOf(bar.getBookmarks().stream().map(Bookmark::title).toList()));
+            verify(enricher, times(4)).enrich(anyString());
+        } finally {
+            System.setProperty("os.name", originalOs);
+            System.setProperty("user.home", originalHome);
+            Files.deleteIfExists(Path.of(TEST_FILE_NAME + ".chrome"));
+        }
+    }
+
+    private static String chromeBookmarks(String checksum, String... urlNodes) {
+        return "{\"checksum\": \"" + checksum + "\", \"roots\": {\"bookmark_bar\": {\"children\": [" +
+                String.join(", ", urlNodes) + "], \"name\": \"Bookmarks bar\", \"type\": \"folder\"}}, " +
+                "\"version\": 1}";
+    }
+
+    @Test
+    public void testSnapshotTruncatesLogAndKeepsChanges() throws IOException {
+        bookmarksGroupStorage.createNewGroup("Group2");
+        assertTrue(Files.size(Path.of(TEST_FILE_NAME + ".log")) > 0);
+
+        bookmarksGroupStorage.updateGroupsFile();
+
+        assertEquals(0, Files.size(Path.of(TEST_FILE_NAME + ".log")));
+        assertTrue(new BookmarksGroupStorage(TEST_FILE_NAME).containsGroup("Group2"));
+    }
+
+    @Test
+    public void testScheduledChangesAreWrittenByFlush() throws IOException {
+        bookmarksGroupStorage.updateGroupsFile();
+        PersistenceScheduler scheduler = new PersistenceScheduler(Duration.ofHours(1));
+        bookmarksGroupStorage.setPersistenceScheduler(scheduler);
+        bookmarksGroupStorage.createNewGroup("Group2");
+        bookmarksGroupStorage.removeBookmarkFromGroup("Ozone", "Group1");
+
+        assertTrue(scheduler.isDirty(bookmarksGroupStorage));
+        assertEquals(0, Files.size(Path.of(TEST_FILE_NAME + ".log")), "Nothing should be written before the flush");
+
+        scheduler.close();
+
+        BookmarksGroupStorage recovered = new BookmarksGroupStorage(TEST_FILE_NAME);
+        assertTrue(recovered.containsGroup("Group2"));
+        assertFalse(recovered.getGroups().get("Group1").containsBookmark("Ozone"));
+    }
+
+    @Test
+    public void testRecordsOfAFailedFlushAreWrittenByTheNextInOrder() throws IOException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(Duration.ofHours(1));
+        bookmarksGroupStorage.setPersistenceScheduler(scheduler);
+        Path logPath = Path.of(TEST_FILE_NAME + ".log");
+        Files.createDirectory(logPath); //the log cannot be written
+        bookmarksGroupStorage.createNewGroup("Group2");
+
+        assertThrows(IOException.class, bookmarksGroupStorage::flush);
+        assertFalse(bookmarksGroupStorage.unload(), "The changes are only in memory");
+
+        Files.delete(logPath);
+        bookmarksGroupStorage.addNewBookmarkToGroup(new Bookmark("Emag", "https://www.emag.bg/",
+                Set.of("electronics"), "Group2"), "Group2");
+        bookmarksGroupStorage.flush();
+        scheduler.close();
+
+        BookmarksGroupStorage recovered = new BookmarksGroupStorage(TEST_FILE_NAME);
+        assertTrue(recovered.getGroups().get("Group2").containsBookmark("Emag"));
+    }
+
+    @Test
+    public void testRequestedSnapshotIsWrittenByFlush() throws IOException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(Duration.ofHours(1));
+        bookmarksGroupStorage.setPersistenceScheduler(scheduler);
+        bookmarksGroupStorage.createNewGroup("Group2");
+        bookmarksGroupStorage.requestSnapshot();
+
+        bookmarksGroupStorage.flush();
+
+        assertEquals(0, Files.size(Path.of(TEST_FILE_NAME + ".log")));
+        assertTrue(Files.readString(Path.of(TEST_FILE_NAME)).contains("Group2"));
+        scheduler.close();
+    }
+
+    @Test
+    public void testCompressedSnapshotIsRecovered() throws IOException {
+        bookmarksGroupStorage.setSnapshotFormat(SnapshotFormat.DEFLATE);
+        bookmarksGroupStorage.updateGroupsFile();
+
+        assertFalse(Files.readString(Path.of(TEST_FILE_NAME), StandardCharsets.ISO_8859_1)
+                .contains("Ozone"));
+        assertTrue(new BookmarksGroupStorage(TEST_FILE_NAME).getGroups().get("Group1").containsBookmark("Ozone"));
+    }
+
+    @Test
+    public void testLoadedBookmarksAreKeptOffHeap() throws IOException {
+        bookmarksGroupStorage.updateGroupsFile();
+        Path recordsFile = Path.of(TEST_FILE_NAME + ".records");
+        try (BookmarkRecordStore recordStore = new BookmarkRecordStore(recordsFile)) {
+            BookmarksGroupStorage offHeapStorage = new BookmarksGroupStorage(TEST_FILE_NAME);
+            offHeapStorage.setRecordStore(recordStore);
+
+            assertTrue(offHeapStorage.getGroups().get("Group1").containsBookmark("Ozone"));
+            assertTrue(recordStore.getSize() > 0, "The bookmarks must be records of the store");
+        }
+    }
+
+    @Test
+    public void testUnloadedBookmarksReleaseTheirRecords() throws IOException {
+        bookmarksGroupStorage.updateGroupsFile();
+        Path recordsFile = Path.of(TEST_FILE_NAME + ".records");
+        try (BookmarkRecordStore recordStore = new BookmarkRecordStore(recordsFile)) {
+            BookmarksGroupStorage offHeapStorage = new BookmarksGroupStorage(TEST_FILE_NAME);
+            offHeapStorage.setRecordStore(recordStore);
+            offHeapStorage.load();
+            long loadedSize = recordStore.getSize();
+
+            for (int i = 0; i < 100; i++) {
+                assertTrue(offHeapStorage.unload());
+                offHeapStorage.load();
+            }
+            assertEquals(loadedSize, recordStore.getSize(), "The reloaded records must reuse the released ones");
+            assertTrue(offHeapStorage.containsGroup("Group1"));
+        }
+    }
+
     @Test
     public void testUpdateGroupsFileCreatesValidJson() throws IOException {
         Bookmark newBookmark = new Bookmark("Bookmark1",
@@ -0,0 +1,94 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GroupsCodecTest {
+    private static final Bookmark GITHUB = new Bookmark("Github", "https://github.com/",
+            new LinkedHashSet<>(List.of("github", "commit")), "DevOps",
+            new LinkedHashMap<>(Map.of("github", 7)));
+    private static final Bookmark OZONE = new Bookmark("Ozone", "https://www.ozone.bg/",
+            new LinkedHashSet<>(List.of("book")), "DevOps");
+
+    @Test
+    void testWrittenGroupsAreReadBack() throws IOException {
+        Map<String, BookmarksGroup> groups = groupsOf(GITHUB, OZONE);
+        StringWriter out = new StringWriter();
+
+        GroupsCodec.write(groups, out);
+        Map<String, BookmarksGroup> read = GroupsCodec.read(new StringReader(out.toString()));
+
+        assertEquals(groups.keySet(), read.keySet());
+        assertEquals(Map.of("Github", GITHUB, "Ozone", OZONE), bookmarksOf(read.get("DevOps")));
+    }
+
+    @Test
+    void testOutputIsCompact() throws IOException {
+        StringWriter out = new StringWriter();
+        GroupsCodec.write(groupsOf(GITHUB), out);
+
+        assertFalse(out.toString().contains("\n"));
+        assertFalse(out.toString().contains("termFrequencies\": null"));
+    }
+
+    @Test
+    void testPrettyPrintedGsonFileIsRead() throws IOException {
+        String gsonFile = new GsonBuilder().setPrettyPrinting().create()
+                .toJson(Map.of("groups", groupsOf(GITHUB, OZONE)));
+
+        Map<String, BookmarksGroup> read = GroupsCodec.read(new StringReader(gsonFile));
+
+        assertEquals(Map.of("Github", GITHUB, "Ozone", OZONE), bookmarksOf(read.get("DevOps")));
+        assertNull(bookmarksOf(read.get("DevOps")).get("Ozone").termFrequencies());
+    }
+
+    @Test
+    void testUnknownFieldsAreSkipped() throws IOException {
+        String json = "{\"version\":2,\"groups\":{\"G\":{\"groupName\":\"G\",\"color\":\"red\"," +
+                "\"bookmarks\":{\"T\":{\"title\":\"T\",\"url\":\"https://t.bg\",\"visits\":[1,2]}}}}}";
+
+        Map<String, BookmarksGroup> read = GroupsCodec.read(new StringReader(json));
+
+        assertTrue(read.get("G").containsBookmark("T"));
+    }
+
+    @Test
+    void testTruncatedFileIsRejected() throws IOException {
+        StringWriter out = new StringWriter();
+        GroupsCodec.write(groupsOf(GITHUB), out);
+        String truncated = out.toString().substring(0, out.toString().length() / 2);
+
+        assertThrows(IOException.class, () -> GroupsCodec.read(new StringReader(truncated)));
+    }
+
+    private static Map<String, BookmarksGroup> groupsOf(Bookmark... bookmarks) {
+        Map<String, Bookmark> byTitle = new HashMap<>();
+        for (Bookmark bookmark : bookmarks) {
+            byTitle.put(bookmark.title(), bookmark);
+        }
+        return new HashMap<>(Map.of("DevOps", new BookmarksGroup("DevOps", byTitle)));
+    }
+
+    private static Map<String, Bookmark> bookmarksOf(BookmarksGroup group) {
+        Map<String, Bookmark> byTitle = new HashMap<>();
+        group.getBookmarks().forEach(bookmark -> byTitle.put(bookmark.title(), bookmark));
+        return byTitle;
+    }
+}
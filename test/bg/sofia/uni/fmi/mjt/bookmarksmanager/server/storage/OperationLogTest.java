@@ -0,0 +1,82 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OperationLogTest {
+    private static final Path TEST_LOG = Path.of("test" + File.separator + "bg" + File.separator +
+            "sofia" + File.separator + "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server" + File.separator +
+            "storage" + File.separator + "testOperationLog.log");
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(TEST_LOG);
+    }
+
+    @Test
+    void testAppendedRecordsAreReadInOrderAfterReopening() throws IOException {
+        try (OperationLog log = new OperationLog(TEST_LOG)) {
+            log.append("first");
+            log.append("второ");
+        }
+        OperationLog reopened = new OperationLog(TEST_LOG);
+        assertEquals(List.of("first", "второ"), reopened.readRecords());
+        assertEquals(2, reopened.getRecordsCount());
+        reopened.close();
+    }
+
+    @Test
+    void testTornLastRecordIsLeftOut() throws IOException {
+        try (OperationLog log = new OperationLog(TEST_LOG)) {
+            log.append("{\"operation\":\"add\"}");
+        }
+        Files.write(TEST_LOG, "{\"operation\":\"rem".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertEquals(List.of("{\"operation\":\"add\"}"), new OperationLog(TEST_LOG).readRecords());
+    }
+
+    @Test
+    void testTornLastRecordIsCutOffBeforeNewRecords() throws IOException {
+        try (OperationLog log = new OperationLog(TEST_LOG)) {
+            log.append("first");
+        }
+        Files.write(TEST_LOG, "{\"operation\":\"rem".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (OperationLog reopened = new OperationLog(TEST_LOG)) {
+            reopened.append("second");
+            assertEquals(2, reopened.getRecordsCount());
+        }
+        try (OperationLog restarted = new OperationLog(TEST_LOG)) {
+            restarted.append("third");
+        }
+        assertEquals(List.of("first", "second", "third"), new OperationLog(TEST_LOG).readRecords());
+    }
+
+    @Test
+    void testTruncateDropsAllRecords() throws IOException {
+        try (OperationLog log = new OperationLog(TEST_LOG)) {
+            log.append("first");
+            log.truncate();
+            log.append("second");
+            assertEquals(1, log.getRecordsCount());
+        }
+        assertEquals(List.of("second"), new OperationLog(TEST_LOG).readRecords());
+    }
+
+    @Test
+    void testMissingLogHasNoRecords() throws IOException {
+        assertTrue(new OperationLog(TEST_LOG).readRecords().isEmpty());
+    }
+}
@@ -0,0 +1,105 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PersistenceSchedulerTest {
+    private static final Duration NEVER = Duration.ofHours(1);
+    private static final Duration SHORT_LATENCY = Duration.ofMillis(20);
+
+    @Test
+    void testManyChangesAreCoalescedIntoOneFlush() throws IOException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(NEVER);
+        Flushable store = mock(Flushable.class);
+        for (int i = 0; i < 100; i++) {
+            scheduler.markDirty(store);
+        }
+        verify(store, times(0)).flush();
+
+        scheduler.flushDirtyStores();
+
+        verify(store, times(1)).flush();
+        assertFalse(scheduler.isDirty(store));
+        scheduler.close();
+    }
+
+    @Test
+    void testCloseDrainsDirtyStores() throws IOException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(NEVER);
+        Flushable first = mock(Flushable.class);
+        Flushable second = mock(Flushable.class);
+        scheduler.markDirty(first);
+        scheduler.markDirty(second);
+
+        scheduler.close();
+
+        verify(first, times(1)).flush();
+        verify(second, times(1)).flush();
+    }
+
+    @Test
+    void testChangeAfterCloseIsFlushedRightAway() throws IOException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(NEVER);
+        scheduler.close();
+        Flushable store = mock(Flushable.class);
+
+        scheduler.markDirty(store);
+
+        verify(store, times(1)).flush();
+    }
+
+    @Test
+    void testZeroLatencyFlushesRightAway() throws IOException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(Duration.ZERO);
+        Flushable store = mock(Flushable.class);
+
+        scheduler.markDirty(store);
+
+        verify(store, times(1)).flush();
+        scheduler.close();
+    }
+
+    @Test
+    void testBackgroundFlusherWritesWithinMaxLatency() throws InterruptedException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(SHORT_LATENCY);
+        CountDownLatch flushed = new CountDownLatch(1);
+        scheduler.markDirty(flushed::countDown);
+
+        assertTrue(flushed.await(1, TimeUnit.SECONDS));
+        scheduler.close();
+    }
+
+    @Test
+    void testFailedFlushDoesNotStopTheOthers() throws IOException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(NEVER);
+        Flushable failing = mock(Flushable.class);
+        doThrow(new IOException("disk full")).when(failing).flush();
+        AtomicInteger flushes = new AtomicInteger();
+        scheduler.markDirty(failing);
+        scheduler.markDirty(flushes::incrementAndGet);
+
+        scheduler.close();
+
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    void testNegativeLatencyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new PersistenceScheduler(Duration.ofMillis(-1)));
+    }
+}
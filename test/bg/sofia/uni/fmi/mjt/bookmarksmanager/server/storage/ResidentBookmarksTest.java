@@ -0,0 +1,126 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResidentBookmarksTest {
+    private static final String TEST_DIRECTORY = "test" + File.separator + "bg" + File.separator +
+            "sofia" + File.separator + "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server" + File.separator + "storage";
+    private static final String FIRST_FILE = TEST_DIRECTORY + File.separator + "testResidentFirst.txt";
+    private static final String SECOND_FILE = TEST_DIRECTORY + File.separator + "testResidentSecond.txt";
+
+    private BookmarksGroupStorage first;
+    private BookmarksGroupStorage second;
+    private List<String> unloadedUsers;
+    private ResidentBookmarks residentBookmarks;
+
+    @BeforeEach
+    void setUp() {
+        first = storageWithOneBookmark(FIRST_FILE);
+        second = storageWithOneBookmark(SECOND_FILE);
+        unloadedUsers = new ArrayList<>();
+        residentBookmarks = new ResidentBookmarks(1, unloadedUsers::add);
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        for (String file : List.of(FIRST_FILE, SECOND_FILE)) {
+            Files.deleteIfExists(Path.of(file));
+            Files.deleteIfExists(Path.of(file + ".log"));
+        }
+    }
+
+    @Test
+    void testLoggedInUsersAreNotUnloaded() {
+        residentBookmarks.pin("First", first);
+        residentBookmarks.pin("Second", second);
+
+        assertEquals(2, residentBookmarks.getResidentBookmarksCount());
+        assertTrue(residentBookmarks.isResident("First"));
+        assertTrue(residentBookmarks.isResident("Second"));
+    }
+
+    @Test
+    void testIdleUserIsUnloadedOverBudgetAndReloadedOnLogin() {
+        residentBookmarks.pin("First", first);
+        residentBookmarks.pin("Second", second);
+
+        residentBookmarks.unpin("First");
+
+        assertEquals(List.of("First"), unloadedUsers);
+        assertFalse(first.isLoaded());
+        assertEquals(1, residentBookmarks.getResidentBookmarksCount());
+
+        residentBookmarks.unpin("Second");
+        residentBookmarks.pin("First", first);
+
+        assertTrue(first.isLoaded());
+        assertTrue(first.getGroups().get("Group").containsBookmark("Github"));
+        assertFalse(second.isLoaded());
+    }
+
+    @Test
+    void testBookmarksAddedDuringSessionAreCountedOnLogout() {
+        residentBookmarks = new ResidentBookmarks(2, unloadedUsers::add);
+        residentBookmarks.pin("First", first);
+        residentBookmarks.pin("Second", second);
+        first.addNewBookmarkToGroup(new Bookmark("Ozone", "https://www.ozone.bg/", Set.of("books"), "Group"),
+                "Group");
+
+        residentBookmarks.unpin("First");
+
+        assertEquals(List.of("First"), unloadedUsers);
+        assertEquals(1, residentBookmarks.getResidentBookmarksCount());
+    }
+
+    @Test
+    void testUserWithAnotherSessionStaysPinned() {
+        residentBookmarks.pin("First", first);
+        residentBookmarks.pin("First", first);
+        residentBookmarks.pin("Second", second);
+
+        residentBookmarks.unpin("First");
+
+        assertTrue(unloadedUsers.isEmpty());
+        assertTrue(first.isLoaded());
+    }
+
+    @Test
+    void testUnwrittenChangesAreNotUnloaded() {
+        PersistenceScheduler scheduler = new PersistenceScheduler(Duration.ofHours(1));
+        first.setPersistenceScheduler(scheduler);
+        residentBookmarks.pin("First", first);
+        residentBookmarks.pin("Second", second);
+        first.createNewGroup("Unwritten");
+
+        residentBookmarks.unpin("First");
+        assertTrue(first.isLoaded());
+
+        scheduler.close();
+        assertTrue(first.unload());
+        assertTrue(first.containsGroup("Unwritten"));
+    }
+
+    private static BookmarksGroupStorage storageWithOneBookmark(String fileName) {
+        BookmarksGroupStorage storage = new BookmarksGroupStorage(fileName);
+        storage.createNewGroup("Group");
+        storage.addNewBookmarkToGroup(new Bookmark("Github", "https://github.com/", Set.of("git"), "Group"), "Group");
+        return storage;
+    }
+}
@@ -0,0 +1,70 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotFormatTest {
+    private static final int BOOKMARKS_COUNT = 1000;
+
+    @Test
+    void testEachFormatIsReadBack() throws IOException {
+        Map<String, BookmarksGroup> groups = importedGroups();
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            Map<String, BookmarksGroup> read = SnapshotFormat.read(new ByteArrayInputStream(write(format, groups)));
+
+            assertEquals(groups.keySet(), read.keySet());
+            assertEquals(BOOKMARKS_COUNT, read.get("Imported").getBookmarks().size());
+            assertTrue(read.get("Imported").getBookmarks().contains(groups.get("Imported").getBookmarks().getFirst()));
+        }
+    }
+
+    @Test
+    void testDeflatedSnapshotIsMuchSmaller() throws IOException {
+        Map<String, BookmarksGroup> groups = importedGroups();
+
+        int jsonSize = write(SnapshotFormat.JSON, groups).length;
+        int deflatedSize = write(SnapshotFormat.DEFLATE, groups).length;
+
+        assertTrue(deflatedSize * 4 < jsonSize, "JSON " + jsonSize + " bytes, deflated " + deflatedSize + " bytes");
+    }
+
+    @Test
+    void testTruncatedDeflatedSnapshotIsRejected() throws IOException {
+        byte[] deflated = write(SnapshotFormat.DEFLATE, importedGroups());
+        byte[] truncated = Arrays.copyOf(deflated, deflated.length / 2);
+
+        assertThrows(IOException.class, () -> SnapshotFormat.read(new ByteArrayInputStream(truncated)));
+    }
+
+    private static byte[] write(SnapshotFormat format, Map<String, BookmarksGroup> groups) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.write(groups, out);
+        return out.toByteArray();
+    }
+
+    private static Map<String, BookmarksGroup> importedGroups() {
+        Map<String, Bookmark> bookmarks = new HashMap<>();
+        for (int i = 0; i < BOOKMARKS_COUNT; i++) {
+            Bookmark bookmark = new Bookmark("Page " + i, "https://www.example.com/articles/" + i,
+                    new LinkedHashSet<>(List.of("java", "tutorial", "topic" + i % 10)), "Imported");
+            bookmarks.put(bookmark.title(), bookmark);
+        }
+        Map<String, BookmarksGroup> groups = new HashMap<>();
+        groups.put("Imported", new BookmarksGroup("Imported", bookmarks));
+        return groups;
+    }
+}
@@ -1,5 +1,6 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage;
 
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.BookmarksManagerAPI;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.UserAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.exceptions.logger.ExceptionsLogger;
 import bg.sofia.uni.fmi.mjt.bookmarksmanager.user.User;
@@ -11,6 +12,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,6 +25,10 @@ class UsersStorageTest {
             "uni" + File.separator + "fmi" + File.separator + "mjt" +
             File.separator + "bookmarksmanager" + File.separator + "server"
             + File.separator + "storage" + File.separator + "testUsersFile.dat";
+    //written by the users storage before the accounts table, with the users legacyUser1 and legacyUser2
+    private static final Path LEGACY_USERS_FILE = Path.of("test", "bg", "sofia", "uni", "fmi", "mjt",
+            "bookmarksmanager", "server", "storage", "legacyUsersFile.dat");
+    private static final Path MIGRATED_USERS_FILE = Path.of(LEGACY_USERS_FILE + ".migrated");
 
 
     private static UsersStorage storage = new UsersStorage(TEST_FILE_USERS);
@@ -37,6 +43,10 @@ class UsersStorageTest {
     static void cleanUp() throws IOException {
         Path path = Path.of(TEST_FILE_USERS);
         Files.deleteIfExists(path);
+        Files.deleteIfExists(MIGRATED_USERS_FILE);
+        Files.deleteIfExists(Path.of(BookmarksManagerAPI.GROUP_FILE_PATH + "legacyUser1"));
+        Files.deleteIfExists(Path.of(BookmarksManagerAPI.GROUP_FILE_PATH + "legacyUser2"));
+        Files.deleteIfExists(Path.of(BookmarksManagerAPI.GROUP_FILE_PATH + "newUser3"));
         ExceptionsLogger.cleanUpLogs();
     }
 
@@ -104,4 +114,21 @@ class UsersStorageTest {
         assertTrue(actualStorage.getUsers().get("newUser2").
                 validatePassword("newUserPasswd2"));
     }
+
+    @Test
+    void testLegacyUsersFileIsMigratedToAccountTable() throws IOException {
+        Files.copy(LEGACY_USERS_FILE, MIGRATED_USERS_FILE, StandardCopyOption.REPLACE_EXISTING);
+
+        UsersStorage migrated = new UsersStorage(MIGRATED_USERS_FILE.toString());
+        assertTrue(AccountTable.isAccountTable(MIGRATED_USERS_FILE));
+        assertEquals(2, migrated.getUsers().size());
+        User legacyUser = migrated.getUsers().get("legacyUser1");
+        assertTrue(legacyUser.validatePassword("Password1"));
+        assertEquals(BookmarksManagerAPI.GROUP_FILE_PATH + "legacyUser1", legacyUser.getStorage().getFileName());
+
+        migrated.register("newUser3", "newUserPasswd3");
+        UsersStorage reopened = new UsersStorage(MIGRATED_USERS_FILE.toString());
+        assertTrue(reopened.getUsers().get("legacyUser2").validatePassword("Password2"));
+        assertTrue(reopened.isARegisteredUser("newUser3"));
+    }
 }
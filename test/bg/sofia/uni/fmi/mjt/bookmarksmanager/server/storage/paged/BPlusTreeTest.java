@@ -0,0 +1,136 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BPlusTreeTest {
+    private static final Path TEST_FILE = Path.of("test" + File.separator + "bg" + File.separator +
+            "sofia" + File.separator + "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server" + File.separator +
+            "storage" + File.separator + "testTree.pages");
+    private static final Path TEST_JOURNAL = Path.of(TEST_FILE + ".journal");
+
+    private static final int KEYS_COUNT = 5_000; //enough for splits of inner nodes too
+    private static final int CACHED_PAGES = 4;
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(TEST_FILE);
+        Files.deleteIfExists(TEST_JOURNAL);
+    }
+
+    @Test
+    void testEntriesAreFoundAfterManySplits() throws IOException {
+        try (PageFile file = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            BPlusTree tree = new BPlusTree(file);
+            for (int i = KEYS_COUNT - 1; i >= 0; i--) {
+                tree.put(key(i), value(i));
+                file.evictIfNeeded();
+            }
+            assertTrue(file.getPagesCount() > CACHED_PAGES + 1, "The entries must take many pages");
+            assertTrue(file.getCachedPagesCount() <= CACHED_PAGES, "The cache must stay bounded");
+            for (int i = 0; i < KEYS_COUNT; i++) {
+                assertArrayEquals(value(i), tree.get(key(i)));
+            }
+            assertNull(tree.get(bytes("missing")));
+        }
+    }
+
+    @Test
+    void testEntriesAreReadAfterReopening() throws IOException {
+        try (PageFile file = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            BPlusTree tree = new BPlusTree(file);
+            for (int i = 0; i < KEYS_COUNT; i++) {
+                tree.put(key(i), value(i));
+                file.evictIfNeeded();
+            }
+        }
+        try (PageFile reopened = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            BPlusTree tree = new BPlusTree(reopened);
+            for (int i = 0; i < KEYS_COUNT; i += 97) {
+                assertArrayEquals(value(i), tree.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    void testScanVisitsOnlyThePrefixInOrder() throws IOException {
+        try (PageFile file = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            BPlusTree tree = new BPlusTree(file);
+            for (int i = 0; i < KEYS_COUNT; i++) {
+                tree.put(key(i), value(i));
+            }
+            List<String> visited = new ArrayList<>();
+            tree.scan(bytes("key-012"), (key, value) -> visited.add(new String(key, StandardCharsets.UTF_8)));
+
+            List<String> expected = new ArrayList<>();
+            for (int i = 1200; i < 1300; i++) {
+                expected.add(new String(key(i), StandardCharsets.UTF_8));
+            }
+            assertEquals(expected, visited);
+        }
+    }
+
+    @Test
+    void testPutReplacesAndRemoveDeletes() throws IOException {
+        try (PageFile file = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            BPlusTree tree = new BPlusTree(file);
+            tree.put(key(1), value(1));
+            tree.put(key(1), value(2));
+            assertArrayEquals(value(2), tree.get(key(1)));
+
+            assertTrue(tree.remove(key(1)));
+            assertFalse(tree.remove(key(1)));
+            assertNull(tree.get(key(1)));
+        }
+    }
+
+    @Test
+    void testTooLargeEntryIsRejected() throws IOException {
+        try (PageFile file = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            BPlusTree tree = new BPlusTree(file);
+            assertThrows(IllegalArgumentException.class,
+                    () -> tree.put(key(1), new byte[BPlusTree.MAX_ENTRY_SIZE]));
+        }
+    }
+
+    @Test
+    void testUncommittedJournalIsDiscarded() throws IOException {
+        try (PageFile file = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            new BPlusTree(file).put(key(1), value(1));
+        }
+        Files.write(TEST_JOURNAL, new byte[] {0, 0, 0, 1, 42}); //a flush cut off before its commit
+
+        try (PageFile reopened = new PageFile(TEST_FILE, CACHED_PAGES)) {
+            assertArrayEquals(value(1), new BPlusTree(reopened).get(key(1)));
+        }
+        assertFalse(Files.exists(TEST_JOURNAL));
+    }
+
+    private static byte[] key(int i) {
+        return bytes(String.format("key-%05d", i));
+    }
+
+    private static byte[] value(int i) {
+        return bytes("value of " + i + " ".repeat(i % 50));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
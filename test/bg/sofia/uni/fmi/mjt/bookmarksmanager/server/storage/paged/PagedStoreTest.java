@@ -0,0 +1,128 @@
+package bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.paged;
+
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.Bookmark;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.bookmark.BookmarksGroup;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.AccountsStore;
+import bg.sofia.uni.fmi.mjt.bookmarksmanager.server.storage.BookmarksGroupStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PagedStoreTest {
+    private static final Path TEST_FILE = Path.of("test" + File.separator + "bg" + File.separator +
+            "sofia" + File.separator + "uni" + File.separator + "fmi" + File.separator + "mjt" +
+            File.separator + "bookmarksmanager" + File.separator + "server" + File.separator +
+            "storage" + File.separator + "testStore.pages");
+
+    private static final AccountsStore.Account FIRST = new AccountsStore.Account("first", "Password1");
+    private static final AccountsStore.Account SECOND = new AccountsStore.Account("second", "Password2");
+
+    private static final Bookmark JAVA = new Bookmark("Java", "https://java.com", Set.of("java"),
+            "Work", Map.of("java", 3));
+    private static final Bookmark NEWS = new Bookmark("News", "https://news.com", Set.of("news"),
+            "Work", Map.of("news", 1));
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(TEST_FILE);
+    }
+
+    @Test
+    void testAccountsAreReadAfterReopening() throws IOException {
+        try (PagedStore store = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            store.append(FIRST);
+            store.append(SECOND);
+        }
+        try (PagedStore reopened = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            assertEquals(List.of(FIRST, SECOND), reopened.readAll());
+            reopened.rewrite(List.of(SECOND));
+            assertEquals(List.of(SECOND), reopened.readAll());
+        }
+    }
+
+    @Test
+    void testGroupsAreKeptPerUser() throws IOException {
+        try (PagedStore store = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            store.append(FIRST);
+            store.putGroup("first", "Empty");
+            store.putBookmark("first", "Work", JAVA);
+            store.putBookmark("first", "Work", NEWS);
+            store.putBookmark("firstly", "Work", JAVA); //a user whose name starts with another's
+
+            Map<String, BookmarksGroup> groups = store.readGroups("first");
+            assertEquals(Set.of("Empty", "Work"), groups.keySet());
+            assertTrue(groups.get("Empty").getBookmarks().isEmpty());
+            assertEquals(Set.of(JAVA, NEWS), Set.copyOf(groups.get("Work").getBookmarks()));
+
+            assertTrue(store.removeBookmark("first", "Work", "News"));
+            assertFalse(store.removeBookmark("first", "Work", "News"));
+            assertEquals(List.of(JAVA), store.readGroups("first").get("Work").getBookmarks());
+            assertEquals(Set.of("Work"), store.readGroups("firstly").keySet());
+        }
+    }
+
+    @Test
+    void testGroupStorageChangesReachTheStore() throws IOException {
+        try (PagedStore store = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            BookmarksGroupStorage storage = new BookmarksGroupStorage(store, "first");
+            storage.createNewGroup("Work");
+            storage.addNewBookmarkToGroup(JAVA, "Work");
+        }
+        try (PagedStore reopened = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            BookmarksGroupStorage storage = new BookmarksGroupStorage(reopened, "first");
+            assertEquals(List.of(JAVA), storage.getGroups().get("Work").getBookmarks());
+        }
+    }
+
+    @Test
+    void testBookmarkLargerThanAnEntryIsStoredInOverflowEntries() throws IOException {
+        Map<String, Integer> terms = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            terms.put("term" + i, i);
+        }
+        Bookmark large = new Bookmark("Large", "https://large.com/" + "a".repeat(3000), terms.keySet(),
+                "Work", terms);
+        try (PagedStore store = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            store.putBookmark("first", "Work", large);
+            store.putBookmark("first", "Work", NEWS);
+        }
+        try (PagedStore reopened = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            assertEquals(Set.of(large, NEWS), Set.copyOf(reopened.readGroups("first").get("Work").getBookmarks()));
+
+            Bookmark small = new Bookmark("Large", "https://large.com/", Set.of("large"), "Work", Map.of("large", 1));
+            reopened.putBookmark("first", "Work", small);
+            assertEquals(Set.of(small, NEWS), Set.copyOf(reopened.readGroups("first").get("Work").getBookmarks()));
+
+            reopened.putBookmark("first", "Work", large);
+            assertTrue(reopened.removeBookmark("first", "Work", "Large"));
+            assertEquals(List.of(NEWS), reopened.readGroups("first").get("Work").getBookmarks());
+        }
+    }
+
+    @Test
+    void testBookmarkWhoseNamesDoNotFitIsRefusedBeforeAnyChange() throws IOException {
+        String longTitle = "t".repeat(5000);
+        assertFalse(PagedStore.fits("first", "Work", longTitle));
+        try (PagedStore store = new PagedStore(TEST_FILE, PagedStore.DEFAULT_CACHED_PAGES)) {
+            BookmarksGroupStorage storage = new BookmarksGroupStorage(store, "first");
+            storage.createNewGroup("Work");
+            Bookmark tooLong = new Bookmark(longTitle, "https://long.com", Set.of(), "Work");
+
+            assertThrows(IllegalArgumentException.class, () -> storage.addNewBookmarkToGroup(tooLong, "Work"));
+            assertTrue(storage.getGroups().get("Work").getBookmarks().isEmpty());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package bg.sofia.uni.fmi.mjt.bookmarksmanager.tokenizer;
 import org.junit.jupiter.api.Test;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -84,4 +85,22 @@ public class HtmlTokenizerTest {
 
         assertTrue(keywords.size() <= MAX_KEYWORDS_NUMBER);
     }
+
+    @Test
+    void testCountTermsKeepsFrequenciesMostFrequentFirst() {
+        HtmlTokenizer tokenizer = newTokenizer();
+
+        Map<String, Integer> terms = tokenizer.countTerms("Java streams and java records, the Java way");
+
+        assertEquals("java", terms.keySet().iterator().next());
+        assertEquals(3, terms.get("java"));
+        assertEquals(1, terms.get("stream"));
+        assertEquals(Set.of("java", "stream", "record", "way"), tokenizer.tokenize("Java streams and java records, the Java way"));
+    }
+
+    @Test
+    void testNormalizeLowercasesAndStems() {
+        assertEquals("book", HtmlTokenizer.normalize(" Books "));
+        assertNull(HtmlTokenizer.normalize("  "));
+    }
 }